@@ -0,0 +1,73 @@
+package com.imsweb.x12.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Sample files used by the benchmarks; they are the files of the tests.
+ */
+final class BenchmarkFiles {
+
+    static final String MANY_CLAIMS = "/837_5010/x12_many_claims.txt";
+
+    private static final String _CLAIM_SEGMENT = "CLM*";
+
+    private BenchmarkFiles() {
+        // utility class
+    }
+
+    /**
+     * Reads a sample file
+     * @param resource resource name of the file
+     * @return the content of the file
+     * @throws IOException if the file can't be read
+     */
+    static String read(String resource) throws IOException {
+        try (InputStream is = BenchmarkFiles.class.getResourceAsStream(resource)) {
+            if (is == null)
+                throw new IOException("Unable to find " + resource);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = is.read(buffer)) != -1)
+                out.write(buffer, 0, n);
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Creates a large 837 file by repeating the billing providers (and their subscribers and claims) of the many claims file until the file contains at least
+     * the requested number of claims. The file stays valid, only the HL and SE counts aren't adjusted.
+     * @param claims minimum number of claims
+     * @return the content of the file
+     * @throws IOException if the sample file can't be read
+     */
+    static String manyClaims(int claims) throws IOException {
+        String content = read(MANY_CLAIMS);
+        int start = content.indexOf("HL*1*");
+        int end = content.lastIndexOf("SE*");
+        String body = content.substring(start, end);
+
+        int claimsPerCopy = countClaims(body);
+        int copies = Math.max(1, (claims + claimsPerCopy - 1) / claimsPerCopy);
+        StringBuilder buf = new StringBuilder(content.length() + body.length() * (copies - 1));
+        buf.append(content, 0, start);
+        for (int i = 0; i < copies; i++)
+            buf.append(body);
+        buf.append(content, end, content.length());
+        return buf.toString();
+    }
+
+    private static int countClaims(String content) {
+        int count = 0;
+        int idx = content.indexOf(_CLAIM_SEGMENT);
+        while (idx != -1) {
+            if (idx == 0 || !Character.isLetterOrDigit(content.charAt(idx - 1)))
+                count++;
+            idx = content.indexOf(_CLAIM_SEGMENT, idx + 1);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,63 @@
+package com.imsweb.x12.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import com.thoughtworks.xstream.security.NoTypePermission;
+import com.thoughtworks.xstream.security.WildcardTypePermission;
+
+import com.imsweb.x12.mapping.BinaryMapping;
+import com.imsweb.x12.mapping.TransactionDefinition;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Compares the loading of a definition from the XML mapping and from the compiled binary mapping, the way {@link FileType#getDefinition()} loads it. This
+ * measures a warmed up JVM; the first load of a new JVM also pays for the class loading, mostly of XStream for the XML mappings.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DefinitionLoadingBenchmark {
+
+    @Param({"ANSI837_5010_X222", "ANSI837_4010_X096", "ANSI270_4010_X092"})
+    public FileType _type;
+
+    @Benchmark
+    public TransactionDefinition loadXml() throws IOException {
+        XStream xstream = new XStream(new StaxDriver());
+        xstream.autodetectAnnotations(true);
+        xstream.alias("transaction", TransactionDefinition.class);
+        xstream.addPermission(NoTypePermission.NONE);
+        xstream.addPermission(new WildcardTypePermission(new String[] {"com.imsweb.x12.**"}));
+
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(_type.getMapping())) {
+            return (TransactionDefinition)xstream.fromXML(is);
+        }
+    }
+
+    @Benchmark
+    public TransactionDefinition loadBinary() throws IOException {
+        try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(BinaryMapping.getResourceName(_type.getMapping()))) {
+            if (is == null)
+                throw new IOException("Binary mapping not found, run the compileMappings task: " + _type.getMapping());
+            return BinaryMapping.read(is);
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package com.imsweb.x12.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imsweb.x12.reader.X12Reader;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Measures the parsing of large 837 files, created from the many claims file, from the file system. Each parse takes seconds, so every invocation is
+ * measured on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class LargeFileBenchmark {
+
+    @Param({"10000", "100000"})
+    public int _claims;
+
+    private Path _path;
+    private File _file;
+
+    @Setup
+    public void setup() throws IOException {
+        _path = Files.createTempFile("x12-benchmark", ".txt");
+        Files.write(_path, BenchmarkFiles.manyClaims(_claims).getBytes(StandardCharsets.UTF_8));
+        _file = _path.toFile();
+        FileType.ANSI837_5010_X222.getDefinition();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.delete(_path);
+    }
+
+    @Benchmark
+    public X12Reader parseFile() throws IOException {
+        return new X12Reader(FileType.ANSI837_5010_X222, _file);
+    }
+
+    @Benchmark
+    public X12Reader parseMappedFile() throws IOException {
+        return new X12Reader(FileType.ANSI837_5010_X222, _path, StandardCharsets.ISO_8859_1);
+    }
+}
@@ -0,0 +1,68 @@
+package com.imsweb.x12.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Scanner;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.reader.X12Lexer;
+
+/**
+ * Compares the segment lexer used by the reader with the Scanner based tokenization it replaced, on an 837 file created from the many claims file. Both
+ * return the number of elements of the file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LexerBenchmark {
+
+    @Param({"10000"})
+    public int _claims;
+
+    private String _content;
+
+    @Setup
+    public void setup() throws IOException {
+        _content = BenchmarkFiles.manyClaims(_claims);
+    }
+
+    @Benchmark
+    public int lexer() throws IOException {
+        X12Lexer lexer = new X12Lexer(new StringReader(_content), '~', '*');
+        int count = 0;
+        while (lexer.next()) {
+            lexer.getSegment();
+            count += lexer.getElementCount();
+        }
+        return count;
+    }
+
+    @Benchmark
+    public int scanner() {
+        Separators separators = new Separators('~', '*', ':');
+        Scanner scanner = new Scanner(new StringReader(_content));
+        String quotedSegmentSeparator = Pattern.quote("~");
+        scanner.useDelimiter(quotedSegmentSeparator + "\r\n|" + quotedSegmentSeparator + "\n|" + quotedSegmentSeparator);
+        int count = 0;
+        while (scanner.hasNext())
+            count += separators.splitElement(scanner.next().trim()).length;
+        return count;
+    }
+}
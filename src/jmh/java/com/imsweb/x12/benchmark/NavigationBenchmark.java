@@ -0,0 +1,67 @@
+package com.imsweb.x12.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.reader.X12Reader;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Measures the navigation of the loops of the many claims file: searching the claims in the whole tree, and reading elements of every claim.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class NavigationBenchmark {
+
+    private Loop _root;
+    private List<Loop> _subscribers;
+    private List<Loop> _claims;
+
+    @Setup
+    public void setup() throws IOException {
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(BenchmarkFiles.read(BenchmarkFiles.MANY_CLAIMS)));
+        _root = reader.getLoops().get(0);
+        _subscribers = _root.findLoop("2000B");
+        _claims = _root.findLoop("2300");
+        if (_subscribers.isEmpty() || _claims.isEmpty())
+            throw new IllegalStateException("Unexpected loop structure");
+    }
+
+    @Benchmark
+    public List<Loop> findLoop() {
+        return _root.findLoop("2300");
+    }
+
+    @Benchmark
+    public void getElementFromParent(Blackhole blackhole) {
+        for (Loop subscriber : _subscribers)
+            blackhole.consume(subscriber.getElement("2300", "CLM", "CLM02"));
+    }
+
+    @Benchmark
+    public void getElement(Blackhole blackhole) {
+        for (Loop claim : _claims) {
+            blackhole.consume(claim.getElement("CLM", "CLM01"));
+            blackhole.consume(claim.getElement("HI", "HI01"));
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.imsweb.x12.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imsweb.x12.reader.X12Reader;
+import com.imsweb.x12.reader.X12Reader.FileType;
+import com.imsweb.x12.writer.X12Generator;
+
+/**
+ * Measures the construction of a reader (parsing and validation) on a sample file of each file type. The content is read in memory beforehand, and the
+ * definitions are loaded during the setup, so only the parsing is measured.
+ * <br/><br/>
+ * The file types without a sample file use a generated file with the required loops only.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ReaderBenchmark {
+
+    @Param({
+            "ANSI837_5010_X222:/837_5010/x12_valid.txt",
+            "ANSI837_5010_X223:/837_5010/x223-test.txt",
+            "ANSI837_5010_X231:/837_5010/x12_999_accepted.txt",
+            "ANSI277_5010_X214:/277_5010/x12_277CA_accepted.txt",
+            "ANSI277_5010_X212:/277_5010/x12_277_x212.txt",
+            "ANSI270_4010_X092:/x270_271/x270.txt",
+            "ANSI271_4010_X092:/x270_271/x271.txt",
+            "ANSI835_5010_X221",
+            "ANSI835_4010_X091",
+            "ANSI834_5010_X220",
+            "ANSI837_4010_X096",
+            "ANSI837_4010_X097",
+            "ANSI837_4010_X098"
+    })
+    public String _file;
+
+    private FileType _type;
+    private String _content;
+
+    @Setup
+    public void setup() throws IOException {
+        int idx = _file.indexOf(':');
+        if (idx == -1) {
+            _type = FileType.valueOf(_file);
+            _content = new X12Generator(_type).toX12String();
+        }
+        else {
+            _type = FileType.valueOf(_file.substring(0, idx));
+            _content = BenchmarkFiles.read(_file.substring(idx + 1));
+        }
+        _type.getDefinition();
+    }
+
+    @Benchmark
+    public X12Reader parse() throws IOException {
+        return new X12Reader(_type, new StringReader(_content));
+    }
+}
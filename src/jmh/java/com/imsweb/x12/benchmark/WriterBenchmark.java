@@ -0,0 +1,75 @@
+package com.imsweb.x12.benchmark;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.reader.X12Reader;
+import com.imsweb.x12.reader.X12Reader.FileType;
+import com.imsweb.x12.writer.X12Writer;
+
+/**
+ * Measures the different outputs of a parsed 837 file, created from the many claims file. Each output of a large file takes seconds, so every invocation is
+ * measured on its own.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = "-Xmx4g")
+public class WriterBenchmark {
+
+    @Param({"1000", "10000"})
+    public int _claims;
+
+    private X12Writer _writer;
+    private Loop _root;
+
+    @Setup
+    public void setup() throws IOException {
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(BenchmarkFiles.manyClaims(_claims)));
+        _writer = new X12Writer(reader);
+        _root = reader.getLoops().get(0);
+    }
+
+    @Benchmark
+    public String toX12String() {
+        return _writer.toX12String();
+    }
+
+    @Benchmark
+    public String toHtml() {
+        return _writer.toHtml();
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> toListOfMap() {
+        return _writer.toListOfMap();
+    }
+
+    @Benchmark
+    public String toJson() {
+        return _root.toJson();
+    }
+
+    @Benchmark
+    public String toXML() {
+        return _root.toXML();
+    }
+}
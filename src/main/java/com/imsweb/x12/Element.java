@@ -1,5 +1,6 @@
 package com.imsweb.x12;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -20,13 +21,13 @@ import com.thoughtworks.xstream.annotations.XStreamOmitField;
 public class Element {
 
     @XStreamOmitField
-    private Separators _separators;
+    private volatile Separators _separators;
     @XStreamAlias("id")
     private String _id;
     @XStreamAlias("value")
     private String _value;
     @XStreamAlias("subValue")
-    private List<String> _subValues = new ArrayList<>();
+    private volatile List<String> _subValues; // split from the value when they are first requested
 
     /**
      * Constructor
@@ -57,12 +58,30 @@ public class Element {
         setValue(value == null ? "" : value);
     }
 
-    public Separators getSeparators() {
+    public synchronized Separators getSeparators() {
+        // the elements created by the reader share read-only separators, the element gets its own copy so they can be modified
+        if (_separators != null && _separators.isShared())
+            _separators = new Separators(_separators);
         return _separators;
     }
 
+    /**
+     * Returns the sub-values of the element. They are split from the value once, by the first thread that needs them; the list is only published once it is
+     * complete, so the element can be read by several threads at the same time.
+     * @return the list of sub-values
+     */
     public List<String> getSubValues() {
-        return _subValues;
+        List<String> subValues = _subValues;
+        if (subValues == null) {
+            synchronized (this) {
+                subValues = _subValues;
+                if (subValues == null) {
+                    subValues = toList(_separators.splitComposite(_value));
+                    _subValues = subValues;
+                }
+            }
+        }
+        return subValues;
     }
 
     public String getId() {
@@ -77,30 +96,84 @@ public class Element {
         return _value;
     }
 
-    public void setValue(String value) {
-        String[] values = _separators.splitComposite(value);
-        if (values != null && values.length >= 1)
-            _subValues.addAll(Arrays.asList(values));
-
+    public synchronized void setValue(String value) {
         _value = value;
+        _subValues = null;
     }
 
     public int getNumOfSubElements() {
-        return _subValues.size();
+        // most elements aren't composites
+        List<String> subValues = _subValues;
+        if (subValues == null && isSingleValue())
+            return 1;
+        return subValues != null ? subValues.size() : getSubValues().size();
     }
 
     public String getSubElement(int index) {
-        if (index < _subValues.size())
-            return _subValues.get(index);
+        List<String> subValues = _subValues;
+        if (subValues == null && isSingleValue())
+            return index == 0 ? _value : null;
+
+        if (subValues == null)
+            subValues = getSubValues();
+        if (index < subValues.size())
+            return subValues.get(index);
 
         return null;
     }
 
+    private boolean isSingleValue() {
+        Character composite = _separators.getCompositeElement();
+        return _value != null && composite != null && _value.indexOf(composite) == -1;
+    }
+
+    private static List<String> toList(String[] values) {
+        return values == null ? new ArrayList<>() : new ArrayList<>(Arrays.asList(values));
+    }
+
     @Override
     public String toString() {
         return _value;
     }
 
+    /**
+     * Writes this element as a JSON object, with the members XStream wrote for its fields.
+     */
+    void writeJson(JsonOutput out) throws IOException {
+        writeJson(out, _id, _value, _subValues, _separators);
+    }
+
+    /**
+     * Writes an element as a JSON object, see {@link #writeJson(JsonOutput)}.
+     * @param subValues the sub-values of the element, null to split them from the value
+     */
+    static void writeJson(JsonOutput out, String id, String value, List<String> subValues, Separators separators) throws IOException {
+        out.beginObject();
+        if (id != null) {
+            out.name("id");
+            out.value(id);
+        }
+        if (value != null) {
+            out.name("value");
+            out.value(value);
+        }
+        out.name("subValue");
+        out.beginArray();
+        if (subValues != null) {
+            for (String subValue : subValues)
+                out.value(subValue);
+        }
+        else {
+            String[] split = separators.splitComposite(value);
+            if (split != null) {
+                for (String subValue : split)
+                    out.value(subValue);
+            }
+        }
+        out.endArray();
+        out.endObject();
+    }
+
     /**
      * Converts this element to HTML segment.
      * @param elementDefinition The element definition that defines this element.
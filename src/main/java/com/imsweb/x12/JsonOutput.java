@@ -0,0 +1,137 @@
+package com.imsweb.x12;
+
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Writes JSON to a writer as it's produced, for the loops, segments and elements. The pretty format is the one of the XStream JSON writer used by the
+ * previous versions of {@link Loop#toJson()}: two spaces of indentation, and a line for each member and array item. The compact format has no whitespace,
+ * so a loop can be written on a single line.
+ */
+final class JsonOutput {
+
+    private final Writer _writer;
+    private final boolean _pretty;
+    private int _depth;
+    private boolean _first; // true if nothing was written yet in the current object or array
+    private boolean _named; // true if the next value is the value of a member whose name was written
+
+    /**
+     * Constructor
+     * @param writer the writer to write to
+     * @param pretty true for the pretty format, false for the compact one
+     */
+    JsonOutput(Writer writer, boolean pretty) {
+        _writer = writer;
+        _pretty = pretty;
+    }
+
+    void beginObject() throws IOException {
+        begin('{');
+    }
+
+    void endObject() throws IOException {
+        end('}');
+    }
+
+    void beginArray() throws IOException {
+        begin('[');
+    }
+
+    void endArray() throws IOException {
+        end(']');
+    }
+
+    void name(String name) throws IOException {
+        separate();
+        string(name);
+        _writer.write(_pretty ? ": " : ":");
+        _named = true;
+    }
+
+    void value(String value) throws IOException {
+        beforeValue();
+        if (value == null)
+            _writer.write("null");
+        else
+            string(value);
+        _first = false;
+    }
+
+    private void begin(char c) throws IOException {
+        beforeValue();
+        _writer.write(c);
+        _depth++;
+        _first = true;
+    }
+
+    private void end(char c) throws IOException {
+        _depth--;
+        if (!_first)
+            newLine();
+        _writer.write(c);
+        _first = false;
+    }
+
+    private void beforeValue() throws IOException {
+        if (_named)
+            _named = false;
+        else if (_depth > 0)
+            separate();
+    }
+
+    private void separate() throws IOException {
+        if (!_first)
+            _writer.write(',');
+        newLine();
+    }
+
+    private void newLine() throws IOException {
+        if (_pretty) {
+            _writer.write('\n');
+            for (int i = 0; i < _depth; i++)
+                _writer.write("  ");
+        }
+    }
+
+    private void string(String value) throws IOException {
+        _writer.write('"');
+        int start = 0;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\' || c < 0x20) {
+                _writer.write(value, start, i - start);
+                start = i + 1;
+                switch (c) {
+                    case '"':
+                        _writer.write("\\\"");
+                        break;
+                    case '\\':
+                        _writer.write("\\\\");
+                        break;
+                    case '\b':
+                        _writer.write("\\b");
+                        break;
+                    case '\f':
+                        _writer.write("\\f");
+                        break;
+                    case '\n':
+                        _writer.write("\\n");
+                        break;
+                    case '\r':
+                        _writer.write("\\r");
+                        break;
+                    case '\t':
+                        _writer.write("\\t");
+                        break;
+                    default:
+                        _writer.write("\\u00");
+                        _writer.write(Character.forDigit(c >> 4, 16));
+                        _writer.write(Character.forDigit(c & 0xF, 16));
+                }
+            }
+        }
+        _writer.write(value, start, value.length() - start);
+        _writer.write('"');
+    }
+}
@@ -1,24 +1,27 @@
 package com.imsweb.x12;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
 import java.io.StringWriter;
+import java.io.UncheckedIOException;
 import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Set;
-import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
-import com.thoughtworks.xstream.io.HierarchicalStreamWriter;
-import com.thoughtworks.xstream.io.json.AbstractJsonWriter;
-import com.thoughtworks.xstream.io.json.JsonHierarchicalStreamDriver;
-import com.thoughtworks.xstream.io.json.JsonWriter;
 import com.thoughtworks.xstream.io.xml.PrettyPrintWriter;
 import com.thoughtworks.xstream.io.xml.StaxDriver;
 import com.thoughtworks.xstream.security.NoTypePermission;
@@ -38,7 +41,7 @@ import com.imsweb.x12.mapping.SegmentDefinition;
 public class Loop implements Iterable<Segment> {
 
     @XStreamOmitField
-    private Separators _separators;
+    private volatile Separators _separators;
     @XStreamAlias("id")
     private String _id;
     @XStreamAlias("segments")
@@ -47,6 +50,10 @@ public class Loop implements Iterable<Segment> {
     private List<Loop> _loops = new ArrayList<>();
     @XStreamOmitField
     private Loop _parent;
+    @XStreamOmitField
+    private boolean _indexed;
+    @XStreamOmitField
+    private volatile LoopIndex _loopIndex; // the descendant loops by id, for an indexed loop; built when first needed
 
     public Loop() {
         _separators = new Separators();
@@ -89,6 +96,8 @@ public class Loop implements Iterable<Segment> {
      */
     public void setId(String id) {
         _id = id;
+        if (_parent != null)
+            _parent.invalidateIndex();
     }
 
     /**
@@ -106,11 +115,13 @@ public class Loop implements Iterable<Segment> {
     }
 
     /**
-     * Returns the separators of the X12 transaction.
+     * Returns the separators of the X12 transaction. The loops created by the reader share read-only separators; the loop gets its own copy the first
+     * time they are requested, so they can be modified.
      * @return Separators object
      */
-
-    public Separators getSeparators() {
+    public synchronized Separators getSeparators() {
+        if (_separators != null && _separators.isShared())
+            _separators = new Separators(_separators);
         return _separators;
     }
 
@@ -152,6 +163,53 @@ public class Loop implements Iterable<Segment> {
      */
     public void setLoops(List<Loop> loops) {
         _loops = loops;
+        invalidateIndex();
+    }
+
+    /**
+     * Returns true if the loop lookups of this loop use an index, see {@link #setIndexed(boolean)}.
+     * @return true if the loop lookups are indexed
+     */
+    public boolean isIndexed() {
+        return _indexed;
+    }
+
+    /**
+     * Makes the loop lookups ({@link #getLoop(String)}, {@link #getLoop(String, int)}, {@link #findLoop(String)}, {@link #hasLoop(String)} and the getElement
+     * methods taking a loop id) of this loop use an index of its descendant loops. The index is built the first time it's needed, so repeated lookups on a
+     * large tree, for example the top loop of a file, don't walk the tree each time. The lookups of the descendant loops still walk their own loops; only
+     * the loops that are searched repeatedly need to be indexed.
+     * <br/><br/>
+     * The index is dropped when loops are added, removed or renamed with the methods of this class. Changes made directly to the lists returned by
+     * {@link #getLoops()} are not tracked; {@link #invalidateIndex()} must be called after them.
+     * @param indexed true to index the loop lookups
+     */
+    public void setIndexed(boolean indexed) {
+        _indexed = indexed;
+        if (!indexed)
+            _loopIndex = null;
+    }
+
+    /**
+     * Drops the index of this loop and of its parents, so they are built again when they are next needed.
+     */
+    public void invalidateIndex() {
+        for (Loop loop = this; loop != null; loop = loop._parent)
+            loop._loopIndex = null;
+    }
+
+    /**
+     * Returns the index of the descendant loops, null if the lookups are not indexed.
+     */
+    private LoopIndex getLoopIndex() {
+        if (!_indexed)
+            return null;
+        LoopIndex index = _loopIndex;
+        if (index == null) {
+            index = new LoopIndex(this);
+            _loopIndex = index;
+        }
+        return index;
     }
 
     /**
@@ -166,6 +224,7 @@ public class Loop implements Iterable<Segment> {
 
         l.setParent(this);
         _loops.add(l);
+        invalidateIndex();
 
         return l;
     }
@@ -193,6 +252,7 @@ public class Loop implements Iterable<Segment> {
     public void addLoop(int index, Loop loop) {
         loop.setParent(this);
         _loops.add(index, loop);
+        invalidateIndex();
     }
 
     /**
@@ -265,6 +325,9 @@ public class Loop implements Iterable<Segment> {
     public boolean hasLoop(String id) {
         if (getId().contains(id))
             return true;
+        LoopIndex index = getLoopIndex();
+        if (index != null)
+            return index.hasLoop(id);
         for (Loop l : getLoops()) {
             if (id.equals(l.getId()))
                 return true;
@@ -281,6 +344,11 @@ public class Loop implements Iterable<Segment> {
      * @return loop with corresponding loopId. Returns null if there no loops matching the loop ID.
      */
     public Loop getLoop(String loopId) {
+        LoopIndex index = getLoopIndex();
+        if (index != null) {
+            List<Loop> loops = index._loops.get(loopId);
+            return loops == null ? null : loops.get(0);
+        }
         List<Loop> loops = findLoop(loopId);
         if (!loops.isEmpty())
             return findLoop(loopId).get(0);
@@ -294,6 +362,11 @@ public class Loop implements Iterable<Segment> {
      * @return loop with corresponding loopId. Returns null if the index is greater than or equal to the number of loops matching the loop ID.
      */
     public Loop getLoop(String loopId, int index) {
+        LoopIndex loopIndex = getLoopIndex();
+        if (loopIndex != null) {
+            List<Loop> loops = loopIndex._loops.get(loopId);
+            return loops == null || index >= loops.size() ? null : loops.get(index);
+        }
         List<Loop> loops = findLoop(loopId);
         if (index < loops.size())
             return findLoop(loopId).get(index);
@@ -307,6 +380,10 @@ public class Loop implements Iterable<Segment> {
      * @return List of Loop entities
      */
     public List<Loop> findLoop(String id) {
+        LoopIndex index = getLoopIndex();
+        if (index != null)
+            return new ArrayList<>(index._loops.getOrDefault(id, Collections.emptyList()));
+
         List<Loop> foundLoops = new ArrayList<>();
 
         for (Loop loop : getLoops()) {
@@ -405,7 +482,9 @@ public class Loop implements Iterable<Segment> {
      * @return Loop
      */
     public Loop removeLoop(int index) {
-        return _loops.remove(index);
+        Loop loop = _loops.remove(index);
+        invalidateIndex();
+        return loop;
     }
 
     /**
@@ -443,6 +522,7 @@ public class Loop implements Iterable<Segment> {
 
         loop.setParent(this);
         _loops.set(index, loop);
+        invalidateIndex();
 
         return loop;
     }
@@ -455,6 +535,7 @@ public class Loop implements Iterable<Segment> {
     public void setLoop(int index, Loop loop) {
         loop.setParent(this);
         _loops.set(index, loop);
+        invalidateIndex();
     }
 
     /**
@@ -606,40 +687,83 @@ public class Loop implements Iterable<Segment> {
      * @return String representation The segments from this loop, including child loops.
      */
     public String toX12String(LoopDefinition loopDefinition) {
-        StringBuilder dump = new StringBuilder();
+        return toX12String(loopDefinition, _separators.getLineBreak());
+    }
 
-        Set<Positioned> segmentsAndLoops = new TreeSet<>();
-        if (loopDefinition.getLoop() != null) {
-            segmentsAndLoops.addAll(loopDefinition.getLoop());
+    /**
+     * Returns the Loop in X12 String format, like {@link #toX12String(LoopDefinition)}, with the given line break after each segment instead of the one
+     * of the separators.
+     * @param loopDefinition The definition of the loop that we are currently on.
+     * @param lineBreak the line break to use after each segment
+     * @return String representation The segments from this loop, including child loops.
+     */
+    public String toX12String(LoopDefinition loopDefinition, LineBreak lineBreak) {
+        StringBuilder dump = new StringBuilder();
+        try {
+            appendX12String(dump, loopDefinition, lineBreak.getLineBreakString());
         }
-        if (loopDefinition.getSegment() != null) {
-            segmentsAndLoops.addAll(loopDefinition.getSegment());
+        catch (IOException e) {
+            // a string builder can't fail
+            throw new UncheckedIOException(e);
         }
-        for (Positioned positioned : segmentsAndLoops) {
+        return dump.toString();
+    }
+
+    /**
+     * Writes the Loop in X12 format, like {@link #toX12String(LoopDefinition, LineBreak)}, one segment at a time instead of building the whole
+     * String in memory.
+     * @param writer the writer to write to, not closed or flushed by this method
+     * @param loopDefinition The definition of the loop that we are currently on.
+     * @param lineBreak the line break to use after each segment
+     * @throws IOException if the loop can't be written
+     */
+    public void writeTo(Writer writer, LoopDefinition loopDefinition, LineBreak lineBreak) throws IOException {
+        appendX12String(writer, loopDefinition, lineBreak.getLineBreakString());
+    }
+
+    private void appendX12String(Appendable dump, LoopDefinition loopDefinition, String lineBreak) throws IOException {
+        Map<String, List<Segment>> segments = groupById(_segments, Segment::getId);
+        Map<String, List<Loop>> loops = groupById(_loops, Loop::getId);
+        for (Positioned positioned : loopDefinition.getChildren()) {
             if (positioned instanceof SegmentDefinition) {
-                SegmentDefinition segmentDefinition = (SegmentDefinition)positioned;
-                int idx = 0;
-                Segment segment;
-                while ((segment = getSegment(segmentDefinition.getXid(), idx++)) != null) {
-                    dump.append(segment);
+                for (Segment segment : segments.getOrDefault(positioned.getXid(), Collections.emptyList())) {
+                    dump.append(segment.toString());
                     dump.append(_separators.getSegment());
-                    dump.append(_separators.getLineBreak().getLineBreakString());
+                    dump.append(lineBreak);
                 }
             }
             else if (positioned instanceof LoopDefinition) {
                 LoopDefinition innerLoopDefinition = (LoopDefinition)positioned;
-                int idx = 0;
-                Loop innerLoop;
-                while ((innerLoop = getLoopForPrinting(innerLoopDefinition, idx++)) != null) {
-                    dump.append(innerLoop.toX12String(innerLoopDefinition));
-                }
+                for (Loop innerLoop : loops.getOrDefault(innerLoopDefinition.getXid(), Collections.emptyList()))
+                    innerLoop.appendX12String(dump, innerLoopDefinition, lineBreak);
             }
         }
-        return dump.toString();
     }
 
     public String toHtml(LoopDefinition loopDefinition, List<String> parentIds) {
         StringBuilder dump = new StringBuilder();
+        try {
+            appendHtml(dump, loopDefinition, parentIds);
+        }
+        catch (IOException e) {
+            // a string builder can't fail
+            throw new UncheckedIOException(e);
+        }
+        return dump.toString();
+    }
+
+    /**
+     * Writes the Loop in HTML format, like {@link #toHtml(LoopDefinition, List)}, one segment at a time instead of building the whole String in memory.
+     * @param writer the writer to write to, not closed or flushed by this method
+     * @param loopDefinition The definition of the loop that we are currently on.
+     * @param parentIds the IDs of the parent loops
+     * @throws IOException if the loop can't be written
+     */
+    public void writeHtmlTo(Writer writer, LoopDefinition loopDefinition, List<String> parentIds) throws IOException {
+        appendHtml(writer, loopDefinition, parentIds);
+    }
+
+    private void appendHtml(Appendable dump, LoopDefinition loopDefinition, List<String> parentIds) throws IOException {
         dump.append("<div id=\"")
             .append(Separators.getIdString(parentIds))
             .append("\" class=\"x12-loop\"><p>");
@@ -652,33 +776,21 @@ public class Loop implements Iterable<Segment> {
         newParentIds.addAll(parentIds);
         newParentIds.add(getId());
 
-        Set<Positioned> segmentsAndLoops = new TreeSet<>();
-        if (loopDefinition.getLoop() != null) {
-            segmentsAndLoops.addAll(loopDefinition.getLoop());
-        }
-        if (loopDefinition.getSegment() != null) {
-            segmentsAndLoops.addAll(loopDefinition.getSegment());
-        }
-        for (Positioned positioned : segmentsAndLoops) {
+        Map<String, List<Segment>> segments = groupById(_segments, Segment::getId);
+        Map<String, List<Loop>> loops = groupById(_loops, Loop::getId);
+        for (Positioned positioned : loopDefinition.getChildren()) {
             if (positioned instanceof SegmentDefinition) {
                 SegmentDefinition segmentDefinition = (SegmentDefinition)positioned;
-                int idx = 0;
-                Segment segment;
-                while ((segment = getSegment(segmentDefinition.getXid(), idx++)) != null) {
+                for (Segment segment : segments.getOrDefault(segmentDefinition.getXid(), Collections.emptyList()))
                     dump.append(segment.toHtml(segmentDefinition, newParentIds));
-                }
             }
             else if (positioned instanceof LoopDefinition) {
                 LoopDefinition innerLoopDefinition = (LoopDefinition)positioned;
-                int idx = 0;
-                Loop innerLoop;
-                while ((innerLoop = getLoopForPrinting(innerLoopDefinition, idx++)) != null) {
-                    dump.append(innerLoop.toHtml(innerLoopDefinition, newParentIds));
-                }
+                for (Loop innerLoop : loops.getOrDefault(innerLoopDefinition.getXid(), Collections.emptyList()))
+                    innerLoop.appendHtml(dump, innerLoopDefinition, newParentIds);
             }
         }
         dump.append("</div>");
-        return dump.toString();
     }
 
 
@@ -689,32 +801,21 @@ public class Loop implements Iterable<Segment> {
         res.put("xid", _id);
         res.put("name", loopDefinition.getName());
         res.put("type", "loop");
-        Set<Positioned> segmentsAndLoops = new TreeSet<>();
-        if (loopDefinition.getLoop() != null) {
-            segmentsAndLoops.addAll(loopDefinition.getLoop());
-        }
-        if (loopDefinition.getSegment() != null) {
-            segmentsAndLoops.addAll(loopDefinition.getSegment());
-        }
+        Map<String, List<Segment>> segments = groupById(_segments, Segment::getId);
+        Map<String, List<Loop>> loops = groupById(_loops, Loop::getId);
         List<Map<String, Object>> children = new ArrayList<>();
-        for (Positioned positioned : segmentsAndLoops) {
+        for (Positioned positioned : loopDefinition.getChildren()) {
             if (positioned instanceof SegmentDefinition) {
                 SegmentDefinition segmentDefinition = (SegmentDefinition)positioned;
-                int idx = 0;
-                Segment segment;
-                while ((segment = getSegment(segmentDefinition.getXid(), idx)) != null) {
-                    children.add(segment.toMap(segmentDefinition, newParentIds, idx));
-                    ++idx;
-                }
+                List<Segment> definedSegments = segments.getOrDefault(segmentDefinition.getXid(), Collections.emptyList());
+                for (int idx = 0; idx < definedSegments.size(); idx++)
+                    children.add(definedSegments.get(idx).toMap(segmentDefinition, newParentIds, idx));
             }
             else if (positioned instanceof LoopDefinition) {
                 LoopDefinition innerLoopDefinition = (LoopDefinition)positioned;
-                int idx = 0;
-                Loop innerLoop;
-                while ((innerLoop = getLoopForPrinting(innerLoopDefinition, idx)) != null) {
-                    children.add(innerLoop.toMap(innerLoopDefinition, newParentIds, rootLoopIndex, idx));
-                    ++idx;
-                }
+                List<Loop> definedLoops = loops.getOrDefault(innerLoopDefinition.getXid(), Collections.emptyList());
+                for (int idx = 0; idx < definedLoops.size(); idx++)
+                    children.add(definedLoops.get(idx).toMap(innerLoopDefinition, newParentIds, rootLoopIndex, idx));
             }
         }
         if (!children.isEmpty()) {
@@ -724,24 +825,16 @@ public class Loop implements Iterable<Segment> {
     }
 
     /**
-     * Send a LoopDefinition and the index of an loop, fetch the loop from the 
-     * child loops that matches, given that the parentLoop has this loop as a child.
-     * @param loopDefinition Loop definition for this spot in the x12 document.
-     * @param idx The index of the loops returned thus far.
-     * @return The child loop from the loops, or null otherwise.
+     * Groups the segments or the child loops of a loop by ID, keeping their order, so the ones of each definition can be printed without searching them.
+     * @param children the segments or child loops
+     * @param id function returning the ID of a segment or loop
+     * @return the segments or loops for each ID
      */
-    private Loop getLoopForPrinting(LoopDefinition loopDefinition, int idx) {
-        Loop loop = getLoop(loopDefinition.getXid(), idx);
-
-        // We need to check that the loop we have gotten from getLoop
-        // is actually a direct child of the current loop we are processing from the
-        // loop definition.
-
-        if (loop != null && _loops.stream().noneMatch(parentLoop -> parentLoop.getId().equals(loop.getId()))) {
-            return null;
-        }
-
-        return loop;
+    private static <T> Map<String, List<T>> groupById(List<T> children, Function<T, String> id) {
+        Map<String, List<T>> groups = new HashMap<>();
+        for (T child : children)
+            groups.computeIfAbsent(id.apply(child), k -> new ArrayList<>()).add(child);
+        return groups;
     }
 
     /**
@@ -760,6 +853,7 @@ public class Loop implements Iterable<Segment> {
         xstream.addPermission(NoTypePermission.NONE);
         xstream.addPermission(new WildcardTypePermission(new String[] {"com.imsweb.x12.**"}));
 
+        createElements();
         StringWriter writer = new StringWriter();
         xstream.marshal(this, new PrettyPrintWriter(writer));
 
@@ -771,20 +865,116 @@ public class Loop implements Iterable<Segment> {
      * @return JSON String
      */
     public String toJson() {
-        XStream xstream = new XStream(new JsonHierarchicalStreamDriver() {
-            @Override
-            public HierarchicalStreamWriter createWriter(Writer writer) {
-                return new JsonWriter(writer, AbstractJsonWriter.DROP_ROOT_MODE);
-            }
-        });
+        StringWriter writer = new StringWriter();
+        try {
+            writeJsonTo(writer);
+        }
+        catch (IOException e) {
+            // a string writer can't fail
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
 
-        xstream.autodetectAnnotations(true);
+    /**
+     * Writes the Loop in JSON format, like {@link #toJson()}, as it's produced instead of building the whole String in memory.
+     * @param writer the writer to write to, not closed or flushed by this method
+     * @throws IOException if the loop can't be written
+     */
+    public void writeJsonTo(Writer writer) throws IOException {
+        writeJson(new JsonOutput(writer, true));
+    }
 
-        // setup proper security by limiting what classes can be loaded by XStream
-        xstream.addPermission(NoTypePermission.NONE);
-        xstream.addPermission(new WildcardTypePermission(new String[] {"com.imsweb.x12.**"}));
+    /**
+     * Writes the Loop in JSON format, like {@link #toJson()}, as it's produced instead of building the whole String in memory.
+     * @param output the output stream to write to, flushed but not closed by this method
+     * @param charset character encoding
+     * @throws IOException if the loop can't be written
+     */
+    public void writeJsonTo(OutputStream output, Charset charset) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, charset));
+        writeJsonTo(writer);
+        writer.flush();
+    }
+
+    /**
+     * Writes the loops with the given ID in newline-delimited JSON: each loop is written on its own line, in the format of {@link #toJson()} without the
+     * indentation. The loops are this loop or its descendants, in the order of {@link #findAllLoops(String)}; the loops with the ID inside another one are
+     * only written as part of that one.
+     * @param writer the writer to write to, not closed or flushed by this method
+     * @param loopId the ID of the loops to write (for example 2300 for the claims of an 837)
+     * @throws IOException if the loops can't be written
+     */
+    public void writeJsonLinesTo(Writer writer, String loopId) throws IOException {
+        writeJsonLines(writer, new JsonOutput(writer, false), loopId);
+    }
+
+    /**
+     * Writes the loops with the given ID in newline-delimited JSON, like {@link #writeJsonLinesTo(Writer, String)}.
+     * @param output the output stream to write to, flushed but not closed by this method
+     * @param charset character encoding
+     * @param loopId the ID of the loops to write (for example 2300 for the claims of an 837)
+     * @throws IOException if the loops can't be written
+     */
+    public void writeJsonLinesTo(OutputStream output, Charset charset, String loopId) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(output, charset));
+        writeJsonLinesTo(writer, loopId);
+        writer.flush();
+    }
+
+    private void writeJsonLines(Writer writer, JsonOutput out, String loopId) throws IOException {
+        if (loopId.equals(_id)) {
+            writeJson(out);
+            writer.write('\n');
+        }
+        else {
+            for (Loop loop : _loops)
+                loop.writeJsonLines(writer, out, loopId);
+        }
+    }
+
+    /**
+     * Writes this loop as a JSON object, with the members XStream wrote for its fields.
+     */
+    void writeJson(JsonOutput out) throws IOException {
+        out.beginObject();
+        if (_id != null) {
+            out.name("id");
+            out.value(_id);
+        }
+        if (_segments != null) {
+            out.name("segments");
+            out.beginArray();
+            for (Segment segment : _segments) {
+                if (segment == null)
+                    out.value(null);
+                else
+                    segment.writeJson(out);
+            }
+            out.endArray();
+        }
+        if (_loops != null) {
+            out.name("loops");
+            out.beginArray();
+            for (Loop loop : _loops) {
+                if (loop == null)
+                    out.value(null);
+                else
+                    loop.writeJson(out);
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
 
-        return xstream.toXML(this);
+    /**
+     * Creates the elements of the segments that only have their raw text, since XStream reads the fields directly.
+     */
+    private void createElements() {
+        for (Segment segment : _segments)
+            segment.getElements();
+        for (Loop loop : _loops)
+            loop.createElements();
     }
 
     @Override
@@ -805,4 +995,33 @@ public class Loop implements Iterable<Segment> {
     public int hashCode() {
         return Objects.hash(_separators, _id, _segments, _loops, _parent);
     }
+
+    /**
+     * The index of the descendant loops of an indexed loop. An index is never modified once it's built, it's replaced when the loops change.
+     */
+    private static final class LoopIndex {
+
+        private final Map<String, List<Loop>> _loops = new HashMap<>(); // the descendant loops by id, in the order of findLoop
+        private final Map<String, Boolean> _partialMatches = new ConcurrentHashMap<>(); // the results of hasLoop for the ids of no descendant loop
+
+        private LoopIndex(Loop loop) {
+            add(loop);
+        }
+
+        private void add(Loop parent) {
+            for (Loop loop : parent.getLoops()) {
+                _loops.computeIfAbsent(loop.getId(), k -> new ArrayList<>()).add(loop);
+                add(loop);
+            }
+        }
+
+        /**
+         * Returns true if the id of a descendant loop contains the given id, like {@link Loop#hasLoop(String)}.
+         */
+        private boolean hasLoop(String id) {
+            if (_loops.containsKey(id))
+                return true;
+            return _partialMatches.computeIfAbsent(id, k -> _loops.keySet().stream().anyMatch(loopId -> loopId != null && loopId.contains(k)));
+        }
+    }
 }
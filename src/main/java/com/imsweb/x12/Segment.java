@@ -1,12 +1,15 @@
 package com.imsweb.x12;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamOmitField;
@@ -17,16 +20,26 @@ import com.imsweb.x12.mapping.SegmentDefinition;
 
 /**
  * This class represents an X12 segment.
+ * <br/><br/>
+ * The segments created by the reader keep their raw text: their elements are only created when they are first accessed. Like the other segments, a
+ * parsed segment can be read by several threads at the same time; its elements are created once, by the first thread that needs them.
  */
 @XStreamAlias("segment")
 public class Segment implements Iterable<Element> {
 
+    private static final int _MAX_CACHED_SEGMENT_IDS = 1024;
+    private static final int _MAX_CACHED_SEQUENCE = 99;
+    private static final Map<String, String[]> _ELEMENT_IDS = new ConcurrentHashMap<>();
+    private static final int[] _NO_POSITIONS = new int[0];
+
     @XStreamOmitField
-    private Separators _separators;
+    private volatile Separators _separators;
     @XStreamAlias("id")
     private String _id;
     @XStreamAlias("elements")
     private List<Element> _elements = new ArrayList<>();
+    @XStreamOmitField
+    private volatile RawElements _raw; // the elements that weren't created yet, null once they are
 
     /**
      * Construct with the default separators
@@ -76,6 +89,8 @@ public class Segment implements Iterable<Element> {
      * @param id is the segment name
      */
     public void setId(String id) {
+        // the pending elements are identified by the current id
+        elements();
         _id = id;
     }
 
@@ -83,7 +98,13 @@ public class Segment implements Iterable<Element> {
      * Returns the separator definitions
      * @return Separators object
      */
-    public Separators getSeparators() {
+    public synchronized Separators getSeparators() {
+        // the segments created by the reader share read-only separators, the segment gets its own copy so they can be modified; its raw text can't be
+        // used once they are
+        if (_separators != null && _separators.isShared()) {
+            elements();
+            _separators = new Separators(_separators);
+        }
         return _separators;
     }
 
@@ -91,7 +112,7 @@ public class Segment implements Iterable<Element> {
      * @return List of elements
      */
     public List<Element> getElements() {
-        return _elements;
+        return elements();
     }
 
     /**
@@ -100,6 +121,7 @@ public class Segment implements Iterable<Element> {
      */
     public void setElements(List<Element> elements) {
         _elements = elements;
+        _raw = null;
     }
 
     /**
@@ -108,7 +130,7 @@ public class Segment implements Iterable<Element> {
      * @return boolean
      */
     public boolean addElement(Element element) {
-        return _elements.add(element);
+        return elements().add(element);
     }
 
     /**
@@ -118,7 +140,7 @@ public class Segment implements Iterable<Element> {
      * @return boolean
      */
     public boolean addElement(String id, String value) {
-        return _elements.add(new Element(id, value));
+        return elements().add(new Element(id, value));
     }
 
     /**
@@ -131,10 +153,7 @@ public class Segment implements Iterable<Element> {
         if (_id == null || elementText == null)
             throw new IllegalStateException("No segment identifier has been set");
 
-        int elementIdNum = _elements.size() + 1;
-        String elementId = (_elements.size() < 10) ? _id + "0" + elementIdNum : _id + elementIdNum;
-
-        return addElements(new Element(elementId, elementText, _separators));
+        return addElements(new Element(getElementId(_id, elements().size() + 1), elementText, _separators));
     }
 
     /**
@@ -149,19 +168,74 @@ public class Segment implements Iterable<Element> {
      * @return boolean indicating success
      */
     public boolean addElements(String elementText) {
-        String[] elementsStr = _separators.splitElement(elementText);
-        if (elementsStr == null)
+        int numSeparators = _separators.findElementSeparators(elementText, _NO_POSITIONS);
+        if (numSeparators == -1)
+            return false;
+
+        int[] positions = new int[numSeparators];
+        _separators.findElementSeparators(elementText, positions);
+        return addElements(elementText, positions);
+    }
+
+    /**
+     * Adds elements to the segment from raw text where the element separators were already located, for example by the X12 reader. This gives the
+     * same result as {@link #addElements(String)} without splitting the text again.
+     * @param elementText raw text representing the elements of a segment
+     * @param separatorPositions positions of all the element separators in the text
+     * @return boolean indicating success
+     */
+    public boolean addElements(String elementText, int[] separatorPositions) {
+        return addElements(elementText, separatorPositions, null);
+    }
+
+    /**
+     * Adds elements to the segment from raw text where the element separators were already located, like {@link #addElements(String, int[])}. The
+     * segment id and the element values are taken from the given pool.
+     * @param elementText raw text representing the elements of a segment
+     * @param separatorPositions positions of all the element separators in the text
+     * @param pool the pool of values, null to not use one
+     * @return boolean indicating success
+     */
+    public boolean addElements(String elementText, int[] separatorPositions, ValuePool pool) {
+        if (elementText == null || separatorPositions == null)
             return false;
 
-        Element[] elements = new Element[elementsStr.length - 1];
+        // like String.split, trailing empty elements are ignored
+        int numElements = separatorPositions.length;
+        int end = elementText.length();
+        while (numElements > 0 && separatorPositions[numElements - 1] + 1 == end)
+            end = separatorPositions[--numElements];
 
-        _id = elementsStr[0];
-        for (int i = 1; i < elementsStr.length; i++) {
-            String elementId = (i < 10) ? _id + "0" + i : _id + i;
-            elements[i - 1] = new Element(elementId, elementsStr[i], _separators);
+        elements();
+        int idEnd = numElements == 0 ? end : separatorPositions[0];
+        _id = pool == null ? elementText.substring(0, idEnd) : pool.get(elementText, 0, idEnd);
+
+        // the elements are only created when they are accessed, unless they are added after other ones
+        RawElements raw = new RawElements(elementText, separatorPositions, numElements, end, pool);
+        if (_elements.isEmpty()) {
+            _raw = raw;
+            return true;
         }
+        return addElements(raw.createElements(_id, _separators));
+    }
 
-        return addElements(elements);
+    /**
+     * Returns the elements of the segment, after creating the ones that are only available as raw text. The elements are created once, while holding the
+     * lock of the segment; the raw text is only dropped once they were all added, so the threads that don't take the lock see either the raw text or all
+     * the elements.
+     * @return the list of elements
+     */
+    private List<Element> elements() {
+        if (_raw != null) {
+            synchronized (this) {
+                RawElements raw = _raw;
+                if (raw != null) {
+                    Collections.addAll(_elements, raw.createElements(_id, _separators));
+                    _raw = null;
+                }
+            }
+        }
+        return _elements;
     }
 
     /**
@@ -172,7 +246,7 @@ public class Segment implements Iterable<Element> {
      */
     public boolean addElements(Element... elements) {
         for (Element s : elements) {
-            if (!_elements.add(s) || _id == null)
+            if (!elements().add(s) || _id == null)
                 return false;
         }
 
@@ -192,7 +266,7 @@ public class Segment implements Iterable<Element> {
             dump.append(_separators.getCompositeElement());
         }
 
-        return _elements.add(new Element(id, dump.substring(0, dump.length() - 1), _separators));
+        return elements().add(new Element(id, dump.substring(0, dump.length() - 1), _separators));
     }
 
     /**
@@ -201,7 +275,7 @@ public class Segment implements Iterable<Element> {
      * @param element the element to be added
      */
     public void addElement(int index, Element element) {
-        _elements.add(index, element);
+        elements().add(index, element);
     }
 
     /**
@@ -216,7 +290,7 @@ public class Segment implements Iterable<Element> {
             dump.append(s);
             dump.append(_separators.getCompositeElement());
         }
-        _elements.add(index, new Element(id, dump.substring(0, dump.length() - 1), _separators));
+        elements().add(index, new Element(id, dump.substring(0, dump.length() - 1), _separators));
     }
 
     /**
@@ -225,11 +299,16 @@ public class Segment implements Iterable<Element> {
      * @return the element at the specified position.
      */
     public Element getElement(String id) {
-        for (Element elem : _elements)
-            if (elem.getId().equals(id))
-                return elem;
+        return findElement(id, getSequence(id));
+    }
 
-        return null;
+    /**
+     * Returns the element with the given sequence number, for example 1 for CLM01 in a CLM segment.
+     * @param sequence the sequence number of the element, starting at 1
+     * @return the element, null if the segment doesn't have it
+     */
+    public Element getElement(int sequence) {
+        return _id == null || sequence < 1 ? null : findElement(getElementId(_id, sequence), sequence);
     }
 
     /**
@@ -238,11 +317,27 @@ public class Segment implements Iterable<Element> {
      * @return element value as a String
      */
     public String getElementValue(String id) {
-        for (Element elem : _elements)
-            if (elem.getId().equals(id))
-                return elem.getValue();
+        int sequence = getSequence(id);
+        RawElements raw = _raw;
+        if (raw != null)
+            return raw.getValue(sequence);
 
-        return null;
+        Element elem = findElement(id, sequence);
+        return elem == null ? null : elem.getValue();
+    }
+
+    /**
+     * Returns the value of the element with the given sequence number, for example 1 for CLM01 in a CLM segment.
+     * @param sequence the sequence number of the element, starting at 1
+     * @return the element value, null if the segment doesn't have it
+     */
+    public String getElementValue(int sequence) {
+        RawElements raw = _raw;
+        if (raw != null)
+            return raw.getValue(sequence);
+
+        Element elem = getElement(sequence);
+        return elem == null ? null : elem.getValue();
     }
 
     /**
@@ -252,20 +347,84 @@ public class Segment implements Iterable<Element> {
      * @return element value as a String
      */
     public String getElement(String id, int index) {
-        for (Element elem : _elements)
+        Element elem = getElement(id);
+        return elem == null ? null : elem.getSubElement(index);
+    }
+
+    /**
+     * Returns the element with the given id. The elements are normally stored in the order of their sequence number, so the element at that position is
+     * checked first; the other ones are only searched if the elements were added out of order.
+     * @param id the element id
+     * @param sequence the sequence number of the element, -1 if the id doesn't have one
+     * @return the element, null if not found
+     */
+    private Element findElement(String id, int sequence) {
+        List<Element> elements = elements();
+        if (sequence > 0 && sequence <= elements.size() && elements.get(sequence - 1).getId().equals(id))
+            return elements.get(sequence - 1);
+
+        for (Element elem : elements)
             if (elem.getId().equals(id))
-                return elem.getSubElement(index);
+                return elem;
 
         return null;
     }
 
+    /**
+     * Returns the sequence number of an element id of this segment, for example 1 for CLM01 in a CLM segment.
+     * @param id the element id
+     * @return the sequence number, -1 if the id is not the segment id followed by a sequence number
+     */
+    private int getSequence(String id) {
+        if (_id == null || id == null || !id.startsWith(_id))
+            return -1;
+
+        int length = id.length() - _id.length();
+        if (length < 2 || length > 4)
+            return -1;
+        int sequence = 0;
+        for (int i = _id.length(); i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            sequence = sequence * 10 + (c - '0');
+        }
+
+        // the sequence numbers have two digits at least, without any other leading zero
+        int digits = sequence < 100 ? 2 : (sequence < 1000 ? 3 : 4);
+        return sequence > 0 && length == digits ? sequence : -1;
+    }
+
+    /**
+     * Returns the id of an element of a segment, for example CLM01 for the first element of a CLM segment. The ids are shared between the segments
+     * with the same id, so the elements don't each have their own copy.
+     * @param segmentId the segment id
+     * @param sequence the sequence number of the element, starting at 1
+     * @return the element id
+     */
+    static String getElementId(String segmentId, int sequence) {
+        String[] ids = _ELEMENT_IDS.get(segmentId);
+        if (ids == null || sequence >= ids.length) {
+            // the ids are only cached for a limited number of segment ids, since the segment ids of an invalid file can be anything
+            if (sequence > _MAX_CACHED_SEQUENCE || (ids == null && _ELEMENT_IDS.size() >= _MAX_CACHED_SEGMENT_IDS))
+                return sequence < 10 ? segmentId + "0" + sequence : segmentId + sequence;
+
+            String[] newIds = new String[Math.max(sequence + 1, ids == null ? 0 : ids.length * 2)];
+            for (int i = 1; i < newIds.length; i++)
+                newIds[i] = ids != null && i < ids.length ? ids[i] : (i < 10 ? segmentId + "0" + i : segmentId + i);
+            _ELEMENT_IDS.put(segmentId, newIds);
+            ids = newIds;
+        }
+        return ids[sequence];
+    }
+
     /**
      * Removes the element at the specified position in this list.
      * @param index element index
      * @return the removed Element
      */
     public Element removeElement(int index) {
-        return _elements.remove(index - 1);
+        return elements().remove(index - 1);
     }
 
     /**
@@ -273,6 +432,7 @@ public class Segment implements Iterable<Element> {
      * @param separators separator definitions
      */
     public void setSeparators(Separators separators) {
+        elements();
         _separators = separators;
     }
 
@@ -282,7 +442,7 @@ public class Segment implements Iterable<Element> {
      * @param elementText new element with which to replace
      */
     public void setElement(int index, String elementText) {
-        _elements.get(index - 1).setValue(elementText);
+        elements().get(index - 1).setValue(elementText);
     }
 
     /**
@@ -296,7 +456,7 @@ public class Segment implements Iterable<Element> {
             dump.append(s);
             dump.append(_separators.getCompositeElement());
         }
-        _elements.get(index - 1).setValue(dump.substring(0, dump.length() - 1));
+        elements().get(index - 1).setValue(dump.substring(0, dump.length() - 1));
     }
 
     /**
@@ -304,7 +464,8 @@ public class Segment implements Iterable<Element> {
      * @return number of elements in the segment
      */
     public int size() {
-        return _elements.size();
+        RawElements raw = _raw;
+        return raw != null ? raw._numElements : _elements.size();
     }
 
     /**
@@ -313,7 +474,7 @@ public class Segment implements Iterable<Element> {
      */
     @Override
     public Iterator<Element> iterator() {
-        return _elements.iterator();
+        return elements().iterator();
     }
 
     /**
@@ -332,7 +493,7 @@ public class Segment implements Iterable<Element> {
                 .append(Separators.getIdString(parentIds))
                 .append("\" class=\"x12-segment\">");
         output.append("<p>").append(segmentDefinition.getName()).append(" (").append(_id).append(")</p>");
-        for (Element e : _elements) {
+        for (Element e : elements()) {
             if (segmentDefinition.getElements() != null) {
                 Optional<ElementDefinition> elementDef = segmentDefinition
                         .getElements()
@@ -359,7 +520,7 @@ public class Segment implements Iterable<Element> {
         res.put("segmentIndex", segmentIndex);
         res.put("type", "segment");
         List<Map<String, Object>> children = new ArrayList<>();
-        for (Element e : _elements) {
+        for (Element e : elements()) {
             Optional<ElementDefinition> elementDef = Optional.empty();
             Optional<CompositeDefinition> compositeDef = Optional.empty();
             if (segmentDefinition.getElements() != null) {
@@ -384,16 +545,53 @@ public class Segment implements Iterable<Element> {
         return res;
     }
 
+    /**
+     * Writes this segment as a JSON object, with the members XStream wrote for its fields. The elements that are only available as raw text are written
+     * without being created.
+     */
+    void writeJson(JsonOutput out) throws IOException {
+        out.beginObject();
+        if (_id != null) {
+            out.name("id");
+            out.value(_id);
+        }
+        RawElements raw = _raw;
+        if (raw != null) {
+            out.name("elements");
+            out.beginArray();
+            for (int i = 1; i <= raw._numElements; i++)
+                Element.writeJson(out, getElementId(_id, i), raw.getValue(i), null, _separators);
+            out.endArray();
+        }
+        else if (_elements != null) {
+            out.name("elements");
+            out.beginArray();
+            for (Element element : _elements) {
+                if (element == null)
+                    out.value(null);
+                else
+                    element.writeJson(out);
+            }
+            out.endArray();
+        }
+        out.endObject();
+    }
+
     /**
      * Returns the X12 representation of the segment.
      * @return X12 representation as a String
      */
     @Override
     public String toString() {
+        // the raw text is the same as the elements separated again
+        RawElements raw = _raw;
+        if (raw != null)
+            return raw._text.substring(0, raw._end);
+
         StringBuilder output = new StringBuilder();
         output.append(_id);
         output.append(_separators.getElement());
-        for (Element e : _elements) {
+        for (Element e : elements()) {
             output.append(e.toString());
             output.append(_separators.getElement());
         }
@@ -413,11 +611,52 @@ public class Segment implements Iterable<Element> {
         Segment elements = (Segment)o;
         return Objects.equals(_separators, elements._separators) &&
                 Objects.equals(_id, elements._id) &&
-                Objects.equals(_elements, elements._elements);
+                Objects.equals(elements(), elements.elements());
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(_separators, _id, _elements);
+        return Objects.hash(_separators, _id, elements());
+    }
+
+    /**
+     * The raw text of the elements of a parsed segment, with the positions of its element separators. Instances are immutable, so they can be read by
+     * several threads.
+     */
+    private static final class RawElements {
+
+        private final String _text;
+        private final int[] _separatorPositions;
+        private final int _numElements;
+        private final int _end; // the end of the text, without its trailing empty elements
+        private final ValuePool _pool; // the pool of the values, null if there is none
+
+        private RawElements(String text, int[] separatorPositions, int numElements, int end, ValuePool pool) {
+            _text = text;
+            _separatorPositions = separatorPositions;
+            _numElements = numElements;
+            _end = end;
+            _pool = pool;
+        }
+
+        /**
+         * Returns the value of an element
+         * @param sequence the sequence number of the element, starting at 1
+         * @return the value, null if there is no such element
+         */
+        private String getValue(int sequence) {
+            if (sequence < 1 || sequence > _numElements)
+                return null;
+            int start = _separatorPositions[sequence - 1] + 1;
+            int valueEnd = sequence < _numElements ? _separatorPositions[sequence] : _end;
+            return _pool == null ? _text.substring(start, valueEnd) : _pool.get(_text, start, valueEnd);
+        }
+
+        private Element[] createElements(String segmentId, Separators separators) {
+            Element[] elements = new Element[_numElements];
+            for (int i = 1; i <= _numElements; i++)
+                elements[i - 1] = new Element(getElementId(segmentId, i), getValue(i), separators);
+            return elements;
+        }
     }
 }
@@ -0,0 +1,113 @@
+package com.imsweb.x12;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An index of the segments of a loop tree, by segment id and by the values of some elements, for example the NM1 segments with NM101=85 or the REF
+ * segments with REF01=G1:
+ * <pre>
+ * SegmentIndex index = new SegmentIndex(loop, "NM101", "REF01");
+ * for (SegmentIndex.Entry entry : index.getSegments("NM101", "85"))
+ *     process(entry.getLoop(), entry.getSegment());
+ * </pre>
+ * The index is built in a single traversal of the tree; it's a snapshot, it doesn't reflect the changes made to the tree after it was built. The segments
+ * are returned in the order of the tree: the segments of a loop, followed by the ones of its child loops.
+ */
+public final class SegmentIndex {
+
+    private final Map<String, List<Entry>> _segments = new HashMap<>();
+    private final Map<String, Map<String, List<Entry>>> _values = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param loop the loop to index, with its descendants
+     * @param elementIds the ids of the elements to index the segments by (for example NM101); the segment id is the element id without its two-digit
+     * sequence number
+     */
+    public SegmentIndex(Loop loop, String... elementIds) {
+        // the indexed elements of each segment id
+        Map<String, List<Integer>> sequences = new HashMap<>();
+        for (String elementId : elementIds) {
+            int sequence = elementId.length() > 2 ? parseSequence(elementId.substring(elementId.length() - 2)) : -1;
+            if (sequence < 1)
+                throw new IllegalArgumentException("Invalid element id: " + elementId);
+            sequences.computeIfAbsent(elementId.substring(0, elementId.length() - 2), k -> new ArrayList<>()).add(sequence);
+            _values.put(elementId, new HashMap<>());
+        }
+
+        index(loop, sequences);
+    }
+
+    private void index(Loop loop, Map<String, List<Integer>> sequences) {
+        for (Segment segment : loop.getSegments()) {
+            Entry entry = new Entry(loop, segment);
+            _segments.computeIfAbsent(segment.getId(), k -> new ArrayList<>()).add(entry);
+
+            List<Integer> indexed = sequences.get(segment.getId());
+            if (indexed != null) {
+                for (Integer sequence : indexed) {
+                    String value = segment.getElementValue(sequence);
+                    if (value != null)
+                        _values.get(Segment.getElementId(segment.getId(), sequence)).computeIfAbsent(value, k -> new ArrayList<>()).add(entry);
+                }
+            }
+        }
+        for (Loop child : loop.getLoops())
+            index(child, sequences);
+    }
+
+    private static int parseSequence(String digits) {
+        if (!Character.isDigit(digits.charAt(0)) || !Character.isDigit(digits.charAt(1)))
+            return -1;
+        return Integer.parseInt(digits);
+    }
+
+    /**
+     * Returns the segments with the given id.
+     * @param segmentId the segment id
+     * @return the segments, with the loop they belong to; an empty list if there are none
+     */
+    public List<Entry> getSegments(String segmentId) {
+        return Collections.unmodifiableList(_segments.getOrDefault(segmentId, Collections.emptyList()));
+    }
+
+    /**
+     * Returns the segments having the given value for an element.
+     * @param elementId the element id, one of the ids the index was built with
+     * @param value the value of the element
+     * @return the segments, with the loop they belong to; an empty list if there are none
+     * @throws IllegalArgumentException if the index wasn't built with the element id
+     */
+    public List<Entry> getSegments(String elementId, String value) {
+        Map<String, List<Entry>> values = _values.get(elementId);
+        if (values == null)
+            throw new IllegalArgumentException("The segments are not indexed by " + elementId);
+        return Collections.unmodifiableList(values.getOrDefault(value, Collections.emptyList()));
+    }
+
+    /**
+     * A segment of the index, with the loop it belongs to.
+     */
+    public static final class Entry {
+
+        private final Loop _loop;
+        private final Segment _segment;
+
+        private Entry(Loop loop, Segment segment) {
+            _loop = loop;
+            _segment = segment;
+        }
+
+        public Loop getLoop() {
+            return _loop;
+        }
+
+        public Segment getSegment() {
+            return _segment;
+        }
+    }
+}
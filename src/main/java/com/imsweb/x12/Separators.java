@@ -1,28 +1,35 @@
 package com.imsweb.x12;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Objects;
-import java.util.regex.Pattern;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * The class represents an X12 separator definition. A separators object consists of a segment separator, element separator and a composite element separator.
+ * <br/><br/>
+ * The instances returned by {@link #of(char, char, char)} are shared, and must not be modified; they are the ones used by the reader, so the loops of all
+ * the files with the same separators share them, including across threads. The loops, segments and elements never return them: they replace them with
+ * their own copy, see {@link #Separators(Separators)}, when their separators are requested.
  */
 public class Separators {
 
     public static final String HTML_ID_SEPARATOR = "__";
 
+    private static final Map<String, Separators> _SHARED = new ConcurrentHashMap<>();
+
     private Character _segment;
     private Character _element;
     private Character _composite;
-    private Pattern _segmentPattern;
-    private Pattern _elementPattern;
-    private Pattern _compositePattern;
     private LineBreak _lineBreak;
+    private final boolean _shared;
 
     /**
      * Default constructor.
      */
     public Separators() {
+        _shared = false;
         setSegment('~');
         setElement('*');
         setCompositeElement(':');
@@ -36,12 +43,52 @@ public class Separators {
      * @param composite composite element separator
      */
     public Separators(Character segment, Character element, Character composite) {
+        _shared = false;
         setSegment(segment);
         setElement(element);
         setCompositeElement(composite);
         setLineBreak(LineBreak.NONE);
     }
 
+    /**
+     * Copy constructor; the copy can be modified, even if the given separators are shared.
+     * @param separators the separators to copy
+     */
+    public Separators(Separators separators) {
+        _shared = false;
+        _segment = separators.getSegment();
+        _element = separators.getElement();
+        _composite = separators.getCompositeElement();
+        _lineBreak = separators.getLineBreak();
+    }
+
+    private Separators(char segment, char element, char composite, boolean shared) {
+        _segment = segment;
+        _element = element;
+        _composite = composite;
+        _lineBreak = LineBreak.NONE;
+        _shared = shared;
+    }
+
+    /**
+     * Returns the shared separators with the given characters, without a line break. The instance must not be modified; use a copy to change them.
+     * @param segment segment separator
+     * @param element element separator
+     * @param composite composite element separator
+     * @return the separators
+     */
+    public static Separators of(char segment, char element, char composite) {
+        return _SHARED.computeIfAbsent(new String(new char[] {segment, element, composite}), k -> new Separators(segment, element, composite, true));
+    }
+
+    /**
+     * Returns true if this instance is shared, and must not be modified.
+     * @return true if the separators are shared
+     */
+    public boolean isShared() {
+        return _shared;
+    }
+
     /**
      * Returns the composite element separator.
      * @return composite element separator
@@ -72,7 +119,6 @@ public class Separators {
      */
     public void setCompositeElement(Character c) {
         _composite = c;
-        _compositePattern = c == null ? null : Pattern.compile(Pattern.quote(c.toString()));
     }
 
     /**
@@ -81,7 +127,6 @@ public class Separators {
      */
     public void setElement(Character e) {
         _element = e;
-        _elementPattern = e == null ? null : Pattern.compile(Pattern.quote(e.toString()));
     }
 
     /**
@@ -90,7 +135,6 @@ public class Separators {
      */
     public void setSegment(Character s) {
         _segment = s;
-        _segmentPattern = s == null ? null : Pattern.compile(Pattern.quote(s.toString()));
     }
 
     /**
@@ -102,15 +146,35 @@ public class Separators {
     }
 
     public String[] splitElement(String line) {
-        return (line != null && _elementPattern != null) ? _elementPattern.split(line) : null;
+        return split(line, _element);
     }
 
     public String[] splitSegment(String line) {
-        return (line != null && _segmentPattern != null) ? _segmentPattern.split(line) : null;
+        return split(line, _segment);
     }
 
     public String[] splitComposite(String line) {
-        return (line != null && _compositePattern != null) ? _compositePattern.split(line) : null;
+        return split(line, _composite);
+    }
+
+    /**
+     * Finds the element separators of a segment.
+     * @param line the text of the segment
+     * @param positions the array receiving the positions of the separators, in order; the positions that don't fit are not written
+     * @return the number of separators in the text, which can be greater than the length of the array; -1 if the text or the separator is null
+     */
+    public int findElementSeparators(CharSequence line, int[] positions) {
+        return find(line, _element, positions);
+    }
+
+    /**
+     * Finds the composite separators of an element.
+     * @param value the value of the element
+     * @param positions the array receiving the positions of the separators, in order; the positions that don't fit are not written
+     * @return the number of separators in the value, which can be greater than the length of the array; -1 if the value or the separator is null
+     */
+    public int findCompositeSeparators(CharSequence value, int[] positions) {
+        return find(value, _composite, positions);
     }
 
     public LineBreak getLineBreak() {
@@ -121,6 +185,49 @@ public class Separators {
         this._lineBreak = lineBreak;
     }
 
+    private static int find(CharSequence text, Character separator, int[] positions) {
+        if (text == null || separator == null)
+            return -1;
+
+        char c = separator;
+        int count = 0;
+        for (int i = 0; i < text.length(); i++) {
+            if (text.charAt(i) == c) {
+                if (count < positions.length)
+                    positions[count] = i;
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Splits a text on a separator, with the same result as a regular expression split: the trailing empty values are ignored.
+     */
+    private static String[] split(String line, Character separator) {
+        if (line == null || separator == null)
+            return null;
+
+        char c = separator;
+        int idx = line.indexOf(c);
+        if (idx == -1)
+            return new String[] {line};
+
+        List<String> result = new ArrayList<>();
+        int start = 0;
+        while (idx != -1) {
+            result.add(line.substring(start, idx));
+            start = idx + 1;
+            idx = line.indexOf(c, start);
+        }
+        result.add(line.substring(start));
+
+        int size = result.size();
+        while (size > 0 && result.get(size - 1).isEmpty())
+            size--;
+        return result.subList(0, size).toArray(new String[0]);
+    }
+
     /**
      * This method produces an ID string from a list of IDs that is used when creating
      * HTML contents from the x12 file.
@@ -0,0 +1,111 @@
+package com.imsweb.x12;
+
+/**
+ * A bounded pool of element values, used by the reader to share the values that repeat across the segments of a file (qualifiers, codes, identifiers,
+ * dates) instead of creating a new String for each occurrence. The loops of a file parsed with a pool take less memory, which matters when they are kept
+ * for a long time.
+ * <br/><br/>
+ * The pool is a fixed-size table of sets of two slots, the set of a value being determined by its hash, so the pool never grows beyond its size. Each slot
+ * counts the times its value was found, up to a small limit. A new value only takes the second slot of its set, replacing the value that was there;
+ * it swaps places with the value of the first slot once it was found more times than it. So the value of the first slot is only replaced after another
+ * value of its set was found more often: the values seen once (like claim numbers or dates) pass through the second slots, while the values that repeat
+ * the most (like qualifiers and codes) stay in the first ones. A value that is found in the pool is returned without creating any String. The values
+ * longer than {@value #MAX_LENGTH} characters are never pooled.
+ * <br/><br/>
+ * A pool can be used for a single file, or shared between readers, including readers parsing files concurrently.
+ */
+public final class ValuePool {
+
+    /**
+     * The maximum length of the pooled values.
+     */
+    public static final int MAX_LENGTH = 64;
+
+    // the hits are capped, so a value that stopped repeating can be replaced by a value that repeats now
+    private static final int _MAX_HITS = 15;
+
+    private final String[] _values; // the two slots of each set, one after the other
+    private final byte[] _hits; // the number of times the value of each slot was found
+    private final int _mask;
+
+    /**
+     * Constructor
+     * @param size the maximum number of values in the pool, rounded up to a power of two (and to at least 2)
+     */
+    public ValuePool(int size) {
+        if (size < 1 || size > (1 << 30))
+            throw new IllegalArgumentException("The size of the pool must be between 1 and 2^30, got " + size);
+        int capacity = Math.max(2, Integer.highestOneBit(size));
+        if (capacity < size)
+            capacity <<= 1;
+        _values = new String[capacity];
+        _hits = new byte[capacity];
+        _mask = capacity / 2 - 1;
+    }
+
+    /**
+     * Returns the maximum number of values in the pool.
+     * @return the size of the pool
+     */
+    public int getSize() {
+        return _values.length;
+    }
+
+    /**
+     * Returns the pooled value equal to a part of a text, adding it to the pool if needed.
+     * @param text text containing the value
+     * @param start position of the first character of the value
+     * @param end position after the last character of the value
+     * @return a String equal to the value
+     */
+    public String get(String text, int start, int end) {
+        int length = end - start;
+        if (length > MAX_LENGTH)
+            return text.substring(start, end);
+
+        int hash = 0;
+        for (int i = start; i < end; i++)
+            hash = 31 * hash + text.charAt(i);
+        int slot = ((hash ^ (hash >>> 16)) & _mask) << 1;
+
+        // Strings are immutable, so a value read concurrently with its slot being replaced is still a valid value; concurrent updates of a set can at
+        // worst lose a value, have it in both slots or miscount its hits, which only causes a later miss
+        String first = _values[slot];
+        if (matches(first, text, start, length)) {
+            if (_hits[slot] < _MAX_HITS)
+                _hits[slot]++;
+            return first;
+        }
+        String second = _values[slot + 1];
+        if (matches(second, text, start, length)) {
+            byte hits = (byte)Math.min(_hits[slot + 1] + 1, _MAX_HITS);
+            if (hits > _hits[slot]) {
+                _values[slot] = second;
+                _values[slot + 1] = first;
+                _hits[slot + 1] = _hits[slot];
+                _hits[slot] = hits;
+            }
+            else
+                _hits[slot + 1] = hits;
+            return second;
+        }
+
+        String value = text.substring(start, end);
+        _values[slot + 1] = value;
+        _hits[slot + 1] = 0;
+        return value;
+    }
+
+    private static boolean matches(String value, String text, int start, int length) {
+        return value != null && value.length() == length && value.regionMatches(0, text, start, length);
+    }
+
+    /**
+     * Returns the pooled value equal to the given one, adding it to the pool if needed.
+     * @param value the value
+     * @return a String equal to the value, null if the value is null
+     */
+    public String get(String value) {
+        return value == null ? null : get(value, 0, value.length());
+    }
+}
@@ -0,0 +1,322 @@
+/*
+ * Copyright (C) 2015 Information Management Services, Inc.
+ */
+package com.imsweb.x12.mapping;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.imsweb.x12.mapping.TransactionDefinition.Usage;
+
+/**
+ * Reads and writes transaction definitions in a compact binary format. The mappings are compiled into this format when the library is built, since
+ * reading it is much faster than parsing the XML mappings.
+ * <br/><br/>
+ * The format starts with a table of all the distinct strings of the definition; the definition tree follows, with the strings referenced by their
+ * position in the table. Numbers are written as variable-length integers.
+ */
+public final class BinaryMapping {
+
+    private static final int _MAGIC = 0x58313244;
+    private static final int _VERSION = 1;
+
+    private BinaryMapping() {
+        // utility class
+    }
+
+    /**
+     * Returns the name of the binary resource compiled from a mapping
+     * @param xmlMapping XML mapping resource, like "mapping/837.5010.X222.A1.xml"
+     * @return the binary resource, like "mapping/837.5010.X222.A1.bin"
+     */
+    public static String getResourceName(String xmlMapping) {
+        return xmlMapping.endsWith(".xml") ? xmlMapping.substring(0, xmlMapping.length() - 4) + ".bin" : xmlMapping + ".bin";
+    }
+
+    /**
+     * Writes a definition in the binary format
+     * @param definition definition to write
+     * @param output output stream, not closed by this method
+     * @throws IOException if the definition can't be written
+     */
+    public static void write(TransactionDefinition definition, OutputStream output) throws IOException {
+        Writer writer = new Writer();
+        writer.writeTransaction(definition);
+
+        DataOutputStream out = new DataOutputStream(output);
+        out.writeInt(_MAGIC);
+        out.writeShort(_VERSION);
+        writeVarInt(out, writer._strings.size());
+        for (String string : writer._strings)
+            out.writeUTF(string);
+        writer._body.writeTo(out);
+        out.flush();
+    }
+
+    /**
+     * Reads a definition written in the binary format
+     * @param input input stream, not closed by this method
+     * @return the definition
+     * @throws IOException if the definition can't be read, or was written in a different version of the format
+     */
+    public static TransactionDefinition read(InputStream input) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(input));
+        if (in.readInt() != _MAGIC)
+            throw new IOException("Not a binary mapping");
+        int version = in.readShort();
+        if (version != _VERSION)
+            throw new IOException("Unsupported binary mapping version: " + version);
+        String[] strings = new String[readVarInt(in)];
+        for (int i = 0; i < strings.length; i++)
+            strings[i] = in.readUTF();
+        return new Reader(in, strings).readTransaction();
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            if (shift > 28)
+                throw new IOException("Malformed binary mapping");
+        }
+    }
+
+    /**
+     * Writes the definition tree in a buffer while building the string table. Nulls are written as 0, everything else is shifted by one.
+     */
+    private static final class Writer {
+
+        private final ByteArrayOutputStream _body = new ByteArrayOutputStream();
+        private final DataOutputStream _out = new DataOutputStream(_body);
+        private final List<String> _strings = new ArrayList<>();
+        private final Map<String, Integer> _stringIndexes = new HashMap<>();
+
+        private void writeTransaction(TransactionDefinition transaction) throws IOException {
+            writeString(transaction.getXid());
+            writeString(transaction.getName());
+            writeLoop(transaction.getLoop());
+            _out.flush();
+        }
+
+        private void writeLoop(LoopDefinition loop) throws IOException {
+            writeString(loop.getXid());
+            writeString(loop.getType());
+            writeUsage(loop.getUsage());
+            writeString(loop.getPos());
+            writeString(loop.getRepeat());
+            writeString(loop.getName());
+            writeSize(loop.getSegment());
+            if (loop.getSegment() != null)
+                for (SegmentDefinition segment : loop.getSegment())
+                    writeSegment(segment);
+            writeSize(loop.getLoop());
+            if (loop.getLoop() != null)
+                for (LoopDefinition subloop : loop.getLoop())
+                    writeLoop(subloop);
+        }
+
+        private void writeSegment(SegmentDefinition segment) throws IOException {
+            writeString(segment.getXid());
+            writeString(segment.getName());
+            writeUsage(segment.getUsage());
+            writeString(segment.getPos());
+            writeString(segment.getMaxUse());
+            writeStrings(segment.getSyntax());
+            writeElements(segment.getElements());
+            writeSize(segment.getComposites());
+            if (segment.getComposites() != null) {
+                for (CompositeDefinition composite : segment.getComposites()) {
+                    writeString(composite.getXid());
+                    writeString(composite.getDataEle());
+                    writeString(composite.getName());
+                    writeString(composite.getUsage());
+                    writeString(composite.getSeq());
+                    writeString(composite.getRefDes());
+                    writeString(composite.getRepeat());
+                    writeElements(composite.getElements());
+                }
+            }
+        }
+
+        private void writeElements(List<ElementDefinition> elements) throws IOException {
+            writeSize(elements);
+            if (elements != null) {
+                for (ElementDefinition element : elements) {
+                    writeString(element.getXid());
+                    writeString(element.getDataEle());
+                    writeString(element.getName());
+                    writeUsage(element.getUsage());
+                    writeString(element.getSeq());
+                    writeString(element.getRefDes());
+                    writeString(element.getRepeat());
+                    writeString(element.getRegex());
+                    ValidCodesDefinition validCodes = element.getValidCodes();
+                    _out.writeBoolean(validCodes != null);
+                    if (validCodes != null) {
+                        writeString(validCodes.getExternal());
+                        writeStrings(validCodes.getCodes());
+                    }
+                }
+            }
+        }
+
+        private void writeStrings(List<String> strings) throws IOException {
+            writeSize(strings);
+            if (strings != null)
+                for (String string : strings)
+                    writeString(string);
+        }
+
+        private void writeSize(List<?> list) throws IOException {
+            writeVarInt(_out, list == null ? 0 : list.size() + 1);
+        }
+
+        private void writeUsage(Usage usage) throws IOException {
+            writeVarInt(_out, usage == null ? 0 : usage.ordinal() + 1);
+        }
+
+        private void writeString(String string) throws IOException {
+            if (string == null)
+                writeVarInt(_out, 0);
+            else {
+                Integer index = _stringIndexes.get(string);
+                if (index == null) {
+                    index = _strings.size();
+                    _strings.add(string);
+                    _stringIndexes.put(string, index);
+                }
+                writeVarInt(_out, index + 1);
+            }
+        }
+    }
+
+    /**
+     * Reads the definition tree; the strings are shared between all the definitions that use them.
+     */
+    private static final class Reader {
+
+        private static final Usage[] _USAGES = Usage.values();
+
+        private final DataInputStream _in;
+        private final String[] _strings;
+
+        private Reader(DataInputStream in, String[] strings) {
+            _in = in;
+            _strings = strings;
+        }
+
+        private TransactionDefinition readTransaction() throws IOException {
+            return new TransactionDefinition(readString(), readString(), readLoop());
+        }
+
+        private LoopDefinition readLoop() throws IOException {
+            String xid = readString();
+            String type = readString();
+            Usage usage = readUsage();
+            String pos = readString();
+            String repeat = readString();
+            String name = readString();
+            List<SegmentDefinition> segments = null;
+            int size = readSize();
+            if (size >= 0) {
+                segments = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    segments.add(readSegment());
+            }
+            List<LoopDefinition> loops = null;
+            size = readSize();
+            if (size >= 0) {
+                loops = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    loops.add(readLoop());
+            }
+            return new LoopDefinition(xid, type, usage, pos, repeat, name, segments, loops);
+        }
+
+        private SegmentDefinition readSegment() throws IOException {
+            String xid = readString();
+            String name = readString();
+            Usage usage = readUsage();
+            String pos = readString();
+            String maxUse = readString();
+            List<String> syntax = readStrings();
+            List<ElementDefinition> elements = readElements();
+            List<CompositeDefinition> composites = null;
+            int size = readSize();
+            if (size >= 0) {
+                composites = new ArrayList<>(size);
+                for (int i = 0; i < size; i++)
+                    composites.add(new CompositeDefinition(readString(), readString(), readString(), readString(), readString(), readString(), readString(), readElements()));
+            }
+            return new SegmentDefinition(xid, name, usage, pos, maxUse, syntax, elements, composites);
+        }
+
+        private List<ElementDefinition> readElements() throws IOException {
+            int size = readSize();
+            if (size < 0)
+                return null;
+            List<ElementDefinition> elements = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                String xid = readString();
+                String dataEle = readString();
+                String name = readString();
+                Usage usage = readUsage();
+                String seq = readString();
+                String refDes = readString();
+                String repeat = readString();
+                String regex = readString();
+                ValidCodesDefinition validCodes = _in.readBoolean() ? new ValidCodesDefinition(readString(), readStrings()) : null;
+                elements.add(new ElementDefinition(xid, dataEle, name, usage, seq, refDes, repeat, regex, validCodes));
+            }
+            return elements;
+        }
+
+        private List<String> readStrings() throws IOException {
+            int size = readSize();
+            if (size < 0)
+                return null;
+            List<String> strings = new ArrayList<>(size);
+            for (int i = 0; i < size; i++)
+                strings.add(readString());
+            return strings;
+        }
+
+        private int readSize() throws IOException {
+            return readVarInt(_in) - 1;
+        }
+
+        private Usage readUsage() throws IOException {
+            int value = readVarInt(_in);
+            if (value > _USAGES.length)
+                throw new IOException("Malformed binary mapping");
+            return value == 0 ? null : _USAGES[value - 1];
+        }
+
+        private String readString() throws IOException {
+            int value = readVarInt(_in);
+            if (value > _strings.length)
+                throw new IOException("Malformed binary mapping");
+            return value == 0 ? null : _strings[value - 1];
+        }
+    }
+}
@@ -31,6 +31,21 @@ public class CompositeDefinition {
     @XStreamImplicit
     private List<ElementDefinition> _elements;
 
+    public CompositeDefinition() {
+        // used by XStream
+    }
+
+    CompositeDefinition(String xid, String dataEle, String name, String usage, String seq, String refDes, String repeat, List<ElementDefinition> elements) {
+        _xid = xid;
+        _dataEle = dataEle;
+        _name = name;
+        _usage = usage;
+        _seq = seq;
+        _refDes = refDes;
+        _repeat = repeat;
+        _elements = elements;
+    }
+
     public String getXid() {
         return _xid;
     }
@@ -33,6 +33,22 @@ public class ElementDefinition {
     @XStreamAlias("valid_codes")
     private ValidCodesDefinition _validCodes;
 
+    public ElementDefinition() {
+        // used by XStream
+    }
+
+    ElementDefinition(String xid, String dataEle, String name, Usage usage, String seq, String refDes, String repeat, String regex, ValidCodesDefinition validCodes) {
+        _xid = xid;
+        _dataEle = dataEle;
+        _name = name;
+        _usage = usage;
+        _seq = seq;
+        _refDes = refDes;
+        _repeat = repeat;
+        _regex = regex;
+        _validCodes = validCodes;
+    }
+
     public String getXid() {
         return _xid;
     }
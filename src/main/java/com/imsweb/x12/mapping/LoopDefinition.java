@@ -3,14 +3,19 @@
  */
 package com.imsweb.x12.mapping;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
 
 import com.imsweb.x12.mapping.TransactionDefinition.Usage;
 import com.thoughtworks.xstream.annotations.XStreamAlias;
 import com.thoughtworks.xstream.annotations.XStreamAsAttribute;
 import com.thoughtworks.xstream.annotations.XStreamConverter;
 import com.thoughtworks.xstream.annotations.XStreamImplicit;
+import com.thoughtworks.xstream.annotations.XStreamOmitField;
 
 @XStreamAlias("loop")
 public class LoopDefinition implements Positioned {
@@ -36,6 +41,24 @@ public class LoopDefinition implements Positioned {
     @XStreamAlias("loop")
     @XStreamImplicit
     private List<LoopDefinition> _loop;
+    // the segments and loops, ordered by position; computed the first time they are needed
+    @XStreamOmitField
+    private volatile List<Positioned> _children;
+
+    public LoopDefinition() {
+        // used by XStream
+    }
+
+    LoopDefinition(String xid, String type, Usage usage, String pos, String repeat, String name, List<SegmentDefinition> segment, List<LoopDefinition> loop) {
+        _xid = xid;
+        _type = type;
+        _usage = usage;
+        _pos = pos;
+        _repeat = repeat;
+        _name = name;
+        _segment = segment;
+        _loop = loop;
+    }
 
     @Override
     public String getXid() {
@@ -71,6 +94,25 @@ public class LoopDefinition implements Positioned {
         return _loop;
     }
 
+    /**
+     * Returns the segments and loops of this loop, ordered by position. A segment or loop with the same position and ID as a previous one is ignored,
+     * the loops coming before the segments.
+     * @return the ordered segments and loops
+     */
+    public List<Positioned> getChildren() {
+        List<Positioned> children = _children;
+        if (children == null) {
+            Set<Positioned> segmentsAndLoops = new TreeSet<>();
+            if (_loop != null)
+                segmentsAndLoops.addAll(_loop);
+            if (_segment != null)
+                segmentsAndLoops.addAll(_segment);
+            children = Collections.unmodifiableList(new ArrayList<>(segmentsAndLoops));
+            _children = children;
+        }
+        return children;
+    }
+
     @Override
     public boolean equals(Object o) {
         if (this == o) return true;
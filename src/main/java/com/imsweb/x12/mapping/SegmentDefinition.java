@@ -37,6 +37,21 @@ public class SegmentDefinition implements Positioned {
     @XStreamImplicit
     private List<CompositeDefinition> _composites;
 
+    public SegmentDefinition() {
+        // used by XStream
+    }
+
+    SegmentDefinition(String xid, String name, Usage usage, String pos, String maxUse, List<String> syntax, List<ElementDefinition> elements, List<CompositeDefinition> composites) {
+        _xid = xid;
+        _name = name;
+        _usage = usage;
+        _pos = pos;
+        _maxUse = maxUse;
+        _syntax = syntax;
+        _elements = elements;
+        _composites = composites;
+    }
+
     @Override
     public String getXid() {
         return _xid;
@@ -23,6 +23,16 @@ public class TransactionDefinition {
     @XStreamAlias("loop")
     private LoopDefinition _loop;
 
+    public TransactionDefinition() {
+        // used by XStream
+    }
+
+    TransactionDefinition(String xid, String name, LoopDefinition loop) {
+        _xid = xid;
+        _name = name;
+        _loop = loop;
+    }
+
     public String getXid() {
         return _xid;
     }
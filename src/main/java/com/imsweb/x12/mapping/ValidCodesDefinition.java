@@ -19,6 +19,15 @@ public class ValidCodesDefinition {
     @XStreamImplicit
     private List<String> _codes;
 
+    public ValidCodesDefinition() {
+        // used by XStream
+    }
+
+    ValidCodesDefinition(String external, List<String> codes) {
+        _external = external;
+        _codes = codes;
+    }
+
     public String getExternal() {
         return _external;
     }
@@ -0,0 +1,66 @@
+package com.imsweb.x12.reader;
+
+import java.io.Reader;
+import java.nio.Buffer;
+import java.nio.CharBuffer;
+
+/**
+ * A reader over one or more character buffers, read one after the other without copying them. Mark and reset are supported without any limit.
+ */
+final class CharBufferReader extends Reader {
+
+    private final CharBuffer[] _parts;
+    private final int[] _mark;
+    private int _part; // the part being read
+    private int _markPart;
+
+    /**
+     * Constructor
+     * @param parts the buffers to read, from their position to their limit; their positions are not changed
+     */
+    CharBufferReader(CharBuffer... parts) {
+        _parts = new CharBuffer[parts.length];
+        for (int i = 0; i < parts.length; i++)
+            _parts[i] = parts[i].duplicate();
+        _mark = new int[parts.length];
+        mark(0);
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) {
+        if (len == 0)
+            return 0;
+        while (_part < _parts.length && !_parts[_part].hasRemaining())
+            _part++;
+        if (_part == _parts.length)
+            return -1;
+
+        int n = Math.min(len, _parts[_part].remaining());
+        _parts[_part].get(cbuf, off, n);
+        return n;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) {
+        for (int i = 0; i < _parts.length; i++)
+            _mark[i] = _parts[i].position();
+        _markPart = _part;
+    }
+
+    @Override
+    public void reset() {
+        for (int i = 0; i < _parts.length; i++)
+            ((Buffer)_parts[i]).position(_mark[i]); // Buffer.position(int) returns a CharBuffer after Java 8
+        _part = _markPart;
+    }
+
+    @Override
+    public void close() {
+        // nothing to release, the buffers are in memory
+    }
+}
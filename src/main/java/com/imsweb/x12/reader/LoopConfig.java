@@ -2,80 +2,85 @@ package com.imsweb.x12.reader;
 
 import java.util.List;
 
+import com.imsweb.x12.mapping.LoopDefinition;
 import com.imsweb.x12.mapping.SegmentDefinition;
 import com.imsweb.x12.mapping.TransactionDefinition.Usage;
 
-public class LoopConfig {
-
-    private String _loopId;
-    private Integer _loopRepeatCount = 0;
-    private String _loopRepeats;
-    private Usage _loopUsage;
-    private List<String> _childList;
-    private String _parentLoop;
-    private boolean _hasDataSegments = true;
-
-    private SegmentDefinition _firstSegmentXid;
-    private SegmentDefinition _lastSegmentXid; // used for ISA_LOOP, GS_LOOP, ST_LOOP since the segments for these loops appear only at the beginning and end of a transaction
-
-    public LoopConfig(String loopName, String parentLoop, List<String> childList, String loopRepeats, Usage loopUsage, boolean hasDataSegments) {
+/**
+ * The configuration of a loop, extracted once from the transaction definition. Instances are immutable and shared by all the readers of a file type;
+ * the number of times a loop appears in a file is kept by the reader in a {@link LoopRepeatCounts}.
+ */
+final class LoopConfig {
+
+    private final int _index;
+    private final String _loopId;
+    private final String _loopRepeats;
+    private final Usage _loopUsage;
+    private final List<String> _childList;
+    private final String _parentLoop;
+    private final boolean _hasDataSegments;
+    private final LoopDefinition _definition;
+
+    private final SegmentDefinition _firstSegmentXid;
+    private final SegmentDefinition _lastSegmentXid; // used for ISA_LOOP, GS_LOOP, ST_LOOP since the segments for these loops appear only at the beginning and end of a transaction
+
+    LoopConfig(int index, String loopName, String parentLoop, List<String> childList, String loopRepeats, Usage loopUsage, SegmentDefinition firstSegmentXid,
+            SegmentDefinition lastSegmentXid, LoopDefinition definition) {
+        _index = index;
         _loopId = loopName;
         _parentLoop = parentLoop;
         _childList = childList;
         _loopRepeats = loopRepeats;
         _loopUsage = loopUsage;
-        _hasDataSegments = hasDataSegments;
-    }
-
-    public String getLoopId() {
-        return _loopId;
+        _hasDataSegments = firstSegmentXid != null;
+        _firstSegmentXid = firstSegmentXid;
+        _lastSegmentXid = lastSegmentXid;
+        _definition = definition;
     }
 
-    public Integer getLoopRepeatCount() {
-        return _loopRepeatCount;
+    /**
+     * @return the position of this configuration in the configurations of its file type
+     */
+    int getIndex() {
+        return _index;
     }
 
-    public void incrementLoopRepeatCount() {
-        _loopRepeatCount = _loopRepeatCount + 1;
+    String getLoopId() {
+        return _loopId;
     }
 
-    public List<String> getChildList() {
+    List<String> getChildList() {
         return _childList;
     }
 
-    public String getParentLoop() {
+    String getParentLoop() {
         return _parentLoop;
     }
 
-    public Usage getLoopUsage() {
+    Usage getLoopUsage() {
         return _loopUsage;
     }
 
-    public String getLoopRepeats() {
+    String getLoopRepeats() {
         return _loopRepeats;
     }
 
-    public SegmentDefinition getFirstSegmentXid() {
+    SegmentDefinition getFirstSegmentXid() {
         return _firstSegmentXid;
     }
 
-    public void setFirstSegmentXid(SegmentDefinition firstSegmentXid) {
-        _firstSegmentXid = firstSegmentXid;
-    }
-
-    public SegmentDefinition getLastSegmentXid() {
+    SegmentDefinition getLastSegmentXid() {
         return _lastSegmentXid;
     }
 
-    public void setLastSegmentXid(SegmentDefinition lastSegmentXid) {
-        _lastSegmentXid = lastSegmentXid;
-    }
-
-    public boolean hasDataSegments() {
+    boolean hasDataSegments() {
         return _hasDataSegments;
     }
 
-    public void setHasDataSegments(boolean hasDataSegments) {
-        _hasDataSegments = hasDataSegments;
+    /**
+     * @return the definition of the loop; the first one if the loop ID appears several times in the transaction definition
+     */
+    LoopDefinition getDefinition() {
+        return _definition;
     }
 }
@@ -0,0 +1,76 @@
+package com.imsweb.x12.reader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Iterates lazily over the loops with a given ID of a file: the file is only read as far as needed to complete the next loop. Like with the streaming
+ * constructors of {@link X12Reader}, the parent loops of each loop remain available through {@link Loop#getParent()}.
+ * <br/><br/>
+ * The file is read in chunks, so a few loops can be parsed ahead of the ones returned. If the file has a structure issue that prevents it from being
+ * processed (a fatal error of {@link X12Reader}), an UncheckedIOException is thrown once the loops parsed before the issue were returned.
+ */
+final class LoopIterator implements Iterator<Loop>, Closeable {
+
+    private final Reader _input;
+    private final X12PushParser _parser;
+    private final Deque<Loop> _loops = new ArrayDeque<>();
+    private final char[] _chars = new char[8192];
+    private X12Reader _reader; // set once the whole file was parsed
+    private IOException _error;
+
+    /**
+     * Constructor
+     * @param type the type of x12 file
+     * @param input the content of the file, closed with the iterator
+     * @param loopId the ID of the loops to iterate over (for example ST_LOOP for the transactions, or 2300 for the claims of an 837)
+     */
+    LoopIterator(FileType type, Reader input, String loopId) {
+        _input = input;
+        _parser = new X12PushParser(type, loopId, _loops::add);
+    }
+
+    @Override
+    public boolean hasNext() {
+        try {
+            while (_loops.isEmpty() && _reader == null) {
+                // the rest of the file is ignored after a fatal error
+                int read = _parser.isStopped() ? -1 : _input.read(_chars);
+                if (read == -1) {
+                    _reader = _parser.end();
+                    if (!_reader.getFatalErrors().isEmpty())
+                        _error = new IOException("Unable to process the file: " + String.join(", ", _reader.getFatalErrors()));
+                }
+                else
+                    _parser.feed(_chars, 0, read);
+            }
+        }
+        catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        if (_loops.isEmpty() && _error != null)
+            throw new UncheckedIOException(_error);
+        return !_loops.isEmpty();
+    }
+
+    @Override
+    public Loop next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        return _loops.poll();
+    }
+
+    @Override
+    public void close() throws IOException {
+        _input.close();
+    }
+}
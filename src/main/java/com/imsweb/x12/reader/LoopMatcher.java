@@ -0,0 +1,266 @@
+package com.imsweb.x12.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.imsweb.x12.mapping.LoopDefinition;
+import com.imsweb.x12.mapping.SegmentDefinition;
+import com.imsweb.x12.mapping.TransactionDefinition;
+import com.imsweb.x12.mapping.TransactionDefinition.Usage;
+
+/**
+ * Everything the reader needs to know about a transaction definition to identify the loops of a file, computed once per file type:
+ * <ul>
+ * <li>an index from segment ID (and, when all the candidates agree on a qualifier element, from the qualifier value) to the loops the segment can start or end</li>
+ * <li>the configuration of each loop</li>
+ * <li>the segments of each loop, with their validation rules</li>
+ * <li>the parents and required children of each loop</li>
+ * </ul>
+ * Instances are immutable and shared by all the readers of a file type.
+ */
+final class LoopMatcher {
+
+    /**
+     * A loop that can be started (first segment) or ended (last segment, for the envelope loops) by a segment ID.
+     */
+    static final class Candidate {
+
+        private final LoopConfig _config;
+        private final SegmentRules _first;
+        private final SegmentRules _last;
+
+        private Candidate(LoopConfig config, SegmentRules first, SegmentRules last) {
+            _config = config;
+            _first = first;
+            _last = last;
+        }
+
+        LoopConfig getConfig() {
+            return _config;
+        }
+
+        String getLoopId() {
+            return _config.getLoopId();
+        }
+
+        /**
+         * @return the rules of the first segment of the loop, null if the loop doesn't start with the segment ID this candidate was found for
+         */
+        SegmentRules getFirst() {
+            return _first;
+        }
+
+        /**
+         * @return the rules of the last segment of the loop, null if the loop doesn't end with the segment ID this candidate was found for
+         */
+        SegmentRules getLast() {
+            return _last;
+        }
+
+        private List<SegmentRules> getRules() {
+            List<SegmentRules> rules = new ArrayList<>(2);
+            if (_first != null)
+                rules.add(_first);
+            if (_last != null)
+                rules.add(_last);
+            return rules;
+        }
+    }
+
+    /**
+     * The candidates of a segment ID, possibly narrowed down by the value of a qualifier element.
+     */
+    private static final class CandidateIndex {
+
+        private final List<Candidate> _candidates;
+        private final int _qualifierPosition; // 0 if the candidates can't be narrowed down by a qualifier
+        private final Map<String, List<Candidate>> _candidatesByQualifier;
+
+        private CandidateIndex(List<Candidate> candidates) {
+            _candidates = Collections.unmodifiableList(candidates);
+
+            // use the first position where every candidate requires one of a list of codes
+            Set<Integer> positions = null;
+            for (Candidate candidate : candidates) {
+                for (SegmentRules rules : candidate.getRules()) {
+                    if (positions == null)
+                        positions = new HashSet<>(rules.getRequiredValidCodePositions());
+                    else
+                        positions.retainAll(rules.getRequiredValidCodePositions());
+                }
+            }
+            int qualifierPosition = positions == null || positions.isEmpty() ? 0 : Collections.min(positions);
+
+            Map<String, List<Candidate>> candidatesByQualifier = new HashMap<>();
+            if (qualifierPosition > 0) {
+                for (Candidate candidate : candidates) {
+                    Set<String> codes = new LinkedHashSet<>();
+                    for (SegmentRules rules : candidate.getRules())
+                        codes.addAll(rules.getRequiredValidCodes(qualifierPosition));
+                    for (String code : codes)
+                        candidatesByQualifier.computeIfAbsent(code, k -> new ArrayList<>()).add(candidate);
+                }
+            }
+            _qualifierPosition = qualifierPosition;
+            _candidatesByQualifier = candidatesByQualifier;
+        }
+
+        private List<Candidate> getCandidates(ParsedSegment segment) {
+            if (_qualifierPosition == 0 || _qualifierPosition >= segment.size() || segment.isEmpty(_qualifierPosition))
+                return _candidates;
+
+            // a candidate that doesn't accept the qualifier value can't match the segment
+            List<Candidate> candidates = _candidatesByQualifier.get(segment.getElement(_qualifierPosition));
+            return candidates == null ? Collections.emptyList() : candidates;
+        }
+    }
+
+    private final List<LoopConfig> _configs = new ArrayList<>();
+    private final Map<String, LoopConfig> _configsByLoopId = new HashMap<>();
+    private final Map<String, CandidateIndex> _candidatesBySegmentId = new HashMap<>();
+    private final Map<String, List<SegmentRules>> _segmentsByLoopId = new HashMap<>();
+    private final Map<String, Set<String>> _childSegmentsByLoopId = new HashMap<>();
+    private final Map<String, List<String>> _parentLoopsByLoopId = new HashMap<>();
+    private final Map<String, Set<String>> _requiredChildLoopsByLoopId = new HashMap<>();
+
+    LoopMatcher(TransactionDefinition definition) {
+        Map<SegmentDefinition, SegmentRules> rules = new IdentityHashMap<>();
+        Map<String, List<Candidate>> candidates = new LinkedHashMap<>();
+        compile(definition.getLoop(), null, true, rules, candidates);
+        candidates.forEach((segmentId, list) -> _candidatesBySegmentId.put(segmentId, new CandidateIndex(list)));
+    }
+
+    /**
+     * Walks the loop definitions depth first. The first occurrence of a loop ID defines its segments and configuration; a loop that was already
+     * found is not configured again, and neither are its children.
+     */
+    private void compile(LoopDefinition loop, String parentId, boolean configure, Map<SegmentDefinition, SegmentRules> rules, Map<String, List<Candidate>> candidates) {
+        if (!_segmentsByLoopId.containsKey(loop.getXid())) {
+            List<SegmentRules> segments = null;
+            Set<String> childSegments = new HashSet<>();
+            if (loop.getSegment() != null) {
+                segments = new ArrayList<>();
+                for (SegmentDefinition segment : loop.getSegment())
+                    segments.add(rules.computeIfAbsent(segment, SegmentRules::new));
+                for (int i = 1; i < segments.size(); i++)
+                    childSegments.add(segments.get(i).getXid());
+                segments = Collections.unmodifiableList(segments);
+            }
+            _segmentsByLoopId.put(loop.getXid(), segments);
+            _childSegmentsByLoopId.put(loop.getXid(), Collections.unmodifiableSet(childSegments));
+        }
+
+        boolean configured = configure && !_configsByLoopId.containsKey(loop.getXid());
+        if (configured) {
+            List<SegmentDefinition> segments = loop.getSegment();
+            SegmentDefinition first = segments != null ? segments.get(0) : null;
+            SegmentDefinition last = segments != null && segments.size() > 1 ? segments.get(segments.size() - 1) : null;
+            List<String> childLoops = null;
+            if (loop.getLoop() != null) {
+                childLoops = new ArrayList<>();
+                for (LoopDefinition subloop : loop.getLoop())
+                    childLoops.add(subloop.getXid());
+                childLoops = Collections.unmodifiableList(childLoops);
+            }
+            LoopConfig config = new LoopConfig(_configs.size(), loop.getXid(), parentId, childLoops, loop.getRepeat(), loop.getUsage(), first, last, loop);
+            _configs.add(config);
+            _configsByLoopId.put(config.getLoopId(), config);
+
+            if (first != null) {
+                SegmentRules firstRules = rules.computeIfAbsent(first, SegmentRules::new);
+                SegmentRules lastRules = last != null ? rules.computeIfAbsent(last, SegmentRules::new) : null;
+                if (lastRules != null && lastRules.getXid().equals(firstRules.getXid()))
+                    candidates.computeIfAbsent(firstRules.getXid(), k -> new ArrayList<>()).add(new Candidate(config, firstRules, lastRules));
+                else {
+                    candidates.computeIfAbsent(firstRules.getXid(), k -> new ArrayList<>()).add(new Candidate(config, firstRules, null));
+                    if (lastRules != null)
+                        candidates.computeIfAbsent(lastRules.getXid(), k -> new ArrayList<>()).add(new Candidate(config, null, lastRules));
+                }
+            }
+        }
+
+        if (loop.getLoop() != null) {
+            for (LoopDefinition subloop : loop.getLoop()) {
+                _parentLoopsByLoopId.computeIfAbsent(subloop.getXid(), k -> new ArrayList<>()).add(loop.getXid());
+                if (Usage.REQUIRED.equals(subloop.getUsage()))
+                    _requiredChildLoopsByLoopId.computeIfAbsent(loop.getXid(), k -> new HashSet<>()).add(subloop.getXid());
+                compile(subloop, loop.getXid(), configured, rules, candidates);
+            }
+        }
+    }
+
+    /**
+     * Returns the loop configurations, in the order the loops are found in the definition
+     * @return the loop configurations
+     */
+    List<LoopConfig> getLoopConfigs() {
+        return Collections.unmodifiableList(_configs);
+    }
+
+    /**
+     * Returns the configuration of a loop
+     * @param loopId loop ID
+     * @return the loop configuration, null if the loop doesn't exist
+     */
+    LoopConfig getLoopConfig(String loopId) {
+        return _configsByLoopId.get(loopId);
+    }
+
+    /**
+     * Returns the loops that can be started or ended by the segment, in the order of the loop configurations.
+     * @param segment segment data
+     * @return the candidate loops, never null
+     */
+    List<Candidate> getCandidates(ParsedSegment segment) {
+        CandidateIndex index = _candidatesBySegmentId.get(segment.getId());
+        return index == null ? Collections.emptyList() : index.getCandidates(segment);
+    }
+
+    /**
+     * Returns the segments of a loop
+     * @param loopId loop ID
+     * @return the segments with their rules, an empty list if the loop doesn't exist, null if the loop doesn't have any segments
+     */
+    List<SegmentRules> getSegments(String loopId) {
+        return _segmentsByLoopId.containsKey(loopId) ? _segmentsByLoopId.get(loopId) : Collections.emptyList();
+    }
+
+    /**
+     * Check if a segment is a child segment (any segment but the first one) of a loop.
+     * @param loopId loop ID
+     * @param segmentId segment ID
+     * @return true if it is a child segment, false if it is not.
+     */
+    boolean isChildSegment(String loopId, String segmentId) {
+        Set<String> childSegments = _childSegmentsByLoopId.get(loopId);
+        return childSegments != null && childSegments.contains(segmentId);
+    }
+
+    /**
+     * Gets all possible parent loops of a loop. Need a list since it is possible for one loop to have two different parents.
+     * @param loopId loop ID
+     * @return list of parent loop IDs
+     */
+    List<String> getParentLoops(String loopId) {
+        List<String> parentLoops = _parentLoopsByLoopId.get(loopId);
+        return parentLoops == null ? Collections.emptyList() : Collections.unmodifiableList(parentLoops);
+    }
+
+    /**
+     * Returns the required child loops of a loop, for all the places the loop appears in the definition
+     * @param loopId loop ID
+     * @return set of required child loop IDs
+     */
+    Set<String> getRequiredChildLoops(String loopId) {
+        Set<String> childLoops = _requiredChildLoopsByLoopId.get(loopId);
+        return childLoops == null ? Collections.emptySet() : Collections.unmodifiableSet(childLoops);
+    }
+}
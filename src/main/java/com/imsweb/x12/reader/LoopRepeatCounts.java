@@ -0,0 +1,39 @@
+package com.imsweb.x12.reader;
+
+/**
+ * The number of times each loop configuration was found while parsing one file.
+ */
+final class LoopRepeatCounts {
+
+    private final int[] _counts;
+
+    LoopRepeatCounts(int numConfigs) {
+        _counts = new int[numConfigs];
+    }
+
+    /**
+     * Returns the number of times a loop was found
+     * @param config loop configuration
+     * @return the count
+     */
+    int get(LoopConfig config) {
+        return _counts[config.getIndex()];
+    }
+
+    /**
+     * Adds one to the number of times a loop was found
+     * @param config loop configuration
+     */
+    void increment(LoopConfig config) {
+        _counts[config.getIndex()]++;
+    }
+
+    /**
+     * Adds the counts found in another part of the same file
+     * @param counts the counts to add
+     */
+    void add(LoopRepeatCounts counts) {
+        for (int i = 0; i < _counts.length; i++)
+            _counts[i] += counts._counts[i];
+    }
+}
@@ -0,0 +1,149 @@
+package com.imsweb.x12.reader;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Consumer;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.Segment;
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.ValuePool;
+import com.imsweb.x12.mapping.LoopDefinition;
+
+/**
+ * The handler building the loop tree of a file from its events: each interchange becomes a top loop (ISA_LOOP) containing the other loops.
+ * <br/><br/>
+ * This is the handler used by the constructors of {@link X12Reader} that don't take a handler; it can also be combined with another handler, to build the
+ * loop tree while collecting other information in the same parsing. Passed to the constructors of {@link X12Reader} taking a handler, it builds the loop tree
+ * with a {@link ValuePool}, with or without streaming loops to a listener; the loops are then returned by {@link #getLoops()}, and by the reader.
+ */
+public class LoopTreeBuilder implements X12EventHandler {
+
+    private final List<Loop> _loops;
+    private final String _streamedLoopId;
+    private final Consumer<Loop> _listener;
+    private final ValuePool _pool;
+    private final Deque<Loop> _openLoops = new ArrayDeque<>();
+    private int _streamedDepth; // the number of open loops, from the top one, that contained streamed loops
+    private Separators _separators;
+    private Loop _interchange; // the top loop of the current interchange, until it is started
+
+    /**
+     * Constructor
+     */
+    public LoopTreeBuilder() {
+        this(new ArrayList<>(), null, null, null);
+    }
+
+    /**
+     * Constructor for a builder that takes the segment ids and the element values from a pool, see {@link ValuePool}.
+     * @param pool the pool of values
+     */
+    public LoopTreeBuilder(ValuePool pool) {
+        this(new ArrayList<>(), null, null, pool);
+    }
+
+    /**
+     * Constructor for a builder that passes the loops with the given ID to a listener once they are complete, like the constructors of {@link X12Reader}
+     * taking a listener, and takes the segment ids and the element values from a pool.
+     * @param streamedLoopId the ID of the loops to stream, null to keep all the loops in the tree
+     * @param listener the listener receiving each completed loop, null to keep all the loops in the tree
+     * @param pool the pool of values, null to not use one
+     */
+    public LoopTreeBuilder(String streamedLoopId, Consumer<Loop> listener, ValuePool pool) {
+        this(new ArrayList<>(), streamedLoopId, listener, pool);
+    }
+
+    /**
+     * Constructor for a builder that passes the loops with the given ID to a listener once they are complete, and then removes them from the tree. The
+     * loops that contained streamed loops are also removed once they are complete, so only the open loops around the next streamed loop stay in the tree.
+     * @param loops the list receiving the top loops
+     * @param streamedLoopId the ID of the loops to stream, null to keep all the loops in the tree
+     * @param listener the listener receiving each completed loop, null to keep all the loops in the tree
+     * @param pool the pool of values, null to not use one
+     */
+    LoopTreeBuilder(List<Loop> loops, String streamedLoopId, Consumer<Loop> listener, ValuePool pool) {
+        _loops = loops;
+        _streamedLoopId = listener == null ? null : streamedLoopId;
+        _listener = listener;
+        _pool = pool;
+    }
+
+    /**
+     * Returns the top loops built so far, one for each interchange.
+     * @return the list of top loops
+     */
+    public List<Loop> getLoops() {
+        return _loops;
+    }
+
+    @Override
+    public void startInterchange(Separators separators) {
+        _separators = separators;
+        // the loop is added right away, so it's available even if its content has a fatal error
+        _interchange = new Loop(null);
+        _interchange.setSeparators(separators);
+        _loops.add(_interchange);
+    }
+
+    @Override
+    public void startLoop(String loopId, LoopDefinition definition) {
+        Loop loop;
+        if (_openLoops.isEmpty() && _interchange != null) {
+            loop = _interchange;
+            loop.setId(loopId);
+            _interchange = null;
+        }
+        else {
+            loop = new Loop(_separators, loopId);
+            Loop parent = _openLoops.peek();
+            if (parent == null)
+                _loops.add(loop);
+            else
+                parent.addLoop(parent.getLoops().size(), loop);
+        }
+        _openLoops.push(loop);
+    }
+
+    @Override
+    public void segment(String loopId, ParsedSegment segment) {
+        Segment seg = new Segment(_separators);
+        seg.addElements(segment.getText(), segment.getSeparators(), _pool);
+        _openLoops.element().addSegment(seg);
+    }
+
+    @Override
+    public void endLoop(String loopId) {
+        Loop loop = _openLoops.pop();
+        if (_streamedLoopId != null && _streamedLoopId.equals(loopId)) {
+            _listener.accept(loop);
+            detach(loop);
+            _streamedDepth = _openLoops.size();
+        }
+        else if (_openLoops.size() < _streamedDepth) {
+            // the streamed loops of this loop were all passed to the listener; the loop is only needed by the ones that keep a reference to them
+            detach(loop);
+            _streamedDepth = _openLoops.size();
+        }
+    }
+
+    /**
+     * Removes a loop from the tree; the loop keeps a reference to its parent.
+     * @param loop the loop to remove
+     */
+    private void detach(Loop loop) {
+        Loop parent = loop.getParent();
+        List<Loop> siblings = parent == null ? _loops : parent.getLoops();
+        for (int i = siblings.size() - 1; i >= 0; i--) {
+            if (siblings.get(i) == loop) {
+                if (parent == null)
+                    siblings.remove(i);
+                else
+                    parent.removeLoop(i);
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,99 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+
+/**
+ * A reader over a memory-mapped file where every byte is a character (ISO-8859-1, which covers the ASCII content of X12 files). There is no charset
+ * decoder: the bytes are read from the page cache and widened to characters in the buffer of the caller.
+ * <br/><br/>
+ * The file is mapped one region at a time, so files larger than 2 GB can be read. Mark and reset are supported without any limit.
+ * <br/><br/>
+ * Closing the reader closes the file and drops the reference to the mapped region, but there is no API to unmap a region before Java 19: it stays mapped
+ * until it's garbage collected, and the file can't be deleted or modified on Windows until then.
+ */
+final class MappedFileReader extends Reader {
+
+    private static final long _DEFAULT_REGION_SIZE = 256L * 1024 * 1024;
+
+    private final FileChannel _channel;
+    private final long _size;
+    private final long _regionSize;
+
+    private MappedByteBuffer _region;
+    private long _regionStart;
+    private long _position;
+    private long _mark;
+
+    /**
+     * Constructor
+     * @param channel channel of the file to read, closed with this reader
+     * @throws IOException if the size of the file can't be read
+     */
+    MappedFileReader(FileChannel channel) throws IOException {
+        this(channel, _DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param channel channel of the file to read, closed with this reader
+     * @param regionSize size of the mapped regions
+     * @throws IOException if the size of the file can't be read
+     */
+    MappedFileReader(FileChannel channel, long regionSize) throws IOException {
+        _channel = channel;
+        _size = channel.size();
+        _regionSize = regionSize;
+    }
+
+    @Override
+    public int read(char[] cbuf, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (_position >= _size)
+            return -1;
+
+        int read = 0;
+        while (read < len && _position < _size) {
+            if (_region == null || _position < _regionStart || _position >= _regionStart + _region.capacity()) {
+                _regionStart = _position - _position % _regionSize;
+                _region = _channel.map(MapMode.READ_ONLY, _regionStart, Math.min(_regionSize, _size - _regionStart));
+            }
+            // the bytes are widened straight from the mapped region, with absolute reads that don't move its position
+            int offset = (int)(_position - _regionStart);
+            int n = Math.min(len - read, _region.capacity() - offset);
+            MappedByteBuffer region = _region;
+            int start = off + read;
+            for (int i = 0; i < n; i++)
+                cbuf[start + i] = (char)(region.get(offset + i) & 0xFF);
+            read += n;
+            _position += n;
+        }
+        return read;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readAheadLimit) {
+        _mark = _position;
+    }
+
+    @Override
+    public void reset() {
+        _position = _mark;
+    }
+
+    @Override
+    public void close() throws IOException {
+        // the region can be garbage collected, and unmapped, as soon as possible
+        _region = null;
+        _channel.close();
+    }
+}
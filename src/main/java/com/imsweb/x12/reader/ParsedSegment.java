@@ -0,0 +1,90 @@
+package com.imsweb.x12.reader;
+
+/**
+ * A segment read by the lexer: its text and the positions of its element separators. The elements are only extracted from the text when they are
+ * requested, and each one at most once. This is how the segments are passed to an {@link X12EventHandler}.
+ * <br/><br/>
+ * Like splitting the segment on the element separator, trailing empty elements are not counted.
+ */
+public final class ParsedSegment {
+
+    private final String _text;
+    private final int[] _separators;
+    private final int _size;
+    private String[] _elements;
+
+    ParsedSegment(String text, int[] separators) {
+        _text = text;
+        _separators = separators;
+
+        int size = separators.length + 1;
+        while (size > 1 && getStart(size - 1) == getEnd(size - 1))
+            size--;
+        _size = size;
+    }
+
+    /**
+     * Returns the raw text of the segment
+     * @return the segment text
+     */
+    public String getText() {
+        return _text;
+    }
+
+    /**
+     * Returns the positions of the element separators in the segment text
+     * @return separator positions
+     */
+    int[] getSeparators() {
+        return _separators;
+    }
+
+    /**
+     * Returns the segment identifier
+     * @return the first element of the segment
+     */
+    public String getId() {
+        return getElement(0);
+    }
+
+    /**
+     * Returns the number of elements, including the segment identifier
+     * @return number of elements
+     */
+    public int size() {
+        return _size;
+    }
+
+    /**
+     * Returns the element at the given index; index 0 is the segment identifier
+     * @param index element index, must be lower than the size
+     * @return the element value
+     */
+    public String getElement(int index) {
+        if (_elements == null)
+            _elements = new String[_size];
+        String element = _elements[index];
+        if (element == null) {
+            element = _text.substring(getStart(index), getEnd(index));
+            _elements[index] = element;
+        }
+        return element;
+    }
+
+    /**
+     * Returns whether the element at the given index is empty
+     * @param index element index, must be lower than the size
+     * @return true if the element is empty
+     */
+    public boolean isEmpty(int index) {
+        return getStart(index) == getEnd(index);
+    }
+
+    private int getStart(int index) {
+        return index == 0 ? 0 : _separators[index - 1] + 1;
+    }
+
+    private int getEnd(int index) {
+        return index == _separators.length ? _text.length() : _separators[index];
+    }
+}
@@ -0,0 +1,126 @@
+package com.imsweb.x12.reader;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.imsweb.x12.mapping.CompositeDefinition;
+import com.imsweb.x12.mapping.ElementDefinition;
+import com.imsweb.x12.mapping.SegmentDefinition;
+import com.imsweb.x12.mapping.TransactionDefinition.Usage;
+
+/**
+ * The validation rules of a segment definition (valid codes and required element positions), extracted once from the definition so they can be
+ * checked without walking the element definitions for every segment of a file. Instances are immutable.
+ */
+final class SegmentRules {
+
+    private final SegmentDefinition _definition;
+    private final int _pos;
+    private final Map<Integer, Set<String>> _validCodes;
+    private final Map<Integer, Set<String>> _requiredValidCodes; // valid codes of the required elements, used to identify loops
+    private final int[] _requiredElements;
+    private final int[] _requiredComposites;
+
+    SegmentRules(SegmentDefinition definition) {
+        _definition = definition;
+        _pos = Integer.parseInt(definition.getPos());
+
+        // the codes are keyed by their list first, like the definition was always interpreted: identical lists of codes keep the last position
+        Map<List<String>, Integer> codePositionMap = new HashMap<>();
+        List<Integer> requiredElements = new ArrayList<>();
+        if (definition.getElements() != null) {
+            for (ElementDefinition element : definition.getElements()) {
+                if (element.getValidCodes() != null && element.getValidCodes().getCodes() != null)
+                    codePositionMap.put(element.getValidCodes().getCodes(), Integer.parseInt(element.getSeq()));
+                if (Usage.REQUIRED.equals(element.getUsage()))
+                    requiredElements.add(Integer.parseInt(element.getSeq()));
+            }
+        }
+        Map<Integer, Set<String>> validCodes = new LinkedHashMap<>();
+        Map<Integer, Set<String>> requiredValidCodes = new LinkedHashMap<>();
+        for (Map.Entry<List<String>, Integer> entry : codePositionMap.entrySet()) {
+            if (!validCodes.containsKey(entry.getValue())) {
+                Set<String> codes = Collections.unmodifiableSet(new HashSet<>(entry.getKey()));
+                validCodes.put(entry.getValue(), codes);
+                if (requiredElements.contains(entry.getValue()))
+                    requiredValidCodes.put(entry.getValue(), codes);
+            }
+        }
+        _validCodes = Collections.unmodifiableMap(validCodes);
+        _requiredValidCodes = Collections.unmodifiableMap(requiredValidCodes);
+        _requiredElements = requiredElements.stream().mapToInt(Integer::intValue).toArray();
+
+        List<Integer> requiredComposites = new ArrayList<>();
+        if (definition.getComposites() != null)
+            for (CompositeDefinition composite : definition.getComposites())
+                if (composite.getUsage().equals("R"))
+                    requiredComposites.add(Integer.parseInt(composite.getSeq()));
+        _requiredComposites = requiredComposites.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    SegmentDefinition getDefinition() {
+        return _definition;
+    }
+
+    String getXid() {
+        return _definition.getXid();
+    }
+
+    int getPos() {
+        return _pos;
+    }
+
+    /**
+     * Returns the valid codes of the required element at the given position
+     * @param position element position
+     * @return the valid codes, null if the element is not required or doesn't have a list of valid codes
+     */
+    Set<String> getRequiredValidCodes(int position) {
+        return _requiredValidCodes.get(position);
+    }
+
+    Set<Integer> getRequiredValidCodePositions() {
+        return _requiredValidCodes.keySet();
+    }
+
+    int[] getRequiredElements() {
+        return _requiredElements;
+    }
+
+    int[] getRequiredComposites() {
+        return _requiredComposites;
+    }
+
+    /**
+     * Checks that the valid codes for each element are there
+     * @param segment the segment data
+     * @return true if the codes are found to be valid, false otherwise
+     */
+    boolean codesValidated(ParsedSegment segment) {
+        return codesValidated(segment, _validCodes);
+    }
+
+    /**
+     * Checks that the valid codes for each required element are there----loop ID purposes only
+     * @param segment the segment data
+     * @return true if the codes are found to be valid, false otherwise
+     */
+    boolean codesValidatedForLoopId(ParsedSegment segment) {
+        return codesValidated(segment, _requiredValidCodes);
+    }
+
+    private static boolean codesValidated(ParsedSegment segment, Map<Integer, Set<String>> validCodes) {
+        for (Map.Entry<Integer, Set<String>> entry : validCodes.entrySet()) {
+            int position = entry.getKey();
+            if (position >= 1 && position < segment.size() && !segment.isEmpty(position) && !entry.getValue().contains(segment.getElement(position)))
+                return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,191 @@
+package com.imsweb.x12.reader;
+
+import java.io.Reader;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits the content of an X12 file into its transactions (ST to SE) so they can be parsed independently. Each transaction is read wrapped in the ISA/GS
+ * and GE/IEA segments of its envelopes, which makes it a complete file on its own; the transactions are not copied, only their position in the content
+ * is kept.
+ * <br/><br/>
+ * Only files with a regular envelope structure can be split: every segment must belong to a transaction or be one of the ISA, GS, GE and IEA segments,
+ * in the right order, and every group must contain at least one transaction.
+ */
+final class TransactionSplitter {
+
+    private static final int _ISA_LENGTH = 106;
+    private static final int _ELEMENT_SEPARATOR_POS = 3;
+    private static final int _SEGMENT_SEPARATOR_POS = 105;
+    private static final String[] _ENVELOPE_IDS = {"ISA", "GS", "ST", "SE", "GE", "IEA"};
+
+    /**
+     * A transaction, wrapped in its envelopes.
+     */
+    static final class Transaction {
+
+        private final CharBuffer _content;
+        private final int _start;
+        private final int _end;
+        private final Envelopes _envelopes;
+        private final boolean _firstInInterchange;
+        private final boolean _firstInGroup;
+
+        private Transaction(CharBuffer content, int start, int end, Envelopes envelopes, boolean firstInInterchange, boolean firstInGroup) {
+            _content = content;
+            _start = start;
+            _end = end;
+            _envelopes = envelopes;
+            _firstInInterchange = firstInInterchange;
+            _firstInGroup = firstInGroup;
+        }
+
+        /**
+         * @return a reader over the ISA and GS segments, the transaction, and the GE and IEA segments
+         */
+        Reader newReader() {
+            return new CharBufferReader(CharBuffer.wrap(_envelopes._header), _content.subSequence(_start, _end), CharBuffer.wrap(_envelopes._trailer));
+        }
+
+        boolean isFirstInInterchange() {
+            return _firstInInterchange;
+        }
+
+        boolean isFirstInGroup() {
+            return _firstInGroup;
+        }
+    }
+
+    /**
+     * The envelope segments of a group, shared by its transactions.
+     */
+    private static final class Envelopes {
+
+        private final String _header;
+        private final String _trailer;
+
+        private Envelopes(String header, String trailer) {
+            _header = header;
+            _trailer = trailer;
+        }
+    }
+
+    private TransactionSplitter() {
+        // utility class
+    }
+
+    /**
+     * Splits the content of a file
+     * @param content file content, from position 0; the transactions keep a reference to it
+     * @return the transactions, in the order they appear in the file, null if the file can't be split
+     */
+    static List<Transaction> split(CharBuffer content) {
+        int length = content.limit();
+        if (length < _ISA_LENGTH || content.get(0) != 'I' || content.get(1) != 'S' || content.get(2) != 'A')
+            return null;
+        char segmentSeparator = content.get(_SEGMENT_SEPARATOR_POS);
+        char elementSeparator = content.get(_ELEMENT_SEPARATOR_POS);
+
+        List<Transaction> result = new ArrayList<>();
+        List<List<int[]>> interchangeGroups = new ArrayList<>(); // the start and end of the transactions of each group of the current interchange
+        List<int[]> groupTransactions = null;
+        int transactionStart = -1;
+        String isa = null;
+        String gs = null;
+        List<String> groupSegments = new ArrayList<>(); // GS and GE segments of the current interchange
+
+        boolean trailingBlank = false; // only allowed at the end of the file
+        int position = 0;
+        while (position < length) {
+            // the segments are scanned like the lexer does: a line break after the separator is skipped, and the segments are trimmed
+            int end = position;
+            while (end < length && content.get(end) != segmentSeparator)
+                end++;
+            int next = end;
+            if (end < length) {
+                next++;
+                if (next < length && content.get(next) == '\n')
+                    next++;
+                else if (next + 1 < length && content.get(next) == '\r' && content.get(next + 1) == '\n')
+                    next += 2;
+            }
+            int start = position;
+            while (start < end && content.get(start) <= ' ')
+                start++;
+            while (end > start && content.get(end - 1) <= ' ')
+                end--;
+            int idEnd = start;
+            while (idEnd < end && content.get(idEnd) != elementSeparator)
+                idEnd++;
+            String id = getEnvelopeId(content, start, idEnd);
+            position = next;
+
+            if (trailingBlank)
+                return null;
+            if (start == end && transactionStart == -1)
+                trailingBlank = true;
+            else if (transactionStart != -1) {
+                if (id != null && !"SE".equals(id))
+                    return null;
+                if ("SE".equals(id)) {
+                    groupTransactions.add(new int[] {transactionStart, next});
+                    transactionStart = -1;
+                }
+            }
+            else if ("ISA".equals(id) && isa == null && end - start == _SEGMENT_SEPARATOR_POS)
+                isa = content.subSequence(start, end).toString();
+            else if ("GS".equals(id) && isa != null && gs == null) {
+                gs = content.subSequence(start, end).toString();
+                groupTransactions = new ArrayList<>();
+            }
+            else if ("ST".equals(id) && gs != null)
+                transactionStart = start;
+            else if ("GE".equals(id) && gs != null && !groupTransactions.isEmpty()) {
+                interchangeGroups.add(groupTransactions);
+                groupSegments.add(gs);
+                groupSegments.add(content.subSequence(start, end).toString());
+                gs = null;
+            }
+            else if ("IEA".equals(id) && isa != null && gs == null && !interchangeGroups.isEmpty()) {
+                String iea = content.subSequence(start, end).toString();
+                for (int i = 0; i < interchangeGroups.size(); i++) {
+                    Envelopes envelopes = new Envelopes(isa + segmentSeparator + groupSegments.get(i * 2) + segmentSeparator,
+                            groupSegments.get(i * 2 + 1) + segmentSeparator + iea + segmentSeparator);
+                    List<int[]> transactions = interchangeGroups.get(i);
+                    for (int j = 0; j < transactions.size(); j++)
+                        result.add(new Transaction(content, transactions.get(j)[0], transactions.get(j)[1], envelopes, i == 0 && j == 0, j == 0));
+                }
+                interchangeGroups.clear();
+                groupSegments.clear();
+                isa = null;
+            }
+            else
+                return null;
+        }
+
+        return isa == null && transactionStart == -1 && !result.isEmpty() ? result : null;
+    }
+
+    /**
+     * Returns the ID of an envelope segment (or SE) without creating a string for the other segments
+     * @param content file content
+     * @param start start of the segment ID
+     * @param end end of the segment ID
+     * @return the ID of the segment if it is ISA, GS, ST, SE, GE or IEA, an empty string if the segment has no ID, null otherwise
+     */
+    private static String getEnvelopeId(CharBuffer content, int start, int end) {
+        if (start == end)
+            return "";
+        for (String id : _ENVELOPE_IDS) {
+            if (id.length() == end - start) {
+                int i = 0;
+                while (i < id.length() && content.get(start + i) == id.charAt(i))
+                    i++;
+                if (i == id.length())
+                    return id;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,61 @@
+package com.imsweb.x12.reader;
+
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.mapping.LoopDefinition;
+
+/**
+ * Receives the content of a file as it is parsed, in the order of the file, instead of a loop tree; see
+ * {@link X12Reader#X12Reader(X12Reader.FileType, java.io.File, java.nio.charset.Charset, X12EventHandler)}.
+ * <br/><br/>
+ * Every loop is started, then receives its segments and its child loops, then is ended. The segments that end the envelope loops (IEA, GE and SE) are
+ * received after the child loops of their loop. Each interchange (ISA_LOOP) is also surrounded by a call to {@link #startInterchange(Separators)} and
+ * {@link #endInterchange()}. The loops are matched and validated like they are when a loop tree is built; the errors are received as they are found.
+ * <br/><br/>
+ * {@link LoopTreeBuilder} is the handler building the loop tree of the other constructors of {@link X12Reader}.
+ */
+public interface X12EventHandler {
+
+    /**
+     * Called when an ISA segment starts a new interchange, before its loop is started.
+     * @param separators the separators of the file
+     */
+    default void startInterchange(Separators separators) {
+        // nothing to do by default
+    }
+
+    /**
+     * Called when an interchange is over, after its loop was ended.
+     */
+    default void endInterchange() {
+        // nothing to do by default
+    }
+
+    /**
+     * Called when a loop starts, under the last loop that was started and not ended.
+     * @param loopId the ID of the loop
+     * @param definition the definition of the loop
+     */
+    void startLoop(String loopId, LoopDefinition definition);
+
+    /**
+     * Called for each segment of a loop.
+     * @param loopId the ID of the loop containing the segment
+     * @param segment the segment
+     */
+    void segment(String loopId, ParsedSegment segment);
+
+    /**
+     * Called when a loop is complete: all its segments and child loops were received.
+     * @param loopId the ID of the loop
+     */
+    void endLoop(String loopId);
+
+    /**
+     * Called for each error found in the file; the errors are also returned by {@link X12Reader#getErrors()} and {@link X12Reader#getFatalErrors()}.
+     * @param message the error message
+     * @param fatal true if the error prevents the rest of the file from being processed
+     */
+    default void error(String message, boolean fatal) {
+        // nothing to do by default
+    }
+}
@@ -0,0 +1,265 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * Splits the content of an X12 file into segments, and each segment into elements, in a single pass over a reusable character buffer.
+ * <br/><br/>
+ * A segment ends with the segment separator, optionally followed by a line break (CRLF or LF). Leading and trailing whitespace is removed from
+ * each segment. The positions of the element separators are recorded while the segment is scanned, so the elements can be located without
+ * splitting the segment again.
+ * <br/><br/>
+ * The content is either read from a reader, or given to the lexer in chunks with {@link #append(char[], int, int)} and {@link #end()}. In the second
+ * case, {@link #next()} returns false when the segment isn't complete yet; {@link #isFinished()} tells if the end of the content was reached.
+ */
+public final class X12Lexer {
+
+    private static final int _DEFAULT_BUFFER_SIZE = 64 * 1024;
+
+    private final Reader _reader;
+    private final char _segmentSeparator;
+    private final char _elementSeparator;
+
+    private char[] _buffer;
+    private int _position; // next character to scan
+    private int _limit; // number of valid characters in the buffer
+    private boolean _eof;
+    private boolean _afterSeparator; // true if the last segment was ended by a segment separator
+    private boolean _lineBreakPending; // true if a line break following the last segment separator might still have to be skipped
+    private boolean _finished;
+
+    // current segment
+    private int _segmentStart;
+    private int _segmentEnd;
+    private String _segment;
+    private int[] _elementSeparators = new int[32]; // positions of the element separators, relative to the segment start
+    private int _numElementSeparators;
+
+    /**
+     * Constructor
+     * @param reader the reader to tokenize, positioned at the start of the first segment
+     * @param segmentSeparator segment separator
+     * @param elementSeparator element separator
+     */
+    public X12Lexer(Reader reader, char segmentSeparator, char elementSeparator) {
+        this(reader, segmentSeparator, elementSeparator, _DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Constructor
+     * @param reader the reader to tokenize, positioned at the start of the first segment
+     * @param segmentSeparator segment separator
+     * @param elementSeparator element separator
+     * @param bufferSize initial size of the character buffer; the buffer grows if a single segment does not fit in it
+     */
+    public X12Lexer(Reader reader, char segmentSeparator, char elementSeparator, int bufferSize) {
+        _reader = reader;
+        _segmentSeparator = segmentSeparator;
+        _elementSeparator = elementSeparator;
+        _buffer = new char[Math.max(bufferSize, 16)];
+    }
+
+    /**
+     * Constructor for a lexer that is given its content with {@link #append(char[], int, int)} instead of reading it
+     * @param segmentSeparator segment separator
+     * @param elementSeparator element separator
+     */
+    public X12Lexer(char segmentSeparator, char elementSeparator) {
+        this(null, segmentSeparator, elementSeparator, _DEFAULT_BUFFER_SIZE);
+    }
+
+    /**
+     * Adds content to a lexer created without a reader. A segment can be split across several chunks. The current segment is no longer available after
+     * this call.
+     * @param chars characters to add
+     * @param offset position of the first character to add
+     * @param length number of characters to add
+     */
+    public void append(char[] chars, int offset, int length) {
+        if (_reader != null)
+            throw new IllegalStateException("Content can only be appended to a lexer created without a reader");
+        if (_eof)
+            throw new IllegalStateException("Content can't be appended after the end of the content");
+
+        // drop the characters that were already scanned
+        if (_position > 0) {
+            System.arraycopy(_buffer, _position, _buffer, 0, _limit - _position);
+            _limit -= _position;
+            _position = 0;
+        }
+        if (_buffer.length - _limit < length) {
+            char[] buffer = new char[Math.max(_buffer.length * 2, _limit + length)];
+            System.arraycopy(_buffer, 0, buffer, 0, _limit);
+            _buffer = buffer;
+        }
+        System.arraycopy(chars, offset, _buffer, _limit, length);
+        _limit += length;
+    }
+
+    /**
+     * Indicates that all the content was added to a lexer created without a reader; the last segment doesn't need to end with a segment separator.
+     */
+    public void end() {
+        if (_reader != null)
+            throw new IllegalStateException("Only a lexer created without a reader can be ended");
+        _eof = true;
+    }
+
+    /**
+     * Returns true if all the segments were returned.
+     * @return true if the end of the content was reached
+     */
+    public boolean isFinished() {
+        return _finished;
+    }
+
+    /**
+     * Advances to the next segment.
+     * @return true if a segment was found, false if the end of the input was reached, or if more content must be appended to complete the segment
+     * @throws IOException if the input can't be read
+     */
+    public boolean next() throws IOException {
+        _segment = null;
+        _numElementSeparators = 0;
+
+        if (_finished)
+            return false;
+
+        if (_lineBreakPending) {
+            // a line break right after the segment separator is part of the separator
+            while (_limit - _position < 2 && !_eof)
+                if (fill(_position) < 0)
+                    return false;
+            if (_position < _limit && _buffer[_position] == '\n')
+                _position++;
+            else if (_position + 1 < _limit && _buffer[_position] == '\r' && _buffer[_position + 1] == '\n')
+                _position += 2;
+            _lineBreakPending = false;
+        }
+
+        int start = _position;
+        int end = start;
+        while (true) {
+            while (end < _limit && _buffer[end] != _segmentSeparator)
+                end++;
+            if (end < _limit) {
+                _position = end + 1;
+                _afterSeparator = true;
+                _lineBreakPending = true;
+                break;
+            }
+            if (_eof) {
+                // anything left after the last separator is a final segment, even if it's only whitespace
+                _finished = true;
+                if (start == _limit && (_afterSeparator || _limit == 0))
+                    return false;
+                _position = _limit;
+                break;
+            }
+            int shift = fill(start);
+            if (shift < 0)
+                return false;
+            start -= shift;
+            end -= shift;
+        }
+
+        // trim the segment and record where the elements are
+        while (start < end && _buffer[start] <= ' ')
+            start++;
+        while (end > start && _buffer[end - 1] <= ' ')
+            end--;
+        for (int i = start; i < end; i++) {
+            if (_buffer[i] == _elementSeparator) {
+                if (_numElementSeparators == _elementSeparators.length) {
+                    int[] separators = new int[_elementSeparators.length * 2];
+                    System.arraycopy(_elementSeparators, 0, separators, 0, _numElementSeparators);
+                    _elementSeparators = separators;
+                }
+                _elementSeparators[_numElementSeparators++] = i - start;
+            }
+        }
+        _segmentStart = start;
+        _segmentEnd = end;
+
+        return true;
+    }
+
+    /**
+     * Returns the text of the current segment, without the segment separator or the surrounding whitespace.
+     * @return the current segment
+     */
+    public String getSegment() {
+        if (_segment == null)
+            _segment = new String(_buffer, _segmentStart, _segmentEnd - _segmentStart);
+        return _segment;
+    }
+
+    /**
+     * Returns the number of elements in the current segment, including the segment identifier.
+     * @return number of elements
+     */
+    public int getElementCount() {
+        return _numElementSeparators + 1;
+    }
+
+    /**
+     * Returns the position in the current segment text where the requested element starts; element 0 is the segment identifier.
+     * @param index element index
+     * @return start position of the element
+     */
+    public int getElementStart(int index) {
+        return index == 0 ? 0 : _elementSeparators[index - 1] + 1;
+    }
+
+    /**
+     * Returns the position in the current segment text where the requested element ends (exclusive); element 0 is the segment identifier.
+     * @param index element index
+     * @return end position of the element
+     */
+    public int getElementEnd(int index) {
+        return index == _numElementSeparators ? _segmentEnd - _segmentStart : _elementSeparators[index];
+    }
+
+    /**
+     * Returns the positions of the element separators in the current segment text.
+     * @return a new array containing one position per element separator
+     */
+    public int[] getElementSeparators() {
+        int[] separators = new int[_numElementSeparators];
+        System.arraycopy(_elementSeparators, 0, separators, 0, _numElementSeparators);
+        return separators;
+    }
+
+    /**
+     * Reads more characters into the buffer, keeping everything from the given position.
+     * @param keepFrom first position of the buffer that must be kept
+     * @return the number of positions the kept characters were moved towards the start of the buffer, -1 if the content must be appended
+     */
+    private int fill(int keepFrom) throws IOException {
+        if (_eof)
+            return 0;
+        if (_reader == null)
+            return -1;
+
+        int shift = keepFrom;
+        if (shift > 0) {
+            System.arraycopy(_buffer, keepFrom, _buffer, 0, _limit - keepFrom);
+            _limit -= shift;
+            _position -= shift;
+        }
+        else if (_limit == _buffer.length) {
+            char[] buffer = new char[_buffer.length * 2];
+            System.arraycopy(_buffer, 0, buffer, 0, _limit);
+            _buffer = buffer;
+        }
+
+        int read = _reader.read(_buffer, _limit, _buffer.length - _limit);
+        if (read == -1)
+            _eof = true;
+        else
+            _limit += read;
+
+        return shift;
+    }
+}
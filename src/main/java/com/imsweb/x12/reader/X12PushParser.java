@@ -0,0 +1,257 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.function.Consumer;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Parses an X12 file from chunks of bytes pushed to it, for example as they arrive from a non-blocking channel, instead of pulling them from a blocking
+ * reader. Each chunk is decoded and split into segments right away; a segment (or a multi-byte character) can be split across chunks.
+ * <br/><br/>
+ * The loops are the same as the ones of an {@link X12Reader} reading the whole file. Like with
+ * {@link X12Reader#X12Reader(FileType, java.io.Reader, String, Consumer)}, the loops with a given ID can be passed to a listener as soon as they are complete,
+ * instead of being kept in memory:
+ * <pre>
+ * X12PushParser parser = new X12PushParser(FileType.ANSI837_5010_X222, StandardCharsets.UTF_8, "2300", claim -&gt; process(claim));
+ * while (channel.read(buffer) != -1) {
+ *     buffer.flip();
+ *     parser.feed(buffer);
+ *     buffer.clear();
+ * }
+ * X12Reader reader = parser.end();
+ * </pre>
+ * A parser is not thread-safe; the chunks must be pushed in the order of the file, one at a time.
+ */
+public final class X12PushParser {
+
+    private static final int _ISA_LENGTH = 106;
+    private static final int _SEGMENT_SEPARATOR_POS = 105; // array position
+
+    private final X12Reader _reader;
+    private final CharsetDecoder _decoder;
+    private final CharBuffer _chars = CharBuffer.allocate(8192);
+    private ByteBuffer _remaining; // bytes of a character split across chunks
+    private StringBuilder _header = new StringBuilder(); // the start of the file, until the segment following the ISA segment is complete
+    private int _headerScanned = _ISA_LENGTH; // position of the header from which the segment separator following the ISA segment is searched
+    private X12Lexer _lexer;
+    private boolean _stopped; // true if the remaining content must be ignored
+    private boolean _ended;
+
+    /**
+     * Constructor
+     * @param type the type of x12 file
+     * @param charset character encoding
+     */
+    public X12PushParser(FileType type, Charset charset) {
+        this(type, charset, null, null);
+    }
+
+    /**
+     * Constructor for a parser that passes the loops with the given ID to a listener instead of keeping them in memory, see
+     * {@link X12Reader#X12Reader(FileType, java.io.File, Charset, String, Consumer)}.
+     * @param type the type of x12 file
+     * @param charset character encoding
+     * @param loopId the ID of the loops to stream (for example 2300 for the claims of an 837)
+     * @param listener the listener receiving each completed loop
+     */
+    public X12PushParser(FileType type, Charset charset, String loopId, Consumer<Loop> listener) {
+        _reader = new X12Reader(type, loopId, listener);
+        // malformed input is replaced, like it is by the readers of X12Reader
+        _decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Constructor for a parser that passes the loops and segments of the file to a handler instead of building a loop tree, see
+     * {@link X12Reader#X12Reader(FileType, java.io.File, Charset, X12EventHandler)}.
+     * @param type the type of x12 file
+     * @param charset character encoding
+     * @param handler the handler receiving the loops and segments of the file
+     */
+    public X12PushParser(FileType type, Charset charset, X12EventHandler handler) {
+        _reader = new X12Reader(type, handler);
+        _decoder = charset.newDecoder().onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+    }
+
+    /**
+     * Constructor for a parser that is given characters instead of bytes, see {@link #feed(char[], int, int)}.
+     * @param type the type of x12 file
+     * @param loopId the ID of the loops to stream, null to keep all the loops in memory
+     * @param listener the listener receiving each completed loop, null to keep all the loops in memory
+     */
+    X12PushParser(FileType type, String loopId, Consumer<Loop> listener) {
+        _reader = new X12Reader(type, loopId, listener);
+        _decoder = null;
+    }
+
+    /**
+     * Parses the next chunk of the file. All the remaining bytes of the buffer are consumed.
+     * @param bytes the next bytes of the file
+     */
+    public void feed(ByteBuffer bytes) {
+        if (_ended)
+            throw new IllegalStateException("The parser was already ended");
+        if (_decoder == null)
+            throw new IllegalStateException("The parser was created without a character encoding");
+
+        ByteBuffer input = bytes;
+        if (_remaining != null) {
+            ByteBuffer combined = ByteBuffer.allocate(_remaining.remaining() + bytes.remaining());
+            combined.put(_remaining).put(bytes);
+            combined.flip();
+            input = combined;
+            _remaining = null;
+        }
+
+        decode(input, false);
+
+        if (input.hasRemaining()) {
+            _remaining = ByteBuffer.allocate(input.remaining());
+            _remaining.put(input);
+            _remaining.flip();
+        }
+    }
+
+    /**
+     * Parses the next characters of the file, for a parser created without a character encoding.
+     * @param chars characters to parse
+     * @param offset position of the first character to parse
+     * @param length number of characters to parse
+     */
+    void feed(char[] chars, int offset, int length) {
+        if (_ended)
+            throw new IllegalStateException("The parser was already ended");
+        parse(chars, offset, length);
+    }
+
+    /**
+     * Returns true if the rest of the file is ignored, because of a fatal error.
+     * @return true if the parsing stopped
+     */
+    boolean isStopped() {
+        return _stopped;
+    }
+
+    /**
+     * Parses the end of the file, once all the chunks were pushed.
+     * @return the reader containing the loops and the errors of the file
+     */
+    public X12Reader end() {
+        if (_ended)
+            throw new IllegalStateException("The parser was already ended");
+        _ended = true;
+
+        if (_decoder != null) {
+            decode(_remaining == null ? ByteBuffer.allocate(0) : _remaining, true);
+            _remaining = null;
+            CoderResult result;
+            do {
+                result = _decoder.flush(_chars);
+                parseDecoded();
+            } while (result.isOverflow());
+        }
+
+        if (_lexer == null && !_stopped)
+            startSegments();
+        if (_lexer != null) {
+            _lexer.end();
+            if (!_stopped)
+                parseSegments();
+            _reader.endParsing();
+        }
+
+        return _reader;
+    }
+
+    private void decode(ByteBuffer input, boolean endOfInput) {
+        CoderResult result;
+        do {
+            result = _decoder.decode(input, _chars, endOfInput);
+            parseDecoded();
+        } while (result.isOverflow());
+    }
+
+    /**
+     * Parses the decoded characters.
+     */
+    private void parseDecoded() {
+        _chars.flip();
+        parse(_chars.array(), _chars.position(), _chars.remaining());
+        _chars.clear();
+    }
+
+    /**
+     * Parses the given characters.
+     */
+    private void parse(char[] chars, int offset, int length) {
+        if (!_stopped && length > 0) {
+            if (_lexer != null) {
+                _lexer.append(chars, offset, length);
+                parseSegments();
+            }
+            else {
+                // the separators and the version are read from the ISA segment and the segment following it
+                _header.append(chars, offset, length);
+                if (_header.length() >= _ISA_LENGTH) {
+                    char segmentSeparator = _header.charAt(_SEGMENT_SEPARATOR_POS);
+                    int i = _headerScanned;
+                    while (i < _header.length() && _header.charAt(i) != segmentSeparator)
+                        i++;
+                    _headerScanned = i;
+                    if (i < _header.length())
+                        startSegments();
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the header of the file, and passes it to the lexer if the segments can be parsed.
+     */
+    private void startSegments() {
+        String header = _header.toString();
+        _header = null;
+        try {
+            if (_reader.startParsing(new StringReader(header))) {
+                Separators separators = _reader.getSeparators();
+                _lexer = new X12Lexer(separators.getSegment(), separators.getElement());
+                _lexer.append(header.toCharArray(), 0, header.length());
+                parseSegments();
+            }
+            else
+                _stopped = true;
+        }
+        catch (IOException e) {
+            // a string reader can't fail
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Parses the complete segments given to the lexer.
+     */
+    private void parseSegments() {
+        try {
+            while (_lexer.next()) {
+                if (!_reader.parseSegment(new ParsedSegment(_lexer.getSegment(), _lexer.getElementSeparators()))) {
+                    _stopped = true;
+                    break;
+                }
+            }
+        }
+        catch (IOException e) {
+            // a lexer without a reader can't fail
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -7,18 +7,31 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
-import java.util.NoSuchElementException;
-import java.util.Scanner;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import com.thoughtworks.xstream.XStream;
 import com.thoughtworks.xstream.io.xml.StaxDriver;
@@ -26,11 +39,8 @@ import com.thoughtworks.xstream.security.NoTypePermission;
 import com.thoughtworks.xstream.security.WildcardTypePermission;
 
 import com.imsweb.x12.Loop;
-import com.imsweb.x12.Segment;
 import com.imsweb.x12.Separators;
-import com.imsweb.x12.mapping.CompositeDefinition;
-import com.imsweb.x12.mapping.ElementDefinition;
-import com.imsweb.x12.mapping.LoopDefinition;
+import com.imsweb.x12.mapping.BinaryMapping;
 import com.imsweb.x12.mapping.SegmentDefinition;
 import com.imsweb.x12.mapping.TransactionDefinition;
 import com.imsweb.x12.mapping.TransactionDefinition.Usage;
@@ -41,6 +51,7 @@ public class X12Reader {
     private static final int _ELEMENT_SEPARATOR_POS = 3; // array position
     private static final int _COMPOSITE_SEPARATOR_POS = 104; // array position
     private static final int _SEGMENT_SEPARATOR_POS = 105; // array position
+    private static final String _GROUP_LOOP_ID = "GS_LOOP";
 
     private static final String _X091_ANSI_VERSION = "004010X091A1";
     private static final String _X221_ANSI_VERSION = "005010X221A1";
@@ -58,12 +69,23 @@ public class X12Reader {
 
     private List<String> _errors = new ArrayList<>();
     private final List<String> _fatalErrors = new ArrayList<>(); // structure issues so bad we should stop processing.
-    private final List<LoopConfig> _config = new ArrayList<>();
+    private LoopMatcher _matcher;
+    private LoopRepeatCounts _loopRepeatCounts;
     private final List<Loop> _dataLoops = new ArrayList<>();
-    private final Map<String, List<Set<String>>> _childLoopTracker = new HashMap<>();
+    private final Map<String, ChildLoops> _childLoopTracker = new HashMap<>();
     private Separators _separators;
     TransactionDefinition _definition;
     private final FileType _type;
+    private X12EventHandler _handler; // receives the loops and segments; builds the loop tree by default
+    private final List<List<String>> _transactionErrors = new ArrayList<>();
+    private TransactionSplitter.Transaction _transaction; // the transaction parsed by this reader when a file is parsed in parallel
+
+    // state of the parsing, between the segments of the file
+    private ParsedSegment _line; // the last segment read, processed once the next one is known
+    private List<ParsedSegment> _loopLines = new ArrayList<>(); // holds the lines from the claims files that all belong to the same loop
+    private LoopConfig _currentLoopConfig;
+    private final List<LoopConfig> _openLoops = new ArrayList<>(); // the last loop stored and its parents, starting with the interchange loop
+    private boolean _interchangeStarted;
 
     /**
      * All supported X12 file definitions
@@ -85,29 +107,107 @@ public class X12Reader {
 
         private final String _mapping;
 
-        private static final Map<String, TransactionDefinition> _DEFINITIONS = new HashMap<>();
+        // each type loads its own definition, the first reader of a type doesn't block the readers of the other types
+        private final Object _lock = new Object();
+        private volatile TransactionDefinition _definition;
+        private volatile LoopMatcher _matcher;
 
         FileType(String mapping) {
             _mapping = mapping;
         }
 
         /**
-         * Load definition from file
+         * Returns the XML mapping of this file type
+         * @return the mapping resource
+         */
+        public String getMapping() {
+            return _mapping;
+        }
+
+        /**
+         * Returns the version of this file type, the last element of the GS segment
+         * @return the version
+         */
+        public String getVersion() {
+            return _TYPES.get(this);
+        }
+
+        /**
+         * Load definition from file. The binary form of the mapping compiled when the library was built is used if it is available, the XML
+         * mapping otherwise.
          * @return a TransactionDefinition
+         * @throws UncheckedIOException if the binary mapping is available but can't be read
          */
         public TransactionDefinition getDefinition() {
-            synchronized (_DEFINITIONS) {
-                return _DEFINITIONS.computeIfAbsent(_mapping, k -> {
-                    XStream xstream = new XStream(new StaxDriver());
-                    xstream.autodetectAnnotations(true);
-                    xstream.alias("transaction", TransactionDefinition.class);
+            TransactionDefinition definition = _definition;
+            if (definition == null) {
+                synchronized (_lock) {
+                    definition = _definition;
+                    if (definition == null) {
+                        definition = loadBinaryDefinition();
+                        if (definition == null)
+                            definition = loadXmlDefinition();
+                        _definition = definition;
+                    }
+                }
+            }
+            return definition;
+        }
+
+        /**
+         * Loads the definition from the compiled binary mapping; a mapping that can't be read is a packaging issue, it doesn't fall back to the XML mapping.
+         * @return a TransactionDefinition, null if the binary mapping is not available
+         * @throws UncheckedIOException if the binary mapping is available but can't be read
+         */
+        TransactionDefinition loadBinaryDefinition() {
+            String resource = BinaryMapping.getResourceName(_mapping);
+            try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(resource)) {
+                return is == null ? null : BinaryMapping.read(is);
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException("Unable to read the compiled mapping " + resource, e);
+            }
+        }
+
+        /**
+         * Loads the definition from the XML mapping
+         * @return a TransactionDefinition
+         */
+        TransactionDefinition loadXmlDefinition() {
+            XStream xstream = new XStream(new StaxDriver());
+            xstream.autodetectAnnotations(true);
+            xstream.alias("transaction", TransactionDefinition.class);
+
+            xstream.addPermission(NoTypePermission.NONE);
+            xstream.addPermission(new WildcardTypePermission(new String[] {"com.imsweb.x12.**"}));
 
-                    xstream.addPermission(NoTypePermission.NONE);
-                    xstream.addPermission(new WildcardTypePermission(new String[] {"com.imsweb.x12.**"}));
+            return (TransactionDefinition)xstream.fromXML(Thread.currentThread().getContextClassLoader().getResourceAsStream(_mapping));
+        }
 
-                    return (TransactionDefinition)xstream.fromXML(Thread.currentThread().getContextClassLoader().getResourceAsStream(_mapping));
-                });
+        /**
+         * Returns the loop matcher compiled from the definition, shared by all the readers of this file type
+         * @return a LoopMatcher
+         */
+        LoopMatcher getMatcher() {
+            LoopMatcher matcher = _matcher;
+            if (matcher == null) {
+                synchronized (_lock) {
+                    matcher = _matcher;
+                    if (matcher == null) {
+                        matcher = new LoopMatcher(getDefinition());
+                        _matcher = matcher;
+                    }
+                }
             }
+            return matcher;
+        }
+
+        /**
+         * Loads the definitions of all the file types, so that the first reader of each type doesn't have to. Meant to be called when an application starts.
+         */
+        public static void preloadAll() {
+            for (FileType type : values())
+                type.getMatcher();
         }
     }
 
@@ -188,6 +288,275 @@ public class X12Reader {
             parse(reader);
     }
 
+    /**
+     * Constructs an X12Reader using a Path with default character encoding, like {@link #X12Reader(FileType, File)}.
+     * @param type the type of x12 file
+     * @param path the path of the input file
+     * @throws IOException if there was an error reading the input file
+     * @see #X12Reader(FileType, Path, Charset)
+     */
+    public X12Reader(FileType type, Path path) throws IOException {
+        this(type, path, Charset.defaultCharset());
+    }
+
+    /**
+     * Constructs an X12Reader using a Path. If the character encoding is ISO-8859-1, the file is memory-mapped: each byte of the file is read as one
+     * character, without any charset decoding (X12 files are made of single-byte characters). Otherwise, it is decoded like with
+     * {@link #X12Reader(FileType, File, Charset)}.
+     * <br/><br/>
+     * A memory-mapped file is only unmapped once the mapping is garbage collected, some time after the file was read: until then, the file can't be
+     * deleted or modified on Windows.
+     * @param type the type of x12 file
+     * @param path the path of the input file
+     * @param charset character encoding
+     * @throws IOException if there was an error reading the input file
+     */
+    public X12Reader(FileType type, Path path, Charset charset) throws IOException {
+        this._type = type;
+        try (Reader reader = openReader(path, charset)) {
+            parse(reader);
+        }
+    }
+
+    /**
+     * Constructs an X12Reader using a File that streams the loops with the given ID to a listener instead of keeping them in memory. Each loop is passed
+     * to the listener once it is complete; its parent loops, with their segments, remain available through {@link Loop#getParent()}. The loop is then removed
+     * from the loop tree, and so is each of its parent loops once it is complete. While the file is parsed, the tree only holds the open loops around the
+     * current streamed loop (for example the ISA_LOOP, GS_LOOP, ST_LOOP, 2000A and 2000B of a claim), with their segments and the child loops that were
+     * completed without any streamed loop (like a 2010AA or a 2010BA). The tree returned by {@link #getLoops()} therefore only contains the loops of the
+     * file that didn't contain any streamed loop, and memory usage doesn't grow with the number of streamed loops, unless the listener keeps them.
+     * @param type the type of x12 file
+     * @param file a File object representing the input file
+     * @param charset character encoding
+     * @param loopId the ID of the loops to stream (for example 2300 for the claims of an 837)
+     * @param listener the listener receiving each completed loop
+     * @throws IOException if there was an error reading the input file
+     */
+    public X12Reader(FileType type, File file, Charset charset, String loopId, Consumer<Loop> listener) throws IOException {
+        this._type = type;
+        this._handler = new LoopTreeBuilder(_dataLoops, loopId, listener, null);
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset))) {
+            parse(reader);
+        }
+    }
+
+    /**
+     * Constructs an X12Reader using an InputStream that streams the loops with the given ID to a listener instead of keeping them in memory.
+     * @param type the type of x12 file
+     * @param input an InputStream to an input file
+     * @param charset character encoding
+     * @param loopId the ID of the loops to stream (for example 2300 for the claims of an 837)
+     * @param listener the listener receiving each completed loop
+     * @throws IOException if there was an error reading the input file
+     * @see #X12Reader(FileType, File, Charset, String, Consumer)
+     */
+    public X12Reader(FileType type, InputStream input, Charset charset, String loopId, Consumer<Loop> listener) throws IOException {
+        this._type = type;
+        this._handler = new LoopTreeBuilder(_dataLoops, loopId, listener, null);
+        parse(new BufferedReader(new InputStreamReader(input, charset)));
+    }
+
+    /**
+     * Constructs an X12Reader using a Reader that streams the loops with the given ID to a listener instead of keeping them in memory.
+     * @param type the type of x12 file
+     * @param reader a Reader pointing to an input file
+     * @param loopId the ID of the loops to stream (for example 2300 for the claims of an 837)
+     * @param listener the listener receiving each completed loop
+     * @throws IOException if there was an error reading the input file
+     * @see #X12Reader(FileType, File, Charset, String, Consumer)
+     */
+    public X12Reader(FileType type, Reader reader, String loopId, Consumer<Loop> listener) throws IOException {
+        this._type = type;
+        this._handler = new LoopTreeBuilder(_dataLoops, loopId, listener, null);
+        parse(reader.markSupported() ? reader : new BufferedReader(reader));
+    }
+
+    /**
+     * Constructs an X12Reader using a File that passes the loops and segments of the file to a handler, in the order of the file, instead of building
+     * a loop tree. The loops are matched and validated like they are by the other constructors, but no Loop, Segment or Element is created, so a
+     * handler that doesn't keep the segments parses a file of any size with a small amount of memory. {@link #getLoops()} returns an empty list, unless the
+     * handler is a {@link LoopTreeBuilder} (for example one using a {@link com.imsweb.x12.ValuePool}), whose loops it returns; the errors are available
+     * once the file was parsed, and are also passed to the handler as they are found.
+     * @param type the type of x12 file
+     * @param file a File object representing the input file
+     * @param charset character encoding
+     * @param handler the handler receiving the loops and segments of the file
+     * @throws IOException if there was an error reading the input file
+     */
+    public X12Reader(FileType type, File file, Charset charset, X12EventHandler handler) throws IOException {
+        this._type = type;
+        this._handler = handler;
+        try (Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), charset))) {
+            parse(reader);
+        }
+    }
+
+    /**
+     * Constructs an X12Reader using an InputStream that passes the loops and segments of the file to a handler instead of building a loop tree.
+     * @param type the type of x12 file
+     * @param input an InputStream to an input file
+     * @param charset character encoding
+     * @param handler the handler receiving the loops and segments of the file
+     * @throws IOException if there was an error reading the input file
+     * @see #X12Reader(FileType, File, Charset, X12EventHandler)
+     */
+    public X12Reader(FileType type, InputStream input, Charset charset, X12EventHandler handler) throws IOException {
+        this._type = type;
+        this._handler = handler;
+        parse(new BufferedReader(new InputStreamReader(input, charset)));
+    }
+
+    /**
+     * Constructs an X12Reader using a Reader that passes the loops and segments of the file to a handler instead of building a loop tree.
+     * @param type the type of x12 file
+     * @param reader a Reader pointing to an input file
+     * @param handler the handler receiving the loops and segments of the file
+     * @throws IOException if there was an error reading the input file
+     * @see #X12Reader(FileType, File, Charset, X12EventHandler)
+     */
+    public X12Reader(FileType type, Reader reader, X12EventHandler handler) throws IOException {
+        this._type = type;
+        this._handler = handler;
+        parse(reader.markSupported() ? reader : new BufferedReader(reader));
+    }
+
+    /**
+     * Constructs an X12Reader using a File that parses the transactions (ST to SE) of the file in parallel. The file is read in memory and split into
+     * its transactions; each transaction is parsed on the executor, with its ISA and GS envelopes, and the loops are put back together in the order of the
+     * file. The loops and the errors are the same as the ones of a sequential parse: the envelope segments shared by several transactions are only
+     * validated once, and the loop repeats and required child loops are checked on the whole file once all the transactions are parsed. The segment
+     * errors are also available for each transaction, see {@link #getTransactionErrors()}.
+     * <br/><br/>
+     * The content of the file is kept in memory, once, until all the transactions are parsed.
+     * <br/><br/>
+     * Files that don't have a regular envelope structure are parsed sequentially. When a transaction has a fatal error, the transactions after it are
+     * ignored, like they would be by a sequential parse.
+     * @param type the type of x12 file
+     * @param file a File object representing the input file
+     * @param charset character encoding
+     * @param executor the executor parsing the transactions
+     * @throws IOException if there was an error reading the input file
+     */
+    public X12Reader(FileType type, File file, Charset charset, Executor executor) throws IOException {
+        this._type = type;
+        try (Reader reader = new InputStreamReader(new FileInputStream(file), charset)) {
+            parseInParallel(reader, executor);
+        }
+    }
+
+    /**
+     * Constructs an X12Reader using an InputStream that parses the transactions (ST to SE) of the file in parallel.
+     * @param type the type of x12 file
+     * @param input an InputStream to an input file
+     * @param charset character encoding
+     * @param executor the executor parsing the transactions
+     * @throws IOException if there was an error reading the input file
+     */
+    public X12Reader(FileType type, InputStream input, Charset charset, Executor executor) throws IOException {
+        this._type = type;
+        parseInParallel(new InputStreamReader(input, charset), executor);
+    }
+
+    /**
+     * Constructs an X12Reader using a Reader that parses the transactions (ST to SE) of the file in parallel.
+     * @param type the type of x12 file
+     * @param reader a Reader pointing to an input file
+     * @param executor the executor parsing the transactions
+     * @throws IOException if there was an error reading the input file
+     */
+    public X12Reader(FileType type, Reader reader, Executor executor) throws IOException {
+        this._type = type;
+        parseInParallel(reader, executor);
+    }
+
+    /**
+     * Constructs an X12Reader parsing one transaction of a file parsed in parallel. The loop repeats and the required child loops are not checked, the file
+     * reader checks them once the counts of all its transactions are merged.
+     * @param type the type of x12 file
+     * @param transaction the transaction to parse, with its envelopes
+     * @throws IOException if there was an error reading the transaction
+     */
+    private X12Reader(FileType type, TransactionSplitter.Transaction transaction) throws IOException {
+        this._type = type;
+        this._transaction = transaction;
+        try (Reader reader = transaction.newReader()) {
+            parse(reader);
+        }
+    }
+
+    /**
+     * Constructs an X12Reader that is given the content of the file by an {@link X12PushParser}.
+     * @param type the type of x12 file
+     * @param loopId the ID of the loops to stream, null to keep all the loops in memory
+     * @param listener the listener receiving each completed loop, null to keep all the loops in memory
+     */
+    X12Reader(FileType type, String loopId, Consumer<Loop> listener) {
+        this._type = type;
+        this._handler = new LoopTreeBuilder(_dataLoops, loopId, listener, null);
+    }
+
+    /**
+     * Constructs an X12Reader that is given the content of the file by an {@link X12PushParser}, and passes its loops and segments to a handler.
+     * @param type the type of x12 file
+     * @param handler the handler receiving the loops and segments of the file
+     */
+    X12Reader(FileType type, X12EventHandler handler) {
+        this._type = type;
+        this._handler = handler;
+    }
+
+    /**
+     * Returns a lazy stream of the transactions (ST_LOOP) of a file, with default character encoding. The file is only parsed as the stream is consumed,
+     * so short-circuiting operations (like findFirst or limit) stop reading the file early.
+     * @param type the type of x12 file
+     * @param path the path of the input file
+     * @return the stream of transactions, which must be closed to close the file
+     * @throws IOException if the file can't be opened
+     * @see #stream(FileType, Path, Charset, String)
+     */
+    public static Stream<Loop> stream(FileType type, Path path) throws IOException {
+        return stream(type, path, Charset.defaultCharset(), "ST_LOOP");
+    }
+
+    /**
+     * Returns a lazy stream of the loops with the given ID of a file. The file is only parsed as the stream is consumed, so short-circuiting operations
+     * (like findFirst or limit) stop reading the file early. Like with the streaming constructors, the parent loops of each loop remain available through
+     * {@link Loop#getParent()}, without the loops that were already returned.
+     * <br/><br/>
+     * The validation errors of the file are not reported; an UncheckedIOException is thrown when the file can't be read, or if it has a structure issue
+     * that prevents it from being processed (see {@link #getFatalErrors()}).
+     * @param type the type of x12 file
+     * @param path the path of the input file
+     * @param charset character encoding; the file is memory-mapped for ISO-8859-1, like with {@link #X12Reader(FileType, Path, Charset)}
+     * @param loopId the ID of the loops to return (for example ST_LOOP for the transactions, or 2300 for the claims of an 837)
+     * @return the stream of loops, which must be closed to close the file
+     * @throws IOException if the file can't be opened
+     */
+    public static Stream<Loop> stream(FileType type, Path path, Charset charset, String loopId) throws IOException {
+        LoopIterator loops = new LoopIterator(type, openReader(path, charset), loopId);
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(loops, Spliterator.ORDERED | Spliterator.NONNULL), false).onClose(() -> {
+            try {
+                loops.close();
+            }
+            catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    /**
+     * Opens a reader on a file; the file is memory-mapped if the character encoding is ISO-8859-1.
+     * @param path the path of the file
+     * @param charset character encoding
+     * @return a reader supporting mark and reset
+     * @throws IOException if the file can't be opened
+     */
+    static Reader openReader(Path path, Charset charset) throws IOException {
+        if (StandardCharsets.ISO_8859_1.equals(charset))
+            return new MappedFileReader(FileChannel.open(path, StandardOpenOption.READ));
+        return new BufferedReader(new InputStreamReader(Files.newInputStream(path), charset));
+    }
+
     public TransactionDefinition getDefinition() {
         return _definition;
     }
@@ -197,6 +566,9 @@ public class X12Reader {
      * @return the loop list
      */
     public List<Loop> getLoops() {
+        // the loops of a builder given to the reader are the ones of the file, like the ones of the builder the reader creates
+        if (_handler instanceof LoopTreeBuilder)
+            return ((LoopTreeBuilder)_handler).getLoops();
         return _dataLoops;
     }
 
@@ -212,8 +584,22 @@ public class X12Reader {
         return _fatalErrors;
     }
 
+    /**
+     * Returns the segment errors of each transaction, in the order of the transactions in the file, when the file was parsed in parallel. All these errors
+     * are also returned by {@link #getErrors()}, followed by the errors of the loop structure, which are checked on the whole file.
+     * @return the errors of each transaction, empty if the file was parsed sequentially
+     */
+    public List<List<String>> getTransactionErrors() {
+        return _transactionErrors;
+    }
+
+    /**
+     * Returns the separators of the file. The loops of the file share read-only separators; the returned instance is a copy, which can be modified without
+     * changing the loops.
+     * @return a copy of the separators, null if they couldn't be read
+     */
     public Separators getSeparators() {
-        return _separators;
+        return _separators == null ? null : new Separators(_separators);
     }
 
     /**
@@ -221,177 +607,316 @@ public class X12Reader {
      * @param reader reader
      */
     private void parse(Reader reader) throws IOException {
-        Scanner scanner = new Scanner(reader);
+        if (startParsing(reader)) {
+            // the lexer accepts the segment delimiter with optional line breaks
+            X12Lexer lexer = new X12Lexer(reader, _separators.getSegment(), _separators.getElement());
+            while (lexer.next())
+                if (!parseSegment(new ParsedSegment(lexer.getSegment(), lexer.getElementSeparators())))
+                    break;
+            endParsing();
+        }
+    }
+
+    /**
+     * Reads the separators and checks the version of the file; the reader is reset to the start of the file.
+     * @param reader reader supporting mark and reset
+     * @return true if the segments of the file can be parsed, false if a fatal error was recorded
+     */
+    boolean startParsing(Reader reader) throws IOException {
+        if (_handler == null)
+            _handler = new LoopTreeBuilder(_dataLoops, null, null, null);
 
         // set up delimiters
         _separators = getSeparators(reader);
 
-        if (_separators != null && checkVersionsAreConsistent(_separators, reader)) {
-            Character segmentSeparator = _separators.getSegment();
-            String quotedSegmentSeparator = Pattern.quote(segmentSeparator.toString());
-
-            // The following delimiter patterns will accept the segment delimiter with
-            // optional line breaks.
-            scanner.useDelimiter(quotedSegmentSeparator + "\r\n|" + quotedSegmentSeparator + "\n|" + quotedSegmentSeparator);
+        if (_separators == null || !checkVersionsAreConsistent(_separators, reader)) {
+            addFatalError("Unable to process transaction!");
+            return false;
+        }
 
-            List<String> loopLines = new ArrayList<>(); // holds the lines from the claims files that all belong to the same loop
-            LoopConfig loopConfig;
-            LoopConfig currentLoopConfig = null;
-            Loop lastLoopStored = null;
+        // parse _definition file
+        _definition = _type.getDefinition();
+        _matcher = _type.getMatcher();
+        _loopRepeatCounts = new LoopRepeatCounts(_matcher.getLoopConfigs().size());
 
-            // parse _definition file
-            _definition = _type.getDefinition();
+        _errors = new ArrayList<>();
 
-            // cache definitions of loop starting segments
-            getLoopConfiguration(_definition.getLoop(), null);
+        return true;
+    }
 
-            _errors = new ArrayList<>();
+    /**
+     * Parses the next segment of the file. A segment is only processed once the following one is known, since the last segment of the file is
+     * handled differently; see {@link #endParsing()}.
+     * @param segment the next segment
+     * @return true if the parsing can continue, false if an error means the remaining segments should be ignored
+     */
+    boolean parseSegment(ParsedSegment segment) {
+        ParsedSegment line = _line;
+        if (line == null) {
+            _line = segment;
+            return true;
+        }
 
-            String line = scanner.next().trim();
-            while (scanner.hasNext()) {
-                // Determine if we have started a new loop
-                loopConfig = getMatchedLoop(_separators.splitElement(line), currentLoopConfig == null ? null : currentLoopConfig.getLoopId());
-                if (loopConfig == null)
-                    loopLines.add(line); // didn't start a new loop, just add the lines for the current loop
-                else {
-                    if (loopConfig.getLastSegmentXid() != null && line.startsWith(loopConfig.getLastSegmentXid().getXid()) && !loopConfig.equals(currentLoopConfig)) {
-                        lastLoopStored = appendEndingSegment(lastLoopStored, currentLoopConfig, loopConfig, _separators, line, loopLines);
-                        if (lastLoopStored != null) {
-                            loopLines = new ArrayList<>();
-                            currentLoopConfig = loopConfig;
-                        }
-                        else
-                            break; // fatal error found when appending the segment
-                    }
-                    else if (loopConfig.getLoopId().equals(_definition.getLoop().getXid())) {
-                        // we are processing a new transaction - store any old data if necessary
-                        if (lastLoopStored != null && !loopLines.isEmpty()) {
-                            if (storeData(currentLoopConfig, loopLines, lastLoopStored, _separators) == null)
-                                break;
-                            loopLines = new ArrayList<>();
-                        }
-                        currentLoopConfig = loopConfig;
-                        lastLoopStored = null;
-                        Loop loop = new Loop(null);
-                        loop.setSeparators(_separators);
-                        _dataLoops.add(loop);
-                        loopLines.add(line);
-                    }
-                    else {
-                        if (currentLoopConfig == null) {
-                            _fatalErrors.add("Current loop is unknown. Bad structure detected");
-                            break;
-                        }
-                        updateLoopCounts(loopConfig.getLoopId());
-                        // store the data from processing the last loop
-                        if (!loopLines.isEmpty())
-                            lastLoopStored = storeData(currentLoopConfig, loopLines, lastLoopStored, _separators);
-
-                        if (lastLoopStored == null)
-                            break; // fatal error recorded during storing the loop
-
-                        // start processing the new loop we found
-                        loopLines = new ArrayList<>();
-                        loopLines.add(line);
-                        currentLoopConfig = loopConfig;
-                    }
+        // Determine if we have started a new loop
+        LoopConfig loopConfig = getMatchedLoop(line, _currentLoopConfig == null ? null : _currentLoopConfig.getLoopId());
+        if (loopConfig == null)
+            _loopLines.add(line); // didn't start a new loop, just add the lines for the current loop
+        else {
+            if (loopConfig.getLastSegmentXid() != null && line.getText().startsWith(loopConfig.getLastSegmentXid().getXid()) && !loopConfig.equals(_currentLoopConfig)) {
+                if (appendEndingSegment(_currentLoopConfig, loopConfig, line, _loopLines)) {
+                    _loopLines = new ArrayList<>();
+                    _currentLoopConfig = loopConfig;
+                }
+                else
+                    return false; // fatal error found when appending the segment
+            }
+            else if (loopConfig.getLoopId().equals(_definition.getLoop().getXid())) {
+                // we are processing a new transaction - store any old data if necessary
+                if (!_openLoops.isEmpty() && !_loopLines.isEmpty()) {
+                    if (!storeData(_currentLoopConfig, _loopLines))
+                        return false;
+                    _loopLines = new ArrayList<>();
                 }
+                _currentLoopConfig = loopConfig;
+                closeLoops(0);
+                if (_interchangeStarted)
+                    _handler.endInterchange();
+                _handler.startInterchange(_separators);
+                _interchangeStarted = true;
+                _loopLines.add(line);
+            }
+            else {
+                if (_currentLoopConfig == null) {
+                    addFatalError("Current loop is unknown. Bad structure detected");
+                    return false;
+                }
+                if (!isRepeatedEnvelope(loopConfig.getLoopId()))
+                    _loopRepeatCounts.increment(loopConfig);
+                // store the data from processing the last loop
+                if (!_loopLines.isEmpty() && !storeData(_currentLoopConfig, _loopLines))
+                    return false; // fatal error recorded during storing the loop
+
+                if (_openLoops.isEmpty())
+                    return false;
+
+                // start processing the new loop we found
+                _loopLines = new ArrayList<>();
+                _loopLines.add(line);
+                _currentLoopConfig = loopConfig;
+            }
+        }
+
+        _line = segment;
+        return true;
+    }
 
+    /**
+     * Processes the last segment of the file and checks the structure of the loops.
+     */
+    void endParsing() {
+        // store the final segment if the last line of the file has data.
+        ParsedSegment line = _line;
+        if (line != null && !line.getText().isEmpty() && _fatalErrors.isEmpty()) {
+            if (_currentLoopConfig != null) {
+                LoopConfig loopConfig = getMatchedLoop(line, _currentLoopConfig.getLoopId());
+                if (!appendEndingSegment(_currentLoopConfig, loopConfig, line, _loopLines) || _openLoops.size() != 1)
+                    addFatalError("Unable to find end of transaction");
+            }
+            else
+                addFatalError("Last line of data and we don't know the current loop.");
+        }
+        // the loops still open are only complete once the whole file has been read
+        closeLoops(0);
+        if (_interchangeStarted)
+            _handler.endInterchange();
+        _interchangeStarted = false;
+
+        // the loops of a transaction parsed in parallel are checked with the ones of the other transactions
+        if (_fatalErrors.isEmpty() && _transaction == null)
+            checkLoopErrors();
+
+        _line = null;
+        _loopLines = null;
+        _currentLoopConfig = null;
+    }
+
+    /**
+     * Parses the transactions of a file in parallel, see {@link #X12Reader(FileType, File, Charset, Executor)}
+     * @param reader reader
+     * @param executor executor parsing the transactions
+     */
+    private void parseInParallel(Reader reader, Executor executor) throws IOException {
+        char[] chars = new char[64 * 1024];
+        int length = 0;
+        int n;
+        while ((n = reader.read(chars, length, chars.length - length)) != -1) {
+            length += n;
+            if (length == chars.length)
+                chars = Arrays.copyOf(chars, chars.length * 2);
+        }
+        CharBuffer content = CharBuffer.wrap(chars, 0, length);
+
+        // the first envelopes are checked like they are by a sequential parse
+        Reader header = new CharBufferReader(content);
+        _separators = getSeparators(header);
+        List<TransactionSplitter.Transaction> transactions = null;
+        if (_separators != null && checkVersionsAreConsistent(_separators, header))
+            transactions = TransactionSplitter.split(content);
+        _errors.clear();
+
+        if (transactions == null) {
+            _separators = null;
+            parse(new CharBufferReader(content));
+            return;
+        }
+
+        List<CompletableFuture<X12Reader>> results = new ArrayList<>(transactions.size());
+        for (TransactionSplitter.Transaction transaction : transactions)
+            results.add(CompletableFuture.supplyAsync(() -> {
                 try {
-                    line = scanner.next().trim();
+                    return new X12Reader(_type, transaction);
                 }
-                catch (NoSuchElementException e) {
-                    // break out of the loop, we have apparently hit the end of the file
-                    break;
+                catch (IOException e) {
+                    throw new UncheckedIOException(e);
                 }
+            }, executor));
+
+        _definition = _type.getDefinition();
+        _matcher = _type.getMatcher();
+        _loopRepeatCounts = new LoopRepeatCounts(_matcher.getLoopConfigs().size());
+
+        // put the loops back together: each result is an interchange with a single group that contains a single transaction
+        Loop interchange = null;
+        Loop group = null;
+        for (int i = 0; i < transactions.size(); i++) {
+            X12Reader result;
+            try {
+                result = results.get(i).join();
+            }
+            catch (CompletionException e) {
+                results.forEach(f -> f.cancel(false));
+                if (e.getCause() instanceof UncheckedIOException)
+                    throw ((UncheckedIOException)e.getCause()).getCause();
+                if (e.getCause() instanceof RuntimeException)
+                    throw (RuntimeException)e.getCause();
+                throw e;
             }
 
-            // store the final segment if the last line of the file has data.
-            if (!line.isEmpty() && _fatalErrors.isEmpty()) {
-                if (currentLoopConfig != null) {
-                    loopConfig = getMatchedLoop(_separators.splitElement(line), currentLoopConfig.getLoopId());
-                    lastLoopStored = appendEndingSegment(lastLoopStored, currentLoopConfig, loopConfig, _separators, line, loopLines);
-                    if (lastLoopStored == null || !_definition.getLoop().getXid().equals(lastLoopStored.getId()))
-                        _fatalErrors.add("Unable to find end of transaction");
-                }
-                else
-                    _fatalErrors.add("Last line of data and we don't know the current loop.");
+            _transactionErrors.add(result.getErrors());
+            _errors.addAll(result.getErrors());
+            _fatalErrors.addAll(result.getFatalErrors());
+
+            Loop resultInterchange = result.getLoops().size() == 1 ? result.getLoops().get(0) : null;
+            Loop resultGroup = resultInterchange != null && resultInterchange.getLoops().size() == 1 ? resultInterchange.getLoop(0) : null;
+            Loop resultTransaction = resultGroup != null && resultGroup.getLoops().size() == 1 ? resultGroup.getLoop(0) : null;
+            if (transactions.get(i).isFirstInInterchange() && resultInterchange != null) {
+                _dataLoops.add(resultInterchange);
+                interchange = resultInterchange;
+                group = resultGroup;
+            }
+            else if (transactions.get(i).isFirstInGroup() && interchange != null && resultGroup != null) {
+                interchange.addLoop(interchange.getLoops().size(), resultGroup);
+                group = resultGroup;
+            }
+            else if (group != null && resultTransaction != null)
+                group.addLoop(group.getLoops().size(), resultTransaction);
+
+            if (!result.getFatalErrors().isEmpty()) {
+                results.forEach(f -> f.cancel(false));
+                break;
+            }
+            mergeLoopChecks(result);
+        }
+
+        if (_fatalErrors.isEmpty())
+            checkLoopErrors();
+    }
+
+    /**
+     * Adds the loop repeats and the child loops of a transaction parsed in parallel to the ones of the file, as if the transaction was parsed right
+     * after the previous ones.
+     * @param result the reader of the transaction
+     */
+    private void mergeLoopChecks(X12Reader result) {
+        _loopRepeatCounts.add(result._loopRepeatCounts);
+        for (Map.Entry<String, ChildLoops> entry : result._childLoopTracker.entrySet()) {
+            String loopId = entry.getKey();
+            if (result.isRepeatedEnvelope(loopId))
+                continue;
+            ChildLoops childLoops = _childLoopTracker.get(loopId);
+            // a new interchange replaces the child loops of the previous one, like it does in a sequential parse
+            if (childLoops == null || loopId.equals(_definition.getLoop().getXid()))
+                _childLoopTracker.put(loopId, entry.getValue());
+            else {
+                childLoops.endIteration(loopId, _matcher.getRequiredChildLoops(loopId));
+                childLoops.append(entry.getValue());
             }
-            if (_fatalErrors.isEmpty())
-                checkLoopErrors();
         }
-        else
-            _fatalErrors.add("Unable to process transaction!");
+    }
+
+    /**
+     * Returns true if a loop is an envelope (ISA_LOOP or GS_LOOP) that was already parsed with a previous transaction, when a file is parsed in parallel;
+     * its segments are not validated again and it isn't counted again.
+     * @param loopId the ID of the loop
+     * @return true if the loop is an envelope already parsed with another transaction
+     */
+    private boolean isRepeatedEnvelope(String loopId) {
+        if (_transaction == null)
+            return false;
+        if (loopId.equals(_definition.getLoop().getXid()))
+            return !_transaction.isFirstInInterchange();
+        return _GROUP_LOOP_ID.equals(loopId) && !_transaction.isFirstInGroup();
     }
 
     /**
      * This is method is used for loops that don't have their segments grouped together in the transaction.
      * For example the ISA segment starts the ISA_LOOP, the IEA segment ends the ISA_LOOP.
      * The ISA segment is the first line in a transaction while the IEA is the last line the transaction
+     * @return true if the segment was appended, in which case the loop it was appended to becomes the last loop stored
      */
-    private Loop appendEndingSegment(Loop lastLoopStored, LoopConfig previousLoopConfig, LoopConfig currentLoopConfig, Separators separators, String currentLine, List<String> loopLines) {
-        Loop lastLoopUpdated = null;
+    private boolean appendEndingSegment(LoopConfig previousLoopConfig, LoopConfig currentLoopConfig, ParsedSegment currentLine, List<ParsedSegment> loopLines) {
         // store any previous data
-        if (!loopLines.isEmpty())
-            lastLoopStored = storeData(previousLoopConfig, loopLines, lastLoopStored, separators);
-
-        if (lastLoopStored != null) {
-            Segment segment = new Segment(separators);
-            segment.addElements(currentLine);
-            lastLoopUpdated = lastLoopStored.findTopParentById(currentLoopConfig.getLoopId());
-            if (lastLoopUpdated != null)
-                lastLoopUpdated.addSegment(segment);
-            else {
-                _fatalErrors.add("We found an ending segment but we never stored the first part of the loop!");
-            }
+        if (!loopLines.isEmpty() && !storeData(previousLoopConfig, loopLines))
+            return false;
+
+        if (_openLoops.isEmpty())
+            return false;
+
+        int index = findOpenParent(currentLoopConfig.getLoopId());
+        if (index == -1) {
+            addFatalError("We found an ending segment but we never stored the first part of the loop!");
+            return false;
         }
-        return lastLoopUpdated;
+        closeLoops(index + 1);
+        _handler.segment(currentLoopConfig.getLoopId(), currentLine);
+        return true;
     }
 
     private void checkLoopErrors() {
         // check overall loop structure
-        for (LoopConfig lc : _config) {
-            if (Usage.REQUIRED.equals(lc.getLoopUsage()) && lc.getParentLoop() != null && lc.getLoopRepeatCount() != 0 && !compareRepeats(lc.getLoopRepeatCount(), lc.getLoopRepeats(),
+        for (LoopConfig lc : _matcher.getLoopConfigs()) {
+            int loopRepeatCount = _loopRepeatCounts.get(lc);
+            if (Usage.REQUIRED.equals(lc.getLoopUsage()) && lc.getParentLoop() != null && loopRepeatCount != 0 && !compareRepeats(loopRepeatCount, lc.getLoopRepeats(),
                     lc.getParentLoop())) { //checks to see if a loop appears too many times
                 //(takes into account that the parent loop may appear more than once)
-                _errors.add(lc.getLoopId() + " appears too many times");
+                addError(lc.getLoopId() + " appears too many times");
             }
 
-            else if (Usage.SITUATIONAL.equals(lc.getLoopUsage()) && lc.getLoopRepeatCount() > 0) {  //For situational loops that appear!
-                if (lc.getParentLoop() != null && !compareRepeats(lc.getLoopRepeatCount(), lc.getLoopRepeats(), lc.getParentLoop())) {    //checks to see if a loop appears too many times
-                    _errors.add(lc.getLoopId() + " appears too many times");
+            else if (Usage.SITUATIONAL.equals(lc.getLoopUsage()) && loopRepeatCount > 0) {  //For situational loops that appear!
+                if (lc.getParentLoop() != null && !compareRepeats(loopRepeatCount, lc.getLoopRepeats(), lc.getParentLoop())) {    //checks to see if a loop appears too many times
+                    addError(lc.getLoopId() + " appears too many times");
                 }
             }
 
             // check internal loop data
-            Set<String> requiredChildLoops = new HashSet<>();
-            requiredChildLoops = getRequiredChildLoops(_definition.getLoop(), lc.getLoopId(), requiredChildLoops);
-            if (_childLoopTracker.get(lc.getLoopId()) != null) {
-                for (int i = 0; i < _childLoopTracker.get(lc.getLoopId()).size(); i++) {
-                    Set<String> childLoops = _childLoopTracker.get(lc.getLoopId()).get(i);
-                    for (String ids : requiredChildLoops)
-                        if (!childLoops.contains(ids))
-                            _errors.add(ids + " is required but not found in " + lc.getLoopId() + " iteration #" + (i + 1));
-                }
+            ChildLoops childLoops = _childLoopTracker.get(lc.getLoopId());
+            if (childLoops != null) {
+                childLoops.endIteration(lc.getLoopId(), _matcher.getRequiredChildLoops(lc.getLoopId()));
+                childLoops.getErrors().forEach(this::addError);
             }
         }
     }
 
-    private Set<String> getRequiredChildLoops(LoopDefinition loop, String id, Set<String> requiredChildList) {
-        if (!loop.getXid().equals(id)) {
-            if (loop.getLoop() != null)
-                for (LoopDefinition subloop : loop.getLoop()) {
-                    requiredChildList = getRequiredChildLoops(subloop, id, requiredChildList);
-                }
-        }
-        else if (loop.getLoop() != null)
-            for (LoopDefinition l : loop.getLoop())
-                if (l.getUsage().equals(Usage.REQUIRED))
-                    requiredChildList.add(l.getXid());
-
-        return requiredChildList;
-    }
-
     private boolean checkVersionsAreConsistent(Separators separators, Reader reader) throws IOException {
         if (reader == null || separators == null || _type == null)
             return false;
@@ -418,7 +943,7 @@ public class X12Reader {
         boolean result = _TYPES.get(_type).equals(version);
 
         if (!result)
-            _errors.add("ANSI version " + version + " not consistent with version specified " + _type);
+            addError("ANSI version " + version + " not consistent with version specified " + _type);
 
         return result;
     }
@@ -444,313 +969,198 @@ public class X12Reader {
                 Character.isWhitespace(firstLine[_ELEMENT_SEPARATOR_POS]) ||
                 Character.isWhitespace(firstLine[_COMPOSITE_SEPARATOR_POS]);
         if (ret != _ISA_LENGTH || (isAlphaNumeric || isWhiteSpace)) {
-            _errors.add("Error getting separators");
+            addError("Error getting separators");
             return null;
         }
         // don't need to reset the reader---we need to check the version on the next line
-        return new Separators(firstLine[_SEGMENT_SEPARATOR_POS],
+        return Separators.of(firstLine[_SEGMENT_SEPARATOR_POS],
                 firstLine[_ELEMENT_SEPARATOR_POS],
                 firstLine[_COMPOSITE_SEPARATOR_POS]);
     }
 
     /**
-     * Stores data, one loop at a time, into the _dataLoop structure.
+     * Stores data, one loop at a time: the loop is started under its parent loop, found in the open loops, and its segments are passed to the handler.
      * @param currentLoopConfig---the loopID of the current loop
      * @param loopLines---the data file segments that belong to this loop
-     * @param lastLoopStored---the previous loop id that was stored
-     * @return loopID----the id of the loop that was just stored
+     * @return true if the loop was stored, in which case it becomes the last loop stored; false if a fatal error was recorded
      */
-    private Loop storeData(LoopConfig currentLoopConfig, List<String> loopLines, Loop lastLoopStored, Separators separators) {
+    private boolean storeData(LoopConfig currentLoopConfig, List<ParsedSegment> loopLines) {
         // validate the individual segments
-        validateLines(loopLines, currentLoopConfig.getLoopId(), separators);
-
-        // create the segments that will be stored
-        List<Segment> segments = new ArrayList<>();
-        for (String s : loopLines) {
-            Segment seg = new Segment(separators);
-            seg.addElements(s);
-            segments.add(seg);
-        }
+        if (!isRepeatedEnvelope(currentLoopConfig.getLoopId()))
+            validateLines(loopLines, currentLoopConfig.getLoopId());
 
-        Loop newLoop = null;
-        if (lastLoopStored == null) {
+        if (_openLoops.isEmpty()) {
             // we haven't stored any loops so this is the start of the transaction
-            Loop topLoop = _dataLoops.get(_dataLoops.size() - 1);
-            topLoop.setId(currentLoopConfig.getLoopId());
-            topLoop.setSeparators(separators);
-            segments.forEach(topLoop::addSegment);
-            newLoop = topLoop;
-            _childLoopTracker.put(newLoop.getId(), new ArrayList<>());
-            _childLoopTracker.get(newLoop.getId()).add(new HashSet<>());
+            startLoop(currentLoopConfig);
+            _childLoopTracker.put(currentLoopConfig.getLoopId(), new ChildLoops());
         }
         else {
             // find the parent loop and add the new loop we are storing to that.
-            Loop parentLoop = findParentLoop(currentLoopConfig, lastLoopStored);
+            int parentIndex = findParentLoop(currentLoopConfig);
 
             // if the parent loop was not found above - it could be that the parent loop is a segmentless loop
             // need to confirm that and add the segmentless loop and then add the current loop to that
-            if (parentLoop == null) {
+            if (parentIndex == -1) {
                 LoopConfig parentLoopInfo = null;
-
                 String parentLoopId = currentLoopConfig.getParentLoop();
-                for (LoopConfig lc : _config) {
-                    if (lc.getLoopId() != null && lc.getLoopId().equals(parentLoopId)) {
-                        parentLoopInfo = lc;
-                        break;
-                    }
-                }
+                if (parentLoopId != null)
+                    parentLoopInfo = _matcher.getLoopConfig(parentLoopId);
                 if (parentLoopInfo == null)
-                    _fatalErrors.add("Parent loop " + parentLoopId + " does not exist in loop configuration!");
+                    addFatalError("Parent loop " + parentLoopId + " does not exist in loop configuration!");
                 else if (parentLoopInfo.hasDataSegments())
-                    _fatalErrors.add("Parent loop " + parentLoopId + " is missing and should already exist");
+                    addFatalError("Parent loop " + parentLoopId + " is missing and should already exist");
                 else {
-                    parentLoop = lastLoopStored.findTopParentById(parentLoopInfo.getParentLoop());
-                    if (parentLoop == null)
-                        _fatalErrors.add("Parent loop of " + parentLoopId + " is not found!");
+                    parentIndex = findOpenParent(parentLoopInfo.getParentLoop());
+                    if (parentIndex == -1)
+                        addFatalError("Parent loop of " + parentLoopId + " is not found!");
                     else {
-                        newLoop = new Loop(separators, parentLoopInfo.getLoopId());
-
-                        Loop currentLoop = new Loop(separators, currentLoopConfig.getLoopId());
-                        segments.forEach(currentLoop::addSegment);
-
-                        newLoop.addLoop(0, currentLoop);
+                        closeLoops(parentIndex + 1);
+                        startLoop(parentLoopInfo);
+                        startLoop(currentLoopConfig);
+
+                        // add segmentless loop to its parent list and create new lists for that loop
+                        updateChildLoopTracker(_openLoops.get(parentIndex).getLoopId(), parentLoopInfo.getLoopId());
+                        // add loop with segments that is a child of the segmentless loop to the segmentless loop's list, create lists for this child loop
+                        updateChildLoopTracker(parentLoopInfo.getLoopId(), currentLoopConfig.getLoopId());
                     }
                 }
             }
             else {
-                newLoop = new Loop(separators, currentLoopConfig.getLoopId());
-                segments.forEach(newLoop::addSegment);
+                closeLoops(parentIndex + 1);
+                startLoop(currentLoopConfig);
+                updateChildLoopTracker(_openLoops.get(parentIndex).getLoopId(), currentLoopConfig.getLoopId());
             }
 
-            if (parentLoop != null) {
-                parentLoop.addLoop(parentLoop.getLoops().size(), newLoop);
+            // final safety check
+            if (parentIndex == -1 && _fatalErrors.isEmpty())
+                addFatalError("Something is wrong. Check loop structure.");
+            if (parentIndex == -1) {
+                addFatalError("Failed to store loop data for " + currentLoopConfig.getLoopId());
+                return false;
+            }
+        }
 
-                // if we had to add the segment less parent make sure we return the current child loop as the last loop added.
-                if (!newLoop.getId().equals(currentLoopConfig.getLoopId())) {
-                    // add segmentless loop to its parent list and create new lists for that loop
-                    updateChildLoopTracker(parentLoop.getId(), newLoop.getId());
-                    // add loop with segments that is a child of the segmentless loop to the segmentless loop's list, create lists for this child loop
-                    updateChildLoopTracker(newLoop.getId(), newLoop.getLoop(0).getId());
-                    newLoop = newLoop.getLoop(0);
-                }
-                else
-                    updateChildLoopTracker(parentLoop.getId(), newLoop.getId());
+        for (ParsedSegment segment : loopLines)
+            _handler.segment(currentLoopConfig.getLoopId(), segment);
 
-            }
+        return true;
+    }
 
-            // final safety check
-            if (parentLoop == null && _fatalErrors.isEmpty())
-                _fatalErrors.add("Something is wrong. Check loop structure.");
-        }
+    /**
+     * Starts a loop under the last loop stored.
+     * @param loopConfig the configuration of the loop
+     */
+    private void startLoop(LoopConfig loopConfig) {
+        _openLoops.add(loopConfig);
+        _handler.startLoop(loopConfig.getLoopId(), loopConfig.getDefinition());
+    }
 
-        if (newLoop == null)
-            _fatalErrors.add("Failed to store loop data for " + currentLoopConfig.getLoopId());
+    /**
+     * Ends the open loops, starting with the last loop stored, until only the given number of loops remain open.
+     * @param size the number of loops that remain open
+     */
+    private void closeLoops(int size) {
+        for (int i = _openLoops.size() - 1; i >= size; i--)
+            _handler.endLoop(_openLoops.remove(i).getLoopId());
+    }
 
-        return newLoop;
+    /**
+     * Returns the closest parent of the last loop stored with the given ID, like {@link Loop#findTopParentById(String)}.
+     * @param loopId the ID of the parent loop
+     * @return the position of the parent loop in the open loops, -1 if it isn't found
+     */
+    private int findOpenParent(String loopId) {
+        if (loopId != null)
+            for (int i = _openLoops.size() - 2; i >= 0; i--)
+                if (loopId.equals(_openLoops.get(i).getLoopId()))
+                    return i;
+        return -1;
     }
 
     private void updateChildLoopTracker(String parentLoopId, String newLoopId) {
-        _childLoopTracker.get(parentLoopId).get(_childLoopTracker.get(parentLoopId).isEmpty() ? 0 : _childLoopTracker.get(parentLoopId).size() - 1).add(newLoopId);
+        _childLoopTracker.get(parentLoopId).add(newLoopId);
 
-        if (!_childLoopTracker.containsKey(newLoopId)) {
-            _childLoopTracker.put(newLoopId, new ArrayList<>());
-            _childLoopTracker.get(newLoopId).add(new HashSet<>());
-        }
+        ChildLoops childLoops = _childLoopTracker.get(newLoopId);
+        if (childLoops == null)
+            _childLoopTracker.put(newLoopId, new ChildLoops());
         else
-            _childLoopTracker.get(newLoopId).add(new HashSet<>());
+            childLoops.endIteration(newLoopId, _matcher.getRequiredChildLoops(newLoopId));
     }
 
-    private Loop findParentLoop(LoopConfig currentLoopConfig, Loop lastLoopStored) {
-        Loop result;
+    private int findParentLoop(LoopConfig currentLoopConfig) {
+        int result;
 
-        Set<String> parentLoopIds = new HashSet<>(getParentLoopsFromDefinition(_definition.getLoop(), currentLoopConfig.getLoopId(), new ArrayList<>()));
+        Set<String> parentLoopIds = new HashSet<>(_matcher.getParentLoops(currentLoopConfig.getLoopId()));
 
+        int last = _openLoops.size() - 1;
         if (parentLoopIds.isEmpty())
-            result = lastLoopStored;
+            result = last;
         else if (parentLoopIds.size() == 1)
-            result = lastLoopStored.getId().equals(currentLoopConfig.getParentLoop()) ? lastLoopStored : lastLoopStored.findTopParentById(currentLoopConfig.getParentLoop());
+            result = _openLoops.get(last).getLoopId().equals(currentLoopConfig.getParentLoop()) ? last : findOpenParent(currentLoopConfig.getParentLoop());
         else {
             // dealing with ambiguous parent loop
-            result = lastLoopStored;
-            while (!parentLoopIds.contains(result.getId())) {
-                if (result.getParent() == null) {
-                    result = null;
-                    break;
-                }
-                result = result.getParent();
-            }
+            result = last;
+            while (result >= 0 && !parentLoopIds.contains(_openLoops.get(result).getLoopId()))
+                result--;
         }
 
         return result;
     }
 
-    /**
-     * Stores some data from the XML definition into a loop configuration object
-     * @param loop loop to be proceesed
-     * @param parentID parent loop id of the loop being processed
-     */
-    private void getLoopConfiguration(LoopDefinition loop, String parentID) {
-        if (!containsLoop(loop.getXid())) {
-            if (loop.getLoop() != null) {
-                LoopConfig loopConfig = new LoopConfig(loop.getXid(), parentID, getChildLoops(loop), loop.getRepeat(), loop.getUsage(), loop.getSegment() != null);
-                if (loop.getSegment() != null) {
-                    loopConfig.setFirstSegmentXid(loop.getSegment().get(0));
-
-                    if (loop.getSegment().size() > 1)
-                        loopConfig.setLastSegmentXid(loop.getSegment().get(loop.getSegment().size() - 1));
-                }
-
-                parentID = loop.getXid();
-                _config.add(loopConfig);
-                for (LoopDefinition loops : loop.getLoop())
-                    getLoopConfiguration(loops, parentID);
-            }
-            else {
-                LoopConfig loopConfig = new LoopConfig(loop.getXid(), parentID, null, loop.getRepeat(), loop.getUsage(), loop.getSegment() != null);
-                if (loop.getSegment() != null)
-                    loopConfig.setFirstSegmentXid(loop.getSegment().get(0));
-
-                if (loop.getSegment() != null && loop.getSegment().size() > 1)
-                    loopConfig.setLastSegmentXid(loop.getSegment().get(loop.getSegment().size() - 1));
-
-                _config.add(loopConfig);
-            }
-        }
-    }
-
-    /**
-     * Get the list of child loops from a particular loop
-     * @param loop loop we are getting the child loops for
-     * @return childLoops list of the child loops
-     */
-    private List<String> getChildLoops(LoopDefinition loop) {
-        return loop.getLoop().stream().map(LoopDefinition::getXid).collect(Collectors.toList());
-    }
-
-    /**
-     * checks to see if the current loop ID is already in the config object
-     * @param id id of the loop we want to test
-     * @return true if the loop id is found in the config structure, false if it is not
-     */
-    private boolean containsLoop(String id) {
-        for (LoopConfig loop : _config)
-            if (loop.getLoopId().equals(id))
-                return true;
-
-        return false;
-    }
-
     /**
      * Return the parent loop
      * @param loopId loop identifier
      * @return patient loop if found, otherwise null
      */
     private String getParentLoop(String loopId, String previousLoopId) {
-        List<String> parentLoops = new ArrayList<>();
-        List<String> previousParentLoops = new ArrayList<>();
-
-        parentLoops = getParentLoopsFromDefinition(_definition.getLoop(), loopId, parentLoops);
-        previousParentLoops = getParentLoopsFromDefinition(_definition.getLoop(), previousLoopId, previousParentLoops);
+        List<String> parentLoops = _matcher.getParentLoops(loopId);
 
-        if (previousLoopId != null)
+        if (previousLoopId != null) {
+            List<String> previousParentLoops = _matcher.getParentLoops(previousLoopId);
             for (String parentLoop : parentLoops)
                 if (previousParentLoops.contains(parentLoop))
                     return parentLoop;
+        }
         if (!parentLoops.isEmpty())
             return parentLoops.get(0);
         else
             return null;
     }
 
-    /**
-     * Gets all possible parent loops from the definition object. Need a list since it is possible for one loop to have two different parents.
-     * @param loop ---- object to loop over
-     * @param id --- the id of the loop we want to find parents for
-     * @param parentLoop --- list of parent loops.
-     * @return list of parent loops
-     */
-    private List<String> getParentLoopsFromDefinition(LoopDefinition loop, String id, List<String> parentLoop) {
-        if (loop.getLoop() != null)
-            for (LoopDefinition subloop : loop.getLoop()) {
-                if (subloop.getXid().equals(id)) {
-                    parentLoop.add(loop.getXid());
-                }
-                parentLoop = getParentLoopsFromDefinition(subloop, id, parentLoop);
-            }
-
-        return parentLoop;
-    }
-
-    /**
-     * updates the number of times a loop appears in the data
-     * @param loopId id of the loop we need to count
-     */
-    private void updateLoopCounts(String loopId) {
-        _config.stream().filter(config -> config.getLoopId().equals(loopId)).forEach(LoopConfig::incrementLoopRepeatCount);
-    }
-
     /**
      * Determines if a segment data line is the start of a new loop
-     * @param tokens array of the data split on element separators
+     * @param segment the segment data
      * @param previousLoopID the id of the previous loop that was matched
      * @return the matched loop
      */
-    private LoopConfig getMatchedLoop(String[] tokens, String previousLoopID) {
+    private LoopConfig getMatchedLoop(ParsedSegment segment, String previousLoopID) {
         LoopConfig result = null;
-        if (tokens != null) {
-            List<LoopConfig> matchedLoops = new ArrayList<>();
-            for (LoopConfig config : _config) {
-                SegmentDefinition firstId = config.getFirstSegmentXid();
-                boolean firstIdCheck = firstId != null && tokens[0].equals(firstId.getXid()) && codesValidatedForLoopId(tokens, firstId);
-                SegmentDefinition lastId = config.getLastSegmentXid();
-                boolean lastIdCheck = lastId != null && tokens[0].equals(lastId.getXid()) && !config.getLoopId().equals(previousLoopID) && codesValidatedForLoopId(tokens, lastId);
-                if (firstIdCheck || lastIdCheck) {
-
-                    // clear the potential loop matches if the current segment is a child loop of the loop currently being processed
-                    if (isChildSegment(previousLoopID, tokens)) {
-                        matchedLoops.clear();
-                        break;
-                    }
-
-                    if (!matchedLoops.stream().map(LoopConfig::getLoopId).collect(Collectors.toList()).contains(config.getLoopId()))
-                        matchedLoops.add(config);
+        List<LoopMatcher.Candidate> matchedLoops = new ArrayList<>();
+        for (LoopMatcher.Candidate candidate : _matcher.getCandidates(segment)) {
+            boolean firstIdCheck = candidate.getFirst() != null && candidate.getFirst().codesValidatedForLoopId(segment);
+            boolean lastIdCheck = candidate.getLast() != null && !candidate.getLoopId().equals(previousLoopID) && candidate.getLast().codesValidatedForLoopId(segment);
+            if (firstIdCheck || lastIdCheck) {
+
+                // clear the potential loop matches if the current segment is a child loop of the loop currently being processed
+                if (_matcher.isChildSegment(previousLoopID, segment.getId())) {
+                    matchedLoops.clear();
+                    break;
                 }
-            }
 
-            if (matchedLoops.size() > 1) {
-                // starting a new loop but we aren't quite sure which one yet. Remove loops where the segment is known to be the last segment of that loop - clearly we aren't in a new loop then
-                matchedLoops = matchedLoops.stream().filter(lc -> lc.getLastSegmentXid() == null || !(lc.getLastSegmentXid().getXid().equals(tokens[0]) && codesValidatedForLoopId(tokens,
-                        lc.getLastSegmentXid()))).collect(
-                        Collectors.toList());
-                result = matchedLoops.isEmpty() ? null : (matchedLoops.size() == 1 ? matchedLoops.get(0) : getFinalizedMatch(previousLoopID, matchedLoops));
+                matchedLoops.add(candidate);
             }
-            else if (matchedLoops.size() == 1)
-                result = matchedLoops.get(0);
         }
-        else
-            _errors.add("Unable to split elements for loop matching!");
-
-        return result;
-    }
 
-    /**
-     * Check if the current line is a child segment of the current loop. if it is then we should assume we are not starting new loop.
-     * @param previousLoopId the previous loop that was matched
-     * @param tokens array of the data split on element separators
-     * @return true if it is a child segment, false if it is not.
-     */
-    private boolean isChildSegment(String previousLoopId, String[] tokens) {
-
-        List<SegmentDefinition> loopSegs = getSegmentDefinitions(_definition.getLoop(), previousLoopId);
-        if (loopSegs != null) {
-            for (int i = 1; i < loopSegs.size(); i++) { // we want to skip the first segment
-                SegmentDefinition seg = loopSegs.get(i);
-                if (seg.getXid().equals(tokens[0]))
-                    return true;
-            }
+        if (matchedLoops.size() > 1) {
+            // starting a new loop but we aren't quite sure which one yet. Remove loops where the segment is known to be the last segment of that loop - clearly we aren't in a new loop then
+            List<LoopConfig> matchedConfigs = matchedLoops.stream().filter(c -> c.getLast() == null || !c.getLast().codesValidatedForLoopId(segment)).map(LoopMatcher.Candidate::getConfig)
+                    .collect(Collectors.toList());
+            result = matchedConfigs.isEmpty() ? null : (matchedConfigs.size() == 1 ? matchedConfigs.get(0) : getFinalizedMatch(previousLoopID, matchedConfigs));
         }
-        return false;
+        else if (matchedLoops.size() == 1)
+            result = matchedLoops.get(0).getConfig();
 
+        return result;
     }
 
     /**
@@ -763,19 +1173,17 @@ public class X12Reader {
      */
     private LoopConfig getFinalizedMatch(String previousLoopId, List<LoopConfig> matchedLoops) {
         LoopConfig result = null;
-        for (LoopConfig lc : _config) {
-            if (lc.getLoopId().equals(previousLoopId)) {
-                // if one of the ambiguous loops is a child loop of the previous loop then we should use that one
-                if (lc.getChildList() != null)
-                    result = matchedLoops.stream().filter(matchedLoop -> lc.getChildList().contains(matchedLoop.getLoopId())).findFirst().orElse(null);
-
-                // otherwise, if one of the ambiguous loops has the same parent as the previous loop's parent then we should use that loop
-                if (result == null) {
-                    String parentLoop = getParentLoop(previousLoopId, null);
-                    if (parentLoop != null)
-                        result = matchedLoops.stream().filter(matchedLoop -> parentLoop.equals(getParentLoop(matchedLoop.getLoopId(), null))).findFirst().orElse(null);
-                }
-                break;
+        LoopConfig lc = previousLoopId == null ? null : _matcher.getLoopConfig(previousLoopId);
+        if (lc != null) {
+            // if one of the ambiguous loops is a child loop of the previous loop then we should use that one
+            if (lc.getChildList() != null)
+                result = matchedLoops.stream().filter(matchedLoop -> lc.getChildList().contains(matchedLoop.getLoopId())).findFirst().orElse(null);
+
+            // otherwise, if one of the ambiguous loops has the same parent as the previous loop's parent then we should use that loop
+            if (result == null) {
+                String parentLoop = getParentLoop(previousLoopId, null);
+                if (parentLoop != null)
+                    result = matchedLoops.stream().filter(matchedLoop -> parentLoop.equals(getParentLoop(matchedLoop.getLoopId(), null))).findFirst().orElse(null);
             }
         }
         return result;
@@ -787,78 +1195,34 @@ public class X12Reader {
      * @param loopId loop id we are validating segments for
      * @return boolean indicating validation success
      */
-    private boolean validateLines(List<String> segments, String loopId, Separators separators) {
-        List<SegmentDefinition> format = getSegmentDefinitions(_definition.getLoop(), loopId);
+    private boolean validateLines(List<ParsedSegment> segments, String loopId) {
+        List<SegmentRules> format = _matcher.getSegments(loopId);
         int[] segmentCounter = new int[format.size()];
         boolean lineMatchesFormat = false;
 
-        String previousPos = null;
-        for (String segment : segments) {
+        int previousPos = -1;
+        for (ParsedSegment segment : segments) {
             int i = 0;
-            for (SegmentDefinition segmentConf : format) {
-                String[] tokens = separators.splitElement(segment);
-                if (tokens != null && tokens[0].equals(segmentConf.getXid()) && codesValidated(tokens, segmentConf)) {
-                    String currentPos = segmentConf.getPos();
-                    if (previousPos != null && Integer.parseInt(previousPos) > Integer.parseInt(currentPos))
-                        _errors.add("Segment " + segmentConf.getXid() + " in loop " + loopId + " is not in the correct position.");
+            for (SegmentRules segmentConf : format) {
+                if (segment.getId().equals(segmentConf.getXid()) && segmentConf.codesValidated(segment)) {
+                    int currentPos = segmentConf.getPos();
+                    if (previousPos != -1 && previousPos > currentPos)
+                        addError("Segment " + segmentConf.getXid() + " in loop " + loopId + " is not in the correct position.");
 
                     segmentCounter[i]++;
                     lineMatchesFormat = true;
                     previousPos = currentPos;
                     break;
                 }
-                else if (tokens == null)
-                    _errors.add("Unable to split elements to validate segment ID!");
                 i++;
             }
 
             if (!lineMatchesFormat)
-                _errors.add("Unable to find a matching segment format in loop " + loopId);
+                addError("Unable to find a matching segment format in loop " + loopId);
             lineMatchesFormat = false;
         }
 
-        return validateSegments(segments, format, loopId, segmentCounter, separators);
-    }
-
-    /**
-     * Checks that the valid codes for eah required element are there----loop ID purposes only
-     * @param tokens array of the data split on element separators
-     * @param segmentConf information on the current segment being processed.
-     * @return false if the codes are found to be valid, false otherwise
-     */
-    private boolean codesValidatedForLoopId(String[] tokens, SegmentDefinition segmentConf) {
-        Map<List<String>, Integer> validCodes = getValidCodes(segmentConf);
-        List<Integer> requiredElements = getRequiredElementPositions(segmentConf);
-        List<Integer> positions = new ArrayList<>(validCodes.values());
-        List<List<String>> codes = new ArrayList<>(validCodes.keySet());
-
-        for (int i = 1; i < tokens.length; i++)
-            if (tokens[i] != null && !tokens[i].isEmpty() && positions.contains(i) && requiredElements.contains(i))
-                if (!codes.get(positions.indexOf(i)).contains(tokens[i]))
-                    return false;
-
-        return true;
-
-    }
-
-    /**
-     * Checks that the valid codes for each element are there
-     * @param tokens array of the data split on element separators
-     * @param segmentConf information on the current segment being processed.
-     * @return false if the codes are found to be valid, false otherwise
-     */
-    private boolean codesValidated(String[] tokens, SegmentDefinition segmentConf) {
-        Map<List<String>, Integer> validCodes = getValidCodes(segmentConf);
-        List<Integer> positions = new ArrayList<>(validCodes.values());
-        List<List<String>> codes = new ArrayList<>(validCodes.keySet());
-
-        for (int i = 1; i < tokens.length; i++)
-            if (tokens[i] != null && !tokens[i].isEmpty() && positions.contains(i))
-                if (!codes.get(positions.indexOf(i)).contains(tokens[i]))
-                    return false;
-
-        return true;
-
+        return validateSegments(segments, format, loopId, segmentCounter);
     }
 
     /**
@@ -869,23 +1233,20 @@ public class X12Reader {
      * @param segmentCounter counter that keeps track of the number of times each segment appears in the data
      * @return true if there are no new errors reported, false otherwise
      */
-    private boolean validateSegments(List<String> segments, List<SegmentDefinition> format, String loopId, int[] segmentCounter, Separators separators) {
+    private boolean validateSegments(List<ParsedSegment> segments, List<SegmentRules> format, String loopId, int[] segmentCounter) {
         int errorCountInitial = _errors.size();
 
         for (int i = 0; i < format.size(); i++) {
-            SegmentDefinition segmentConf = format.get(i);
+            SegmentDefinition segmentConf = format.get(i).getDefinition();
             if (!checkUsage(segmentConf.getUsage(), segmentCounter[i]) && !(segmentConf.getXid().equals("IEA") || segmentConf.getXid().equals("GE") || segmentConf.getXid().equals("SE")))
-                _errors.add(segmentConf.getXid() + " in loop " + loopId + " is required but not found");
+                addError(segmentConf.getXid() + " in loop " + loopId + " is required but not found");
             if (!checkRepeats(segmentConf.getMaxUse(), segmentCounter[i]))
-                _errors.add(segmentConf.getXid() + " in loop " + loopId + " appears too many times");
-            for (String s : segments) {
-                String[] tokens = separators.splitElement(s);
-                if (tokens != null && segmentCounter[i] > 0 && tokens[0].equals(segmentConf.getXid())) {
-                    checkRequiredElements(tokens, segmentConf, loopId);
-                    checkRequiredComposites(tokens, segmentConf, loopId);
+                addError(segmentConf.getXid() + " in loop " + loopId + " appears too many times");
+            for (ParsedSegment s : segments) {
+                if (segmentCounter[i] > 0 && s.getId().equals(segmentConf.getXid())) {
+                    checkRequiredElements(s, format.get(i), loopId);
+                    checkRequiredComposites(s, format.get(i), loopId);
                 }
-                else if (tokens == null)
-                    _errors.add("Unable to split elements for validation!");
             }
         }
 
@@ -918,19 +1279,19 @@ public class X12Reader {
 
     /**
      * Checks that all required elements are present in each data segment
-     * @param tokens array of the data split on element separators
+     * @param segment the segment data
      * @param seg segment format information
      * @param loopId the loop we are testing segments from
      * @return true if all required elements are present, false otherwise
      */
-    private boolean checkRequiredElements(String[] tokens, SegmentDefinition seg, String loopId) {
-        for (int requiredPositions : getRequiredElementPositions(seg)) {
-            if (requiredPositions >= tokens.length) {
-                _errors.add(seg.getXid() + " in loop " + loopId + " element at position " + requiredPositions + " does not exist!!!!");
+    private boolean checkRequiredElements(ParsedSegment segment, SegmentRules seg, String loopId) {
+        for (int requiredPositions : seg.getRequiredElements()) {
+            if (requiredPositions >= segment.size()) {
+                addError(seg.getXid() + " in loop " + loopId + " element at position " + requiredPositions + " does not exist!!!!");
                 return false;
             }
-            if (tokens[requiredPositions].isEmpty()) {
-                _errors.add(seg.getXid() + " in loop " + loopId + " is missing a required element at " + requiredPositions);
+            if (segment.isEmpty(requiredPositions)) {
+                addError(seg.getXid() + " in loop " + loopId + " is missing a required element at " + requiredPositions);
                 return false;
             }
         }
@@ -939,19 +1300,19 @@ public class X12Reader {
 
     /**
      * Checks that all required composite elements are present in each data segment
-     * @param tokens array of the data split on element separators
+     * @param segment the segment data
      * @param seg segment format information
      * @param loopId the loop we are testing segments from
      * @return true if all required composites are present, false otherwise
      */
-    private boolean checkRequiredComposites(String[] tokens, SegmentDefinition seg, String loopId) {
-        for (int requiredPositions : getRequiredCompositePositions(seg)) {
-            if (requiredPositions >= tokens.length) {
-                _errors.add(seg.getXid() + " in loop " + loopId + " composite element at position " + requiredPositions + " does not exist!!!!");
+    private boolean checkRequiredComposites(ParsedSegment segment, SegmentRules seg, String loopId) {
+        for (int requiredPositions : seg.getRequiredComposites()) {
+            if (requiredPositions >= segment.size()) {
+                addError(seg.getXid() + " in loop " + loopId + " composite element at position " + requiredPositions + " does not exist!!!!");
                 return false;
             }
-            if (tokens[requiredPositions].isEmpty()) {
-                _errors.add(seg.getXid() + " in loop " + loopId + " is missing a required composite element at " + requiredPositions);
+            if (segment.isEmpty(requiredPositions)) {
+                addError(seg.getXid() + " in loop " + loopId + " is missing a required composite element at " + requiredPositions);
                 return false;
             }
         }
@@ -959,6 +1320,18 @@ public class X12Reader {
         return true;
     }
 
+    private void addError(String error) {
+        _errors.add(error);
+        if (_handler != null)
+            _handler.error(error, false);
+    }
+
+    private void addFatalError(String error) {
+        _fatalErrors.add(error);
+        if (_handler != null)
+            _handler.error(error, true);
+    }
+
     /**
      * check number of times each loop appears for loops that do have parents
      * @param count number of loop counts
@@ -968,89 +1341,68 @@ public class X12Reader {
      */
     private boolean compareRepeats(int count, String repeatCondition, String parentId) {
         //get the max usage of the parent loop
-        int parentCount = 1;
-        for (LoopConfig lc : _config) {
-            if (lc.getLoopId().equals(parentId))
-                parentCount = lc.getLoopRepeatCount();
-        }
+        LoopConfig parent = _matcher.getLoopConfig(parentId);
+        int parentCount = parent == null ? 1 : _loopRepeatCounts.get(parent);
 
         return (repeatCondition.equals(">1") && count > 0) || (!repeatCondition.contains(">") && Math.ceil(((float)count) / parentCount) <= Integer.parseInt(repeatCondition));
     }
 
     /**
-     * Gets the format infomration for each segment of a loop
-     * @param loop loop that is being checked for the desired segment id
-     * @param id id of the loop we want to get segment information for
-     * @return the list of segment format information
+     * The child loops found in the current iteration of a loop. The required child loops missing from the previous iterations are only kept as errors,
+     * so the memory used doesn't grow with the number of iterations.
      */
-    private List<SegmentDefinition> getSegmentDefinitions(LoopDefinition loop, String id) {
-        List<SegmentDefinition> segs = new ArrayList<>();
-
-        if (!loop.getXid().equals(id)) {
-            if (loop.getLoop() != null)
-                for (LoopDefinition subloop : loop.getLoop()) {
-                    segs = getSegmentDefinitions(subloop, id);
-                    if (segs == null || !segs.isEmpty())
-                        break;
-                }
-        }
-        else
-            return loop.getSegment();
+    private static final class ChildLoops {
 
-        return segs;
-    }
+        private Set<String> _childLoops = new HashSet<>();
+        private int _iteration = 1;
+        private final List<MissingLoop> _missingLoops = new ArrayList<>();
 
-    /**
-     * Returns map of the valid codes and their positions for a given segment format
-     * @param seg segment format we want valid code information for
-     * @return map of codes and their positions
-     */
-    private Map<List<String>, Integer> getValidCodes(SegmentDefinition seg) {
-        List<ElementDefinition> elems = seg.getElements();
-        Map<List<String>, Integer> codePositionMap = new HashMap<>();
-
-        if (elems != null) {
-            for (ElementDefinition element : elems)
-                if (element.getValidCodes() != null && element.getValidCodes().getCodes() != null)
-                    codePositionMap.put(element.getValidCodes().getCodes(), Integer.parseInt(element.getSeq()));
+        void add(String loopId) {
+            _childLoops.add(loopId);
         }
 
-        return codePositionMap;
-    }
+        /**
+         * Records the required child loops missing from the current iteration, and starts the next one.
+         */
+        void endIteration(String loopId, Set<String> requiredChildLoops) {
+            for (String ids : requiredChildLoops)
+                if (!_childLoops.contains(ids))
+                    _missingLoops.add(new MissingLoop(ids, loopId, _iteration));
+            _childLoops = new HashSet<>();
+            _iteration++;
+        }
 
-    /**
-     * Returns the positions that must have data in them in a segment
-     * @param seg segmetn format we want to to know the required element positions for
-     * @return list of positions that have required elements
-     */
-    private List<Integer> getRequiredElementPositions(SegmentDefinition seg) {
-        List<ElementDefinition> elems = seg.getElements();
-        List<Integer> requiredPositions = new ArrayList<>();
-
-        if (elems != null) {
-            for (ElementDefinition element : elems)
-                if (Usage.REQUIRED.equals(element.getUsage()))
-                    requiredPositions.add(Integer.parseInt(element.getSeq()));
+        /**
+         * Adds the iterations of the same loop found in the next part of a file; its current iteration becomes the current one.
+         */
+        void append(ChildLoops next) {
+            for (MissingLoop missingLoop : next._missingLoops)
+                _missingLoops.add(new MissingLoop(missingLoop._loopId, missingLoop._parentLoopId, missingLoop._iteration + _iteration - 1));
+            _childLoops = next._childLoops;
+            _iteration += next._iteration - 1;
         }
 
-        return requiredPositions;
+        List<String> getErrors() {
+            List<String> errors = new ArrayList<>(_missingLoops.size());
+            for (MissingLoop missingLoop : _missingLoops)
+                errors.add(missingLoop._loopId + " is required but not found in " + missingLoop._parentLoopId + " iteration #" + missingLoop._iteration);
+            return errors;
+        }
     }
 
     /**
-     * Returns the positions that must have composite data in them in a segment
-     * @param seg segment format we want to to know the required element composites for
-     * @return list of positions that have required composites
+     * A required child loop missing from an iteration of a loop.
      */
-    private List<Integer> getRequiredCompositePositions(SegmentDefinition seg) {
-        List<CompositeDefinition> composites = seg.getComposites();
-        List<Integer> requiredPositions = new ArrayList<>();
-
-        if (composites != null) {
-            for (CompositeDefinition comps : composites)
-                if (comps.getUsage().equals("R"))
-                    requiredPositions.add(Integer.parseInt(comps.getSeq()));
-        }
+    private static final class MissingLoop {
 
-        return requiredPositions;
+        private final String _loopId;
+        private final String _parentLoopId;
+        private final int _iteration;
+
+        MissingLoop(String loopId, String parentLoopId, int iteration) {
+            _loopId = loopId;
+            _parentLoopId = parentLoopId;
+            _iteration = iteration;
+        }
     }
 }
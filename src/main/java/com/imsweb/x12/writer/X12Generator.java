@@ -0,0 +1,461 @@
+package com.imsweb.x12.writer;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.mapping.CompositeDefinition;
+import com.imsweb.x12.mapping.ElementDefinition;
+import com.imsweb.x12.mapping.LoopDefinition;
+import com.imsweb.x12.mapping.Positioned;
+import com.imsweb.x12.mapping.SegmentDefinition;
+import com.imsweb.x12.mapping.TransactionDefinition.Usage;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Generates synthetic X12 files from the definition of a file type, to test the performance and the capacity of the applications processing them without
+ * needing real data.
+ * <br/><br/>
+ * The files are structurally valid: every required loop, segment and element of the definition is written, the qualifiers are valid codes of the definition,
+ * and the HL segments and the SE, GE and IEA counts and control numbers are consistent. The other values are the IDs of the elements (NM103, CLM01...).
+ * Situational segments and elements are never written; situational loops are only written when their number of repeats is set.
+ * <br/><br/>
+ * The number of repeats of a loop applies to each occurrence of its parent, so the size of a file is the product of the repeats of the nested loops. For
+ * example, an 837 professional file with 10 transactions of 1,000 subscribers with 100 claims each (1,000,000 claims):
+ * <pre>
+ * X12Generator generator = new X12Generator(FileType.ANSI837_5010_X222);
+ * generator.setRepeats("ST_LOOP", 10);
+ * generator.setRepeats("2000B", 1000);
+ * generator.setRepeats("2300", 100);
+ * generator.write(writer);
+ * </pre>
+ * The files are written as they are generated, there is no limit to their size.
+ */
+public class X12Generator {
+
+    private static final String _ISA_LOOP = "ISA_LOOP";
+    private static final String _GS_LOOP = "GS_LOOP";
+    private static final String _ST_LOOP = "ST_LOOP";
+    private static final String _HL = "HL";
+    private static final String _DATE = "20250101";
+    private static final String _TIME = "1200";
+    private static final int[] _ISA_WIDTHS = {2, 10, 2, 10, 2, 15, 2, 15, 6, 4, 1, 5, 9, 1, 1, 1};
+    private static final char[] _REPETITION_SEPARATORS = {'^', '{', '}', '|'};
+
+    private final FileType _fileType;
+    private final LoopDefinition _definition;
+    private final Map<String, List<LoopDefinition>> _loopsById = new HashMap<>();
+    private final Map<String, Integer> _repeats = new HashMap<>();
+    private final Map<LoopDefinition, LoopDefinition> _flatParents = new IdentityHashMap<>();
+    private Separators _separators;
+
+    /**
+     * Constructor
+     * @param fileType type of the files to generate
+     */
+    public X12Generator(FileType fileType) {
+        _fileType = fileType;
+        _definition = fileType.getDefinition().getLoop();
+        _separators = new Separators();
+        registerLoops(_definition, null, false);
+    }
+
+    /**
+     * Sets the number of times a loop is repeated in each occurrence of its parent loop. By default, required loops are written once and situational loops
+     * are not written.
+     * @param loopId ID of the loop, applies to every loop of the definition with that ID
+     * @param repeats number of repeats
+     * @throws IllegalArgumentException if the loop doesn't exist, or if the number of repeats isn't allowed by the definition
+     */
+    public void setRepeats(String loopId, int repeats) {
+        List<LoopDefinition> loops = _loopsById.get(loopId);
+        if (loops == null)
+            throw new IllegalArgumentException("Unknown loop: " + loopId);
+        for (LoopDefinition loop : loops) {
+            if (repeats < (Usage.REQUIRED.equals(loop.getUsage()) ? 1 : 0))
+                throw new IllegalArgumentException("Loop " + loopId + " is required");
+            if (repeats > getMaxRepeats(loop))
+                throw new IllegalArgumentException("Loop " + loopId + " can't be repeated more than " + loop.getRepeat() + " times");
+        }
+        _repeats.put(loopId, repeats);
+    }
+
+    /**
+     * Sets the separators of the generated files, including the line break written after each segment. The default separators are ~, * and : without line
+     * breaks.
+     * @param separators separators
+     */
+    public void setSeparators(Separators separators) {
+        _separators = separators;
+    }
+
+    /**
+     * Generates a file
+     * @param writer writer the file is written to, it is not closed
+     * @throws IOException if the file can't be written
+     */
+    public void write(Writer writer) throws IOException {
+        Generation generation = new Generation(writer);
+        for (int i = getRepeats(_definition); i > 0; i--)
+            generation.writeLoop(_definition);
+        writer.flush();
+    }
+
+    /**
+     * Generates a file in memory
+     * @return the content of the file
+     */
+    public String toX12String() {
+        StringWriter writer = new StringWriter();
+        try {
+            write(writer);
+        }
+        catch (IOException e) {
+            // can't happen with a StringWriter
+            throw new IllegalStateException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Registers the loops by ID, and the parents of the hierarchical loops that are not nested in their parent (the previous hierarchical loop)
+     * @return the last hierarchical loop of the definition
+     */
+    private LoopDefinition registerLoops(LoopDefinition loop, LoopDefinition previousHierarchicalLoop, boolean nested) {
+        _loopsById.computeIfAbsent(loop.getXid(), k -> new ArrayList<>()).add(loop);
+        LoopDefinition lastHierarchicalLoop = previousHierarchicalLoop;
+        boolean hierarchical = isHierarchical(loop);
+        if (hierarchical) {
+            if (!nested && previousHierarchicalLoop != null)
+                _flatParents.put(loop, previousHierarchicalLoop);
+            lastHierarchicalLoop = loop;
+        }
+        if (loop.getLoop() != null)
+            for (LoopDefinition child : loop.getLoop())
+                lastHierarchicalLoop = registerLoops(child, lastHierarchicalLoop, nested || hierarchical);
+        return lastHierarchicalLoop;
+    }
+
+    private int getRepeats(LoopDefinition loop) {
+        Integer repeats = _repeats.get(loop.getXid());
+        if (repeats != null)
+            return repeats;
+        if (Usage.NOT_USED.equals(loop.getUsage()))
+            return 0;
+        // the segmentless loops only group other loops, they are written when they contain something
+        return Usage.REQUIRED.equals(loop.getUsage()) || loop.getSegment() == null || loop.getSegment().isEmpty() ? 1 : 0;
+    }
+
+    private static int getMaxRepeats(LoopDefinition loop) {
+        String repeat = loop.getRepeat();
+        return repeat == null || repeat.startsWith(">") ? Integer.MAX_VALUE : Integer.parseInt(repeat);
+    }
+
+    /**
+     * The loops and segments of a loop, in the order they are written (the same order as the X12Writer). Unlike the writer, the segments with the same
+     * ID and position are all kept, they have different qualifiers.
+     */
+    private static List<Positioned> getChildren(LoopDefinition loop) {
+        List<Positioned> children = new ArrayList<>();
+        if (loop.getLoop() != null)
+            children.addAll(loop.getLoop());
+        if (loop.getSegment() != null)
+            children.addAll(loop.getSegment());
+        children.sort(Comparator.naturalOrder());
+        return children;
+    }
+
+    /**
+     * Returns whether a segment is written: the reader expects the required segments and the segments that can repeat without limit
+     */
+    private static boolean isWritten(SegmentDefinition segment) {
+        return Usage.REQUIRED.equals(segment.getUsage()) || (!Usage.NOT_USED.equals(segment.getUsage()) && ">1".equals(segment.getMaxUse()));
+    }
+
+    private static String getFirstCode(ElementDefinition element) {
+        if (element.getValidCodes() == null || element.getValidCodes().getCodes() == null || element.getValidCodes().getCodes().isEmpty())
+            return null;
+        return element.getValidCodes().getCodes().get(0);
+    }
+
+    private static boolean isHierarchical(LoopDefinition loop) {
+        return loop.getSegment() != null && !loop.getSegment().isEmpty() && _HL.equals(loop.getSegment().get(0).getXid());
+    }
+
+    private static ElementDefinition getElement(SegmentDefinition segment, int seq) {
+        for (ElementDefinition element : segment.getElements())
+            if (getSeq(element.getSeq()) == seq)
+                return element;
+        throw new IllegalStateException("Element " + seq + " not found in " + segment.getXid());
+    }
+
+    private static String getValue(ElementDefinition element) {
+        String code = getFirstCode(element);
+        return code != null ? code : element.getXid();
+    }
+
+    private static int getSeq(String seq) {
+        return Integer.parseInt(seq);
+    }
+
+    /**
+     * The state of the generation of a file: control numbers and counts
+     */
+    private final class Generation {
+
+        private final Writer _writer;
+        private final Deque<Integer> _hierarchicalParents = new ArrayDeque<>();
+        private final Map<SegmentDefinition, String> _segments = new IdentityHashMap<>();
+        private final Map<LoopDefinition, List<Positioned>> _children = new IdentityHashMap<>();
+        private int _interchangeNumber;
+        private int _groupNumber;
+        private int _transactionNumber;
+        private int _transactionSegments;
+        private int _hierarchicalId;
+        private final Map<LoopDefinition, Integer> _lastHierarchicalIds = new IdentityHashMap<>();
+
+        private Generation(Writer writer) {
+            _writer = writer;
+        }
+
+        private void writeLoop(LoopDefinition loop) throws IOException {
+            if (_ISA_LOOP.equals(loop.getXid()))
+                _interchangeNumber++;
+            else if (_GS_LOOP.equals(loop.getXid()))
+                _groupNumber++;
+            else if (_ST_LOOP.equals(loop.getXid())) {
+                _transactionNumber++;
+                _transactionSegments = 0;
+                _hierarchicalId = 0;
+                _lastHierarchicalIds.clear();
+            }
+
+            boolean hierarchical = false;
+            List<Positioned> children = _children.get(loop);
+            if (children == null) {
+                children = getChildren(loop);
+                _children.put(loop, children);
+            }
+            for (Positioned child : children) {
+                if (child instanceof SegmentDefinition) {
+                    SegmentDefinition segment = (SegmentDefinition)child;
+                    if (isWritten(segment)) {
+                        writeSegment(loop, segment);
+                        if (_HL.equals(segment.getXid())) {
+                            hierarchical = true;
+                            _hierarchicalParents.push(_hierarchicalId);
+                        }
+                    }
+                }
+                else {
+                    LoopDefinition childLoop = (LoopDefinition)child;
+                    for (int i = getRepeats(childLoop); i > 0; i--)
+                        writeLoop(childLoop);
+                }
+            }
+
+            if (hierarchical)
+                _hierarchicalParents.pop();
+        }
+
+        private void writeSegment(LoopDefinition loop, SegmentDefinition segment) throws IOException {
+            String text;
+            switch (segment.getXid()) {
+                case "ISA":
+                case "IEA":
+                case "GS":
+                case "GE":
+                case "ST":
+                case "SE":
+                case _HL:
+                    text = format(segment, getControlValues(loop, segment));
+                    break;
+                default:
+                    // the other segments are always the same
+                    text = _segments.get(segment);
+                    if (text == null) {
+                        text = format(segment, getValues(segment));
+                        _segments.put(segment, text);
+                    }
+                    break;
+            }
+            _writer.write(text);
+            _transactionSegments++;
+        }
+
+        private List<String> getValues(SegmentDefinition segment) {
+            List<String> values = new ArrayList<>();
+            if (segment.getElements() != null)
+                for (ElementDefinition element : segment.getElements())
+                    if (Usage.REQUIRED.equals(element.getUsage()))
+                        setValue(values, getSeq(element.getSeq()), getValue(element));
+            if (segment.getComposites() != null)
+                for (CompositeDefinition composite : segment.getComposites())
+                    if ("R".equals(composite.getUsage()))
+                        setValue(values, getSeq(composite.getSeq()), getCompositeValue(composite));
+            return values;
+        }
+
+        /**
+         * Returns the values of the segments with control numbers, counts or hierarchical IDs
+         */
+        private List<String> getControlValues(LoopDefinition loop, SegmentDefinition segment) {
+            List<String> values = getValues(segment);
+            switch (segment.getXid()) {
+                case "ISA":
+                    setInterchangeHeaderValues(segment, values);
+                    break;
+                case "IEA":
+                    setValue(values, 1, String.valueOf(getRepeats(getChildLoop(loop, _GS_LOOP))));
+                    setValue(values, 2, String.format("%09d", _interchangeNumber));
+                    break;
+                case "GS":
+                    setValue(values, 4, _DATE);
+                    setValue(values, 5, _TIME);
+                    setValue(values, 6, String.valueOf(_groupNumber));
+                    setValue(values, 8, _fileType.getVersion());
+                    break;
+                case "GE":
+                    setValue(values, 1, String.valueOf(getRepeats(getChildLoop(loop, _ST_LOOP))));
+                    setValue(values, 2, String.valueOf(_groupNumber));
+                    break;
+                case "ST":
+                    setValue(values, 2, String.format("%04d", _transactionNumber));
+                    if (values.size() > 3)
+                        setValue(values, 3, _fileType.getVersion());
+                    break;
+                case "SE":
+                    setValue(values, 1, String.valueOf(_transactionSegments + 1));
+                    setValue(values, 2, String.format("%04d", _transactionNumber));
+                    break;
+                default:
+                    setHierarchicalValues(loop, segment, values);
+                    break;
+            }
+            return values;
+        }
+
+        private void setInterchangeHeaderValues(SegmentDefinition segment, List<String> values) {
+            setValue(values, 9, _DATE.substring(2));
+            setValue(values, 10, _TIME);
+            // the repetition separator of the 5010 versions, the older versions have a list of codes instead
+            if (getFirstCode(getElement(segment, 11)) == null)
+                setValue(values, 11, String.valueOf(getRepetitionSeparator()));
+            setValue(values, 13, String.format("%09d", _interchangeNumber));
+            setValue(values, 16, String.valueOf(_separators.getCompositeElement()));
+
+            // the ISA segment has a fixed width
+            for (int i = 1; i <= _ISA_WIDTHS.length; i++) {
+                StringBuilder buf = new StringBuilder(values.get(i));
+                buf.setLength(Math.min(buf.length(), _ISA_WIDTHS[i - 1]));
+                while (buf.length() < _ISA_WIDTHS[i - 1])
+                    buf.append(' ');
+                values.set(i, buf.toString());
+            }
+        }
+
+        private void setHierarchicalValues(LoopDefinition loop, SegmentDefinition segment, List<String> values) {
+            _hierarchicalId++;
+            setValue(values, 1, String.valueOf(_hierarchicalId));
+            Integer parent = _hierarchicalParents.peek();
+            // the parent of a loop that isn't nested is the last previous hierarchical loop that was written
+            for (LoopDefinition flatParent = _flatParents.get(loop); parent == null && flatParent != null; flatParent = _flatParents.get(flatParent))
+                parent = _lastHierarchicalIds.get(flatParent);
+            setValue(values, 2, parent == null ? "" : String.valueOf(parent));
+            if (values.size() > 4 && !values.get(4).isEmpty())
+                setValue(values, 4, getHierarchicalChildCode(loop, getElement(segment, 4)));
+            _lastHierarchicalIds.put(loop, _hierarchicalId);
+        }
+
+        private char getRepetitionSeparator() {
+            for (char c : _REPETITION_SEPARATORS)
+                if (c != _separators.getSegment() && c != _separators.getElement() && c != _separators.getCompositeElement())
+                    return c;
+            throw new IllegalStateException("No repetition separator available");
+        }
+
+        private String format(SegmentDefinition segment, List<String> values) {
+            StringBuilder buf = new StringBuilder(segment.getXid());
+            int last = values.size() - 1;
+            while (last > 0 && values.get(last).isEmpty())
+                last--;
+            for (int i = 1; i <= last; i++)
+                buf.append(_separators.getElement()).append(values.get(i));
+            buf.append(_separators.getSegment()).append(_separators.getLineBreak().getLineBreakString());
+            return buf.toString();
+        }
+
+        private String getCompositeValue(CompositeDefinition composite) {
+            List<String> values = new ArrayList<>();
+            if (composite.getElements() != null) {
+                int idx = 0;
+                for (ElementDefinition element : composite.getElements()) {
+                    idx++;
+                    if (Usage.REQUIRED.equals(element.getUsage()))
+                        setValue(values, idx, getValue(element));
+                }
+            }
+            StringBuilder buf = new StringBuilder();
+            for (int i = 1; i < values.size(); i++) {
+                if (i > 1)
+                    buf.append(_separators.getCompositeElement());
+                buf.append(values.get(i));
+            }
+            return buf.toString();
+        }
+
+        private void setValue(List<String> values, int position, String value) {
+            while (values.size() <= position)
+                values.add("");
+            values.set(position, value);
+        }
+
+        private LoopDefinition getChildLoop(LoopDefinition loop, String loopId) {
+            for (LoopDefinition child : loop.getLoop())
+                if (loopId.equals(child.getXid()))
+                    return child;
+            throw new IllegalStateException("Loop " + loopId + " not found in " + loop.getXid());
+        }
+
+        /**
+         * Returns the code indicating whether a hierarchical loop has children, unless the definition only allows one code
+         */
+        private String getHierarchicalChildCode(LoopDefinition loop, ElementDefinition element) {
+            String code = hasHierarchicalChild(loop) ? "1" : "0";
+            List<String> codes = element.getValidCodes() == null ? null : element.getValidCodes().getCodes();
+            return codes == null || codes.isEmpty() || codes.contains(code) ? code : codes.get(0);
+        }
+
+        /**
+         * Returns whether a hierarchical loop contains another hierarchical loop that is written
+         */
+        private boolean hasHierarchicalChild(LoopDefinition loop) {
+            if (hasFlatChild(loop))
+                return true;
+            if (loop.getLoop() != null)
+                for (LoopDefinition child : loop.getLoop())
+                    if (getRepeats(child) > 0 && (isHierarchical(child) || ((child.getSegment() == null || child.getSegment().isEmpty()) && hasHierarchicalChild(child))))
+                        return true;
+            return false;
+        }
+
+        /**
+         * Returns whether a hierarchical loop is the parent of a hierarchical loop that is written and isn't nested in it
+         */
+        private boolean hasFlatChild(LoopDefinition loop) {
+            for (Map.Entry<LoopDefinition, LoopDefinition> entry : _flatParents.entrySet())
+                if (entry.getValue() == loop && (getRepeats(entry.getKey()) > 0 || hasFlatChild(entry.getKey())))
+                    return true;
+            return false;
+        }
+    }
+}
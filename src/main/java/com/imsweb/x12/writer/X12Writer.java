@@ -3,6 +3,14 @@
  */
 package com.imsweb.x12.writer;
 
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -17,25 +25,26 @@ import com.imsweb.x12.reader.X12Reader.FileType;
 public class X12Writer {
     
     private final List<Loop> _dataLoops;
-    private final Separators _separators;
     private final TransactionDefinition _definition;
 
+    /**
+     * Constructor; the separators are not used, each loop is written with its own separators.
+     * @param fileType the type of x12 file
+     * @param loops the loops to write
+     * @param separators not used
+     */
     public X12Writer(FileType fileType, List<Loop> loops, Separators separators) {
-        _dataLoops = loops;
-        _definition = fileType.getDefinition();
-        _separators = separators;
+        this(fileType, loops);
     }
     
     public X12Writer(FileType fileType, List<Loop> loops) {
         _dataLoops = loops;
         _definition = fileType.getDefinition();
-        _separators = new Separators();
     }
     
     public X12Writer(X12Reader reader) {
         _dataLoops = reader.getLoops();
         _definition = reader.getDefinition();
-        _separators = reader.getSeparators();
     }
 
 
@@ -56,17 +65,65 @@ public class X12Writer {
      * @return X12 formatted string representing this X12 reader.
      */
     public String toX12String(LineBreak lineBreak) {
-        _separators.setLineBreak(lineBreak);
-        return toX12StringImpl();
+        StringWriter writer = new StringWriter();
+        try {
+            writeTo(writer, lineBreak);
+        }
+        catch (IOException e) {
+            // a string writer can't fail
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
     }
 
-    private String toX12StringImpl() {
-        StringBuilder builder = new StringBuilder();
+    /**
+     * Writes the X12 file to a writer, like {@link #toX12String()}, one segment at a time instead of building the whole file in memory. Will use no line
+     * breaks after separators.
+     *
+     * @param writer writer to write to; it's flushed but not closed.
+     * @throws IOException if the file can't be written
+     */
+    public void writeTo(Writer writer) throws IOException {
+        writeTo(writer, LineBreak.NONE);
+    }
+
+    /**
+     * Writes the X12 file to a writer, like {@link #toX12String(LineBreak)}, one segment at a time instead of building the whole file in memory.
+     *
+     * @param writer writer to write to; it's flushed but not closed.
+     * @param lineBreak Line break to use for separators.
+     * @throws IOException if the file can't be written
+     */
+    public void writeTo(Writer writer, LineBreak lineBreak) throws IOException {
         for (Loop loop : _dataLoops) {
-            builder.append(loop.toX12String(_definition.getLoop()));
-            builder.append(_separators.getLineBreak().getLineBreakString());
+            loop.writeTo(writer, _definition.getLoop(), lineBreak);
+            writer.write(lineBreak.getLineBreakString());
         }
-        return builder.toString();
+        writer.flush();
+    }
+
+    /**
+     * Writes the X12 file to an output stream, one segment at a time instead of building the whole file in memory. Will use no line breaks after
+     * separators.
+     *
+     * @param output output stream to write to; it's flushed but not closed.
+     * @param charset character encoding
+     * @throws IOException if the file can't be written
+     */
+    public void writeTo(OutputStream output, Charset charset) throws IOException {
+        writeTo(output, charset, LineBreak.NONE);
+    }
+
+    /**
+     * Writes the X12 file to an output stream, one segment at a time instead of building the whole file in memory.
+     *
+     * @param output output stream to write to; it's flushed but not closed.
+     * @param charset character encoding
+     * @param lineBreak Line break to use for separators.
+     * @throws IOException if the file can't be written
+     */
+    public void writeTo(OutputStream output, Charset charset, LineBreak lineBreak) throws IOException {
+        writeTo(new BufferedWriter(new OutputStreamWriter(output, charset)), lineBreak);
     }
 
     /**
@@ -75,11 +132,28 @@ public class X12Writer {
      * @return Human readable html segment representation of the X12 file.
      */
     public String toHtml() {
-        StringBuilder builder = new StringBuilder();
+        StringWriter writer = new StringWriter();
+        try {
+            writeHtmlTo(writer);
+        }
+        catch (IOException e) {
+            // a string writer can't fail
+            throw new UncheckedIOException(e);
+        }
+        return writer.toString();
+    }
+
+    /**
+     * Writes the HTML segment of this X12 file to a writer, like {@link #toHtml()}, one segment at a time instead of building it in memory.
+     *
+     * @param writer writer to write to; it's flushed but not closed.
+     * @throws IOException if the HTML can't be written
+     */
+    public void writeHtmlTo(Writer writer) throws IOException {
         for (Loop loop : _dataLoops) {
-            builder.append(loop.toHtml(_definition.getLoop(), new ArrayList<>()));
+            loop.writeHtmlTo(writer, _definition.getLoop(), new ArrayList<>());
         }
-        return builder.toString();
+        writer.flush();
     }
 
     public List<Map<String, Object>> toListOfMap() {
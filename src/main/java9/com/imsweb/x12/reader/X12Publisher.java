@@ -0,0 +1,167 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.Charset;
+import java.nio.file.Path;
+import java.util.Objects;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Publishes the loops with a given ID of a file, for example the transactions (ST_LOOP) or the claims (2300) of an 837. The file is parsed lazily: it is
+ * only read as far as needed to deliver the loops requested by the subscriber, so a slow subscriber bounds the memory used by the parsing. Like with the
+ * streaming constructors of {@link X12Reader}, the parent loops of each loop remain available through {@link Loop#getParent()}.
+ * <br/><br/>
+ * Each subscriber gets its own parsing of the file. The loops are delivered on the thread requesting them. The subscriber receives an error if the file
+ * can't be read or has a structure issue that prevents it from being processed (a fatal error of {@link X12Reader}); the other validation errors are not
+ * reported, {@link X12Reader} should be used to validate a file.
+ * <br/><br/>
+ * This class requires Java 9 or later; it's packaged in the multi-release part of the JAR.
+ */
+public final class X12Publisher implements Flow.Publisher<Loop> {
+
+    private final FileType _type;
+    private final Path _path;
+    private final Charset _charset;
+    private final String _loopId;
+
+    /**
+     * Constructor
+     * @param type the type of x12 file
+     * @param path the path of the input file
+     * @param charset character encoding
+     * @param loopId the ID of the loops to publish
+     */
+    public X12Publisher(FileType type, Path path, Charset charset, String loopId) {
+        _type = Objects.requireNonNull(type);
+        _path = Objects.requireNonNull(path);
+        _charset = Objects.requireNonNull(charset);
+        _loopId = Objects.requireNonNull(loopId);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super Loop> subscriber) {
+        Objects.requireNonNull(subscriber);
+
+        LoopIterator loops;
+        try {
+            loops = new LoopIterator(_type, X12Reader.openReader(_path, _charset), _loopId);
+        }
+        catch (IOException | RuntimeException e) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                    // nothing to deliver
+                }
+
+                @Override
+                public void cancel() {
+                    // nothing to cancel
+                }
+            });
+            subscriber.onError(e);
+            return;
+        }
+
+        LoopSubscription subscription = new LoopSubscription(subscriber, loops);
+        subscriber.onSubscribe(subscription);
+    }
+
+    /**
+     * A subscription delivering the loops of the iterator. The signals are serialized with a work counter: the thread that finds the counter at zero
+     * delivers the loops, the other threads (or a request made from onNext) only record their request for it.
+     */
+    private static final class LoopSubscription implements Flow.Subscription {
+
+        private final Flow.Subscriber<? super Loop> _subscriber;
+        private final LoopIterator _loops;
+        private final AtomicLong _requested = new AtomicLong();
+        private final AtomicInteger _work = new AtomicInteger();
+        private volatile boolean _cancelled;
+        private volatile Throwable _invalidRequest;
+        private volatile boolean _done;
+
+        LoopSubscription(Flow.Subscriber<? super Loop> subscriber, LoopIterator loops) {
+            _subscriber = subscriber;
+            _loops = loops;
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0)
+                _invalidRequest = new IllegalArgumentException("The number of requested loops must be positive, got " + n);
+            else
+                _requested.getAndAccumulate(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            deliver();
+        }
+
+        @Override
+        public void cancel() {
+            _cancelled = true;
+            deliver();
+        }
+
+        private void deliver() {
+            if (_work.getAndIncrement() != 0)
+                return;
+
+            int missed = 1;
+            do {
+                if (!_done) {
+                    if (_cancelled)
+                        finish(null, false);
+                    else if (_invalidRequest != null)
+                        finish(_invalidRequest, true);
+                    else
+                        deliverRequested();
+                }
+                missed = _work.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void deliverRequested() {
+            long requested = _requested.get();
+            long delivered = 0;
+            try {
+                while (delivered < requested && !_cancelled && _invalidRequest == null && _loops.hasNext()) {
+                    _subscriber.onNext(_loops.next());
+                    delivered++;
+                }
+                // the completion doesn't need to be requested
+                if (!_cancelled && _invalidRequest == null && !_loops.hasNext())
+                    finish(null, true);
+            }
+            catch (UncheckedIOException e) {
+                finish(e.getCause(), true);
+            }
+            catch (RuntimeException e) {
+                finish(e, true);
+            }
+            if (requested != Long.MAX_VALUE)
+                _requested.addAndGet(-delivered);
+        }
+
+        private void finish(Throwable error, boolean signal) {
+            _done = true;
+            Throwable result = error;
+            try {
+                _loops.close();
+            }
+            catch (IOException e) {
+                if (result == null)
+                    result = e;
+            }
+            if (signal) {
+                if (result == null)
+                    _subscriber.onComplete();
+                else
+                    _subscriber.onError(result);
+            }
+        }
+    }
+}
@@ -1,5 +1,8 @@
 package com.imsweb.x12;
 
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -14,4 +17,27 @@ class ElementTest {
         assertEquals("VALUE", element.getValue());
     }
 
+    @Test
+    void testSubValues() {
+        // same as splitting the value on the composite separator
+        for (String value : new String[] {"", "A", "11:B:1", ":B", "A::", "::", "A::B"}) {
+            Element element = new Element("SV101", value);
+            List<String> expected = Arrays.asList(new Separators().splitComposite(value));
+            assertEquals(expected.size(), element.getNumOfSubElements());
+            for (int i = 0; i <= expected.size(); i++)
+                assertEquals(i < expected.size() ? expected.get(i) : null, element.getSubElement(i));
+            assertEquals(expected, element.getSubValues());
+        }
+
+        // the sub-values follow the value
+        Element element = new Element("SV101", "HC:99213");
+        assertEquals("HC", element.getSubElement(0));
+        element.setValue("ER:99285:25");
+        assertEquals(3, element.getNumOfSubElements());
+        assertEquals(Arrays.asList("ER", "99285", "25"), element.getSubValues());
+
+        element = new Element("HI01", "ABK^I10", new Separators('~', '*', '^'));
+        assertEquals("I10", element.getSubElement(1));
+    }
+
 }
\ No newline at end of file
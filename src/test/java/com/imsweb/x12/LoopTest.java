@@ -1,11 +1,18 @@
 package com.imsweb.x12;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
 import java.util.List;
 
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class LoopTest {
@@ -131,6 +138,52 @@ class LoopTest {
         assertEquals(1, loops.size());
     }
 
+    @Test
+    void testIndexedLookups() {
+        Loop isa = new Loop("ISA_LOOP");
+        Loop gs = isa.addLoop("GS_LOOP");
+        Loop st = gs.addLoop("ST_LOOP");
+        Loop first = st.addLoop("2000A");
+        first.addLoop("2000B").addLoop("2300").addSegment("CLM*A*1");
+        first.addLoop("2000B").addLoop("2300").addSegment("CLM*B*2");
+        List<Loop> expected = isa.findLoop("2300");
+
+        isa.setIndexed(true);
+        assertTrue(isa.isIndexed());
+        // only the indexed loop has an index, its descendants walk their loops
+        assertFalse(first.isIndexed());
+        assertFalse(new Loop("ISA_LOOP").isIndexed());
+        assertEquals(expected, isa.findLoop("2300"));
+        assertSame(expected.get(1), isa.getLoop("2300", 1));
+        assertNull(isa.getLoop("2300", 2));
+        assertNull(isa.getLoop("2400"));
+        assertEquals("B", isa.getElement("2300", 1, "CLM", 0, "CLM01"));
+        assertEquals("1", first.getElement("2300", "CLM", "CLM02"));
+        assertTrue(isa.hasLoop("2000"));
+        assertFalse(isa.hasLoop("2400"));
+        // like without an index, the ids containing the given one match
+        assertTrue(isa.hasLoop("2000A"));
+        assertTrue(isa.hasLoop("_LOOP"));
+        assertEquals(isa.hasLoop("230"), first.hasLoop("230"));
+
+        // the changes made through the loops are taken into account
+        Loop second = st.addLoop("2000A");
+        second.addLoop("2000B").addLoop("2300").addSegment("CLM*C*3");
+        assertEquals(3, isa.findLoop("2300").size());
+        assertEquals("C", isa.getElement("2300", 2, "CLM", 0, "CLM01"));
+        isa.getLoop("2300", 2).setId("2400");
+        assertEquals(2, isa.findLoop("2300").size());
+        assertTrue(isa.hasLoop("2400"));
+        st.removeLoop(0);
+        assertEquals("2400", isa.getLoop("2000B").getLoop(0).getId());
+
+        // the changes made directly to the lists require the index to be dropped
+        second.getLoops().clear();
+        assertNotNull(isa.getLoop("2400"));
+        second.invalidateIndex();
+        assertNull(isa.getLoop("2400"));
+    }
+
     @Test
     void testFindSegment() {
         Loop loop = new Loop("ISA");
@@ -364,4 +417,107 @@ class LoopTest {
                 + "</loop>", loop.toXML());
     }
 
+    @Test
+    void testToJson() throws IOException {
+        Loop loop = new Loop("ST");
+        loop.addSegment("ST*835*000000001");
+        loop.addSegment("NTE*A\"B\\C\tD\u0001*11:B:1");
+        loop.addLoop("2000").addSegment("LX*1");
+        String expected = "{\n"
+                + "  \"id\": \"ST\",\n"
+                + "  \"segments\": [\n"
+                + "    {\n"
+                + "      \"id\": \"ST\",\n"
+                + "      \"elements\": [\n"
+                + "        {\n"
+                + "          \"id\": \"ST01\",\n"
+                + "          \"value\": \"835\",\n"
+                + "          \"subValue\": [\n"
+                + "            \"835\"\n"
+                + "          ]\n"
+                + "        },\n"
+                + "        {\n"
+                + "          \"id\": \"ST02\",\n"
+                + "          \"value\": \"000000001\",\n"
+                + "          \"subValue\": [\n"
+                + "            \"000000001\"\n"
+                + "          ]\n"
+                + "        }\n"
+                + "      ]\n"
+                + "    },\n"
+                + "    {\n"
+                + "      \"id\": \"NTE\",\n"
+                + "      \"elements\": [\n"
+                + "        {\n"
+                + "          \"id\": \"NTE01\",\n"
+                + "          \"value\": \"A\\\"B\\\\C\\tD\\u0001\",\n"
+                + "          \"subValue\": [\n"
+                + "            \"A\\\"B\\\\C\\tD\\u0001\"\n"
+                + "          ]\n"
+                + "        },\n"
+                + "        {\n"
+                + "          \"id\": \"NTE02\",\n"
+                + "          \"value\": \"11:B:1\",\n"
+                + "          \"subValue\": [\n"
+                + "            \"11\",\n"
+                + "            \"B\",\n"
+                + "            \"1\"\n"
+                + "          ]\n"
+                + "        }\n"
+                + "      ]\n"
+                + "    }\n"
+                + "  ],\n"
+                + "  \"loops\": [\n"
+                + "    {\n"
+                + "      \"id\": \"2000\",\n"
+                + "      \"segments\": [\n"
+                + "        {\n"
+                + "          \"id\": \"LX\",\n"
+                + "          \"elements\": [\n"
+                + "            {\n"
+                + "              \"id\": \"LX01\",\n"
+                + "              \"value\": \"1\",\n"
+                + "              \"subValue\": [\n"
+                + "                \"1\"\n"
+                + "              ]\n"
+                + "            }\n"
+                + "          ]\n"
+                + "        }\n"
+                + "      ],\n"
+                + "      \"loops\": []\n"
+                + "    }\n"
+                + "  ]\n"
+                + "}";
+        assertEquals(expected, loop.toJson());
+
+        // the elements are written the same way once they are created
+        loop.getSegment("NTE").getElements();
+        loop.getLoop("2000").getSegment("LX").getElement("LX01").getSubValues();
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        loop.writeJsonTo(output, StandardCharsets.UTF_8);
+        assertEquals(expected, new String(output.toByteArray(), StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void testWriteJsonLines() throws IOException {
+        Loop st = new Loop("ST");
+        Loop subscriber = st.addLoop("2000B");
+        subscriber.addLoop("2300").addSegment("CLM*A*1");
+        subscriber.addLoop("2300").addSegment("CLM*B*2");
+        st.addLoop("2000B").addLoop("2300");
+
+        StringWriter writer = new StringWriter();
+        st.writeJsonLinesTo(writer, "2300");
+        assertEquals("{\"id\":\"2300\",\"segments\":[{\"id\":\"CLM\",\"elements\":[{\"id\":\"CLM01\",\"value\":\"A\",\"subValue\":[\"A\"]},"
+                + "{\"id\":\"CLM02\",\"value\":\"1\",\"subValue\":[\"1\"]}]}],\"loops\":[]}\n"
+                + "{\"id\":\"2300\",\"segments\":[{\"id\":\"CLM\",\"elements\":[{\"id\":\"CLM01\",\"value\":\"B\",\"subValue\":[\"B\"]},"
+                + "{\"id\":\"CLM02\",\"value\":\"2\",\"subValue\":[\"2\"]}]}],\"loops\":[]}\n"
+                + "{\"id\":\"2300\",\"segments\":[],\"loops\":[]}\n", writer.toString());
+
+        writer = new StringWriter();
+        st.writeJsonLinesTo(writer, "ST");
+        assertEquals(1, writer.toString().split("\n").length);
+        assertTrue(writer.toString().startsWith("{\"id\":\"ST\",\"segments\":[],\"loops\":[{\"id\":\"2000B\""));
+    }
+
 }
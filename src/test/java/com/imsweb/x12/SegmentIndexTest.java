@@ -0,0 +1,62 @@
+package com.imsweb.x12;
+
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SegmentIndexTest {
+
+    @Test
+    void testGetSegments() {
+        Loop st = new Loop("ST_LOOP");
+        Loop billing = st.addLoop("2000A");
+        billing.addLoop("2010AA").addSegment("NM1*85*2*BILLING PROVIDER");
+        Loop subscriber = billing.addLoop("2000B");
+        subscriber.addLoop("2010BA").addSegment("NM1*IL*1*DOE*JOHN");
+        Loop first = subscriber.addLoop("2300");
+        first.addSegment("CLM*A*1");
+        first.addSegment("REF*G1*123");
+        first.addSegment("REF*EA*456");
+        first.addLoop("2310B").addSegment("NM1*82*1*SMITH");
+        Loop second = subscriber.addLoop("2300");
+        second.addSegment("CLM*B*2");
+        second.addSegment("REF*G1*789");
+        second.addLoop("2310A").addSegment("NM1*DN*1*JONES");
+        second.addLoop("2310B").addSegment("NM1*82*1*BROWN");
+
+        SegmentIndex index = new SegmentIndex(st, "NM101", "REF01", "REF02");
+
+        List<SegmentIndex.Entry> claims = index.getSegments("CLM");
+        assertEquals(2, claims.size());
+        assertSame(first, claims.get(0).getLoop());
+        assertSame(second.getSegment("CLM"), claims.get(1).getSegment());
+        assertEquals(5, index.getSegments("NM1").size());
+        assertTrue(index.getSegments("DTP").isEmpty());
+
+        List<SegmentIndex.Entry> rendering = index.getSegments("NM101", "82");
+        assertEquals(2, rendering.size());
+        assertEquals("SMITH", rendering.get(0).getSegment().getElementValue("NM103"));
+        assertSame(second, rendering.get(1).getLoop().getParent());
+        assertEquals("2010AA", index.getSegments("NM101", "85").get(0).getLoop().getId());
+
+        List<SegmentIndex.Entry> references = index.getSegments("REF01", "G1");
+        assertEquals(2, references.size());
+        assertEquals("789", references.get(1).getSegment().getElementValue("REF02"));
+        assertSame(first, index.getSegments("REF02", "456").get(0).getLoop());
+        assertTrue(index.getSegments("REF01", "XX").isEmpty());
+
+        // the index is a snapshot of the tree
+        second.addSegment("REF*G1*000");
+        assertEquals(2, index.getSegments("REF01", "G1").size());
+        assertEquals(3, new SegmentIndex(st, "REF01").getSegments("REF01", "G1").size());
+
+        assertThrows(IllegalArgumentException.class, () -> index.getSegments("CLM01", "A"));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentIndex(st, "NM1"));
+        assertThrows(IllegalArgumentException.class, () -> new SegmentIndex(st, "NM1A"));
+    }
+}
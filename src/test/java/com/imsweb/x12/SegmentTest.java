@@ -1,9 +1,20 @@
 package com.imsweb.x12;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.IntStream;
+
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -41,6 +52,129 @@ class SegmentTest {
         assertEquals(2, s.getElements().size());
     }
 
+    @Test
+    void testAddElementsWithSeparatorPositions() {
+        for (String text : new String[] {"CLM*A37YH556*500***11:B:1*Y*A*Y*I", "NM1*IL*1*DOE*JOHN****MI*", "HL*1**20*1", "*A*", "LX", ""}) {
+            Segment expected = new Segment();
+            expected.addElements(text);
+
+            int[] positions = IntStream.range(0, text.length()).filter(i -> text.charAt(i) == '*').toArray();
+
+            Segment s = new Segment();
+            assertTrue(s.addElements(text, positions));
+            assertEquals(expected, s);
+            assertEquals(expected.getId(), s.getId());
+            assertEquals(expected.toString(), s.toString());
+        }
+    }
+
+    @Test
+    void testElementsCreatedWhenAccessed() {
+        String text = "NM1*IL*1*DOE*JOHN****MI*";
+        int[] positions = IntStream.range(0, text.length()).filter(i -> text.charAt(i) == '*').toArray();
+        Segment expected = new Segment();
+        expected.addElements(text);
+
+        // the raw text is used until an element is accessed
+        Segment s = new Segment();
+        s.addElements(text, positions);
+        assertEquals(expected.toString(), s.toString());
+        assertEquals(expected.size(), s.size());
+        assertEquals("DOE", s.getElementValue("NM103"));
+        assertEquals(expected.getElements(), s.getElements());
+
+        // the elements keep the id they were created with
+        s = new Segment();
+        s.addElements(text, positions);
+        s.setId("N1");
+        assertEquals("NM103", s.getElements().get(2).getId());
+        assertEquals("N1*IL*1*DOE*JOHN****MI", s.toString());
+
+        // the elements added after other ones are appended
+        s = new Segment();
+        s.addElements(text, positions);
+        s.addElements("N3*123 MAIN ST", new int[] {2});
+        assertEquals(9, s.size());
+        assertEquals("NM108", s.getElements().get(7).getId());
+        assertEquals("N301", s.getElements().get(8).getId());
+        assertEquals("N3*IL*1*DOE*JOHN****MI*123 MAIN ST", s.toString());
+    }
+
+    @Test
+    void testElementsCreatedWhenAccessedConcurrently() throws Exception {
+        String text = "NM1*IL*1*DOE*JOHN****MI*";
+        int[] positions = IntStream.range(0, text.length()).filter(i -> text.charAt(i) == '*').toArray();
+        Segment expected = new Segment();
+        expected.addElements(text);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int run = 0; run < 200; run++) {
+                Segment s = new Segment();
+                s.addElements(text, positions);
+
+                // the threads read the segment at the same time, some of them creating its elements
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<?>> futures = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    boolean createElements = i % 2 == 0;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        assertEquals("DOE", createElements ? s.getElement("NM103").getValue() : s.getElementValue("NM103"));
+                        assertEquals(expected.size(), s.size());
+                        assertEquals(expected.toString(), s.toString());
+                        return null;
+                    }));
+                }
+                start.countDown();
+                for (Future<?> future : futures)
+                    future.get();
+                assertEquals(expected.getElements(), s.getElements());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testSubValuesSplitConcurrently() throws Exception {
+        String text = "SV1*HC:99213:25*125*UN*1***1:2";
+        int[] positions = IntStream.range(0, text.length()).filter(i -> text.charAt(i) == '*').toArray();
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            for (int run = 0; run < 200; run++) {
+                Segment s = new Segment();
+                s.addElements(text, positions);
+                Element element = s.getElement("SV101");
+
+                // the threads split the same value at the same time, and all get the same list
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<List<String>>> futures = new ArrayList<>();
+                for (int i = 0; i < 8; i++) {
+                    boolean subElement = i % 2 == 0;
+                    futures.add(executor.submit(() -> {
+                        start.await();
+                        if (subElement) {
+                            assertEquals(3, element.getNumOfSubElements());
+                            assertEquals("25", element.getSubElement(2));
+                        }
+                        return element.getSubValues();
+                    }));
+                }
+                start.countDown();
+                List<String> subValues = futures.get(0).get();
+                assertEquals(Arrays.asList("HC", "99213", "25"), subValues);
+                for (Future<List<String>> future : futures)
+                    assertSame(subValues, future.get());
+            }
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void testAddCompositeElementStringArray() {
         Segment s = new Segment();
@@ -231,6 +365,48 @@ class SegmentTest {
 
         assertEquals("ISA03", s.getElement("ISA03").getId());
         assertEquals("ISA03", s.getElement("ISA03").getValue());
+
+        for (int i = 4; i <= 12; i++)
+            s.appendElement("V" + i);
+        assertEquals("V10", s.getElementValue("ISA10"));
+        assertEquals("V12", s.getElementValue(12));
+    }
+
+    @Test
+    void testGetElementBySequence() {
+        String text = "CLM*A37YH556*500***11:B:1*Y*A*Y*I";
+        int[] positions = IntStream.range(0, text.length()).filter(i -> text.charAt(i) == '*').toArray();
+        Segment s = new Segment();
+        s.addElements(text, positions);
+
+        // the values are available before the elements are created
+        assertEquals("A37YH556", s.getElementValue(1));
+        assertEquals("A37YH556", s.getElementValue("CLM01"));
+        assertEquals("", s.getElementValue(3));
+        assertNull(s.getElementValue(10));
+        assertNull(s.getElementValue(0));
+        assertNull(s.getElementValue("CLM1"));
+        assertNull(s.getElementValue("CLM001"));
+        assertNull(s.getElementValue("NM101"));
+
+        assertEquals("CLM05", s.getElement(5).getId());
+        assertEquals("11:B:1", s.getElementValue(5));
+        assertEquals("B", s.getElement("CLM05", 1));
+        assertNull(s.getElement(10));
+        assertSame(s.getElement("CLM02"), s.getElement(2));
+
+        // the ids are shared between the segments
+        Segment other = new Segment();
+        other.addElements(text);
+        assertSame(s.getElement(1).getId(), other.getElement(1).getId());
+
+        // the elements are found even if they are not in order
+        s.removeElement(1);
+        assertEquals("500", s.getElementValue(2));
+        assertNull(s.getElementValue(1));
+        s.addElement(0, new Element("CLM01", "X"));
+        assertEquals("X", s.getElementValue("CLM01"));
+        assertEquals("500", s.getElementValue("CLM02"));
     }
 
     @Test
@@ -3,8 +3,12 @@ package com.imsweb.x12;
 import org.junit.jupiter.api.Test;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class SeparatorsTest {
 
@@ -137,4 +141,59 @@ class SeparatorsTest {
         separators.setCompositeElement(null);
         assertNull(separators.splitComposite(segments));
     }
+
+    @Test
+    void testSplitLikeRegularExpression() {
+        Separators separators = new Separators();
+        for (String text : new String[] {"", "A", "*", "**", "*A", "A**", "A**B", "*A*B*"}) {
+            String[] expected = text.split("\\*");
+            String[] split = separators.splitElement(text);
+            assertEquals(expected.length, split.length);
+            for (int i = 0; i < expected.length; i++)
+                assertEquals(expected[i], split[i]);
+        }
+    }
+
+    @Test
+    void testFindElementSeparators() {
+        Separators separators = new Separators();
+        int[] positions = new int[2];
+        assertEquals(3, separators.findElementSeparators("HL*1**20", positions));
+        assertEquals(2, positions[0]);
+        assertEquals(4, positions[1]);
+        assertEquals(0, separators.findElementSeparators("LX", positions));
+        assertEquals(-1, separators.findElementSeparators(null, positions));
+
+        positions = new int[1];
+        assertEquals(1, separators.findCompositeSeparators("HC:99213", positions));
+        assertEquals(2, positions[0]);
+    }
+
+    @Test
+    void testShared() {
+        Separators separators = Separators.of('~', '*', ':');
+        assertSame(separators, Separators.of('~', '*', ':'));
+        assertNotSame(separators, Separators.of('~', '*', '^'));
+        assertTrue(separators.isShared());
+        assertEquals(new Separators(), separators);
+        assertEquals(LineBreak.NONE, separators.getLineBreak());
+        assertFalse(new Separators().isShared());
+
+        // the objects holding shared separators return their own copy
+        Segment segment = new Segment(separators);
+        assertNotSame(separators, segment.getSeparators());
+        assertSame(segment.getSeparators(), segment.getSeparators());
+        segment.getSeparators().setElement('|');
+        assertEquals(Character.valueOf('*'), separators.getElement());
+        assertNotSame(separators, new Loop(separators, "ST_LOOP").getSeparators());
+        assertNotSame(separators, new Element("NM101", "IL", separators).getSeparators());
+
+        // a copy can be modified
+        Separators copy = new Separators(separators);
+        assertFalse(copy.isShared());
+        assertEquals(separators, copy);
+        copy.setLineBreak(LineBreak.LF);
+        assertEquals(LineBreak.LF, copy.getLineBreak());
+        assertEquals(LineBreak.NONE, separators.getLineBreak());
+    }
 }
@@ -0,0 +1,62 @@
+package com.imsweb.x12;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ValuePoolTest {
+
+    @Test
+    void testGet() {
+        ValuePool pool = new ValuePool(100);
+        assertEquals(128, pool.getSize());
+
+        String first = pool.get("NM1*85*2*PAYER", 4, 6);
+        assertEquals("85", first);
+        assertSame(first, pool.get("CLM*A37YH556*85", 13, 15));
+        assertSame(first, pool.get("85"));
+        assertEquals("", pool.get("NM1**2", 4, 4));
+        assertNull(pool.get(null));
+
+        // the long values are not pooled
+        StringBuilder buf = new StringBuilder("NTE*");
+        for (int i = 0; i <= ValuePool.MAX_LENGTH; i++)
+            buf.append('A');
+        String text = buf.toString();
+        assertNotSame(pool.get(text, 4, text.length()), pool.get(text, 4, text.length()));
+
+        // a new value replaces the one that was only seen once
+        pool = new ValuePool(1);
+        assertEquals(2, pool.getSize());
+        String value = pool.get("NM1*IL", 4, 6);
+        pool.get("NM1*PR", 4, 6);
+        assertNotSame(value, pool.get("NM1*IL", 4, 6));
+
+        // a value seen again keeps its slot, whatever the number of values seen once
+        value = pool.get("NM1*IL", 4, 6);
+        for (int i = 0; i < 100; i++)
+            pool.get("2019010" + i);
+        assertSame(value, pool.get("NM1*IL", 4, 6));
+
+        // a value found as many times as the one of the first slot doesn't take its place
+        String other = pool.get("NM1*PR", 4, 6);
+        assertSame(other, pool.get("NM1*PR", 4, 6));
+        pool.get("NM1*QC", 4, 6);
+        assertNotSame(other, pool.get("NM1*PR", 4, 6));
+        assertSame(value, pool.get("NM1*IL", 4, 6));
+
+        // a value found more times does, and the other value can then be replaced
+        other = pool.get("NM1*PR", 4, 6);
+        for (int i = 0; i < 3; i++)
+            assertSame(other, pool.get("NM1*PR", 4, 6));
+        pool.get("NM1*QC", 4, 6);
+        assertNotSame(value, pool.get("NM1*IL", 4, 6));
+        assertSame(other, pool.get("NM1*PR", 4, 6));
+
+        assertThrows(IllegalArgumentException.class, () -> new ValuePool(0));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2015 Information Management Services, Inc.
+ */
+package com.imsweb.x12.mapping;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.thoughtworks.xstream.XStream;
+import com.thoughtworks.xstream.io.xml.StaxDriver;
+import com.thoughtworks.xstream.security.NoTypePermission;
+import com.thoughtworks.xstream.security.WildcardTypePermission;
+
+import com.imsweb.x12.mapping.TransactionDefinition.Usage;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class BinaryMappingTest {
+
+    @Test
+    void testRoundTrip() throws IOException {
+        for (FileType type : FileType.values()) {
+            byte[] data = write(readXml(type.getMapping()));
+            TransactionDefinition definition = BinaryMapping.read(new ByteArrayInputStream(data));
+            assertArrayEquals(data, write(definition), type.name());
+
+            // the compiled mappings are available on the classpath, and used by the file types
+            try (InputStream is = Thread.currentThread().getContextClassLoader().getResourceAsStream(BinaryMapping.getResourceName(type.getMapping()))) {
+                assertNotNull(is, type.name());
+            }
+            assertArrayEquals(data, write(type.getDefinition()), type.name());
+        }
+    }
+
+    @Test
+    void testDefinition() throws IOException {
+        TransactionDefinition definition = BinaryMapping.read(new ByteArrayInputStream(write(readXml("mapping/837.5010.X222.A1.xml"))));
+
+        assertEquals("837", definition.getXid());
+        assertEquals("ISA_LOOP", definition.getLoop().getXid());
+        assertEquals(Usage.REQUIRED, definition.getLoop().getUsage());
+        SegmentDefinition isa = definition.getLoop().getSegment().get(0);
+        assertEquals("ISA", isa.getXid());
+        assertEquals("ISA01", isa.getElements().get(0).getXid());
+        assertEquals(2, isa.getElements().get(0).getValidCodes().getCodes().size());
+        assertNull(isa.getComposites());
+        assertNull(definition.getLoop().getLoop().get(0).getLoop().get(0).getLoop().get(0).getSegment().get(0).getSyntax());
+    }
+
+    @Test
+    void testBadData() {
+        assertEquals("mapping/999.5010.bin", BinaryMapping.getResourceName("mapping/999.5010.xml"));
+        assertThrows(IOException.class, () -> BinaryMapping.read(new ByteArrayInputStream(new byte[] {1, 2, 3, 4, 5, 6})));
+        assertThrows(IOException.class, () -> BinaryMapping.read(new ByteArrayInputStream(new byte[0])));
+    }
+
+    private static byte[] write(TransactionDefinition definition) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryMapping.write(definition, out);
+        return out.toByteArray();
+    }
+
+    private static TransactionDefinition readXml(String mapping) {
+        XStream xstream = new XStream(new StaxDriver());
+        xstream.autodetectAnnotations(true);
+        xstream.alias("transaction", TransactionDefinition.class);
+        xstream.addPermission(NoTypePermission.NONE);
+        xstream.addPermission(new WildcardTypePermission(new String[] {"com.imsweb.x12.**"}));
+
+        return (TransactionDefinition)xstream.fromXML(Thread.currentThread().getContextClassLoader().getResourceAsStream(mapping));
+    }
+}
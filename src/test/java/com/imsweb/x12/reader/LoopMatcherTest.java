@@ -0,0 +1,77 @@
+package com.imsweb.x12.reader;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.Test;
+
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LoopMatcherTest {
+
+    @Test
+    void testCandidates() {
+        LoopMatcher matcher = FileType.ANSI837_5010_X222.getMatcher();
+        assertSame(matcher, FileType.ANSI837_5010_X222.getMatcher());
+
+        // the entity identifier code narrows down the loops an NM1 segment can start
+        assertEquals(Arrays.asList("2010AA", "2330G"), getCandidates(matcher, "NM1*85*2*X"));
+        assertEquals(Arrays.asList("2010BA", "2330A"), getCandidates(matcher, "NM1*IL*1*DOE"));
+        assertEquals(Collections.emptyList(), getCandidates(matcher, "NM1*ZZ"));
+
+        assertEquals(Collections.singletonList("2300"), getCandidates(matcher, "CLM*1"));
+        assertEquals(Collections.singletonList("ISA_LOOP"), getCandidates(matcher, "ISA*00"));
+        assertEquals(Collections.singletonList("ISA_LOOP"), getCandidates(matcher, "IEA*1*1"));
+        assertEquals(Collections.emptyList(), getCandidates(matcher, "XYZ*1"));
+    }
+
+    @Test
+    void testLoopStructure() {
+        LoopMatcher matcher = FileType.ANSI837_5010_X222.getMatcher();
+
+        assertEquals(Collections.singletonList("2000B"), matcher.getParentLoops("2010BA"));
+        assertEquals(new HashSet<>(Arrays.asList("2010BA", "2010BB")), matcher.getRequiredChildLoops("2000B"));
+        assertTrue(matcher.isChildSegment("2300", "DTP"));
+        assertFalse(matcher.isChildSegment("2300", "CLM"));
+        assertEquals("CLM", matcher.getSegments("2300").get(0).getXid());
+        assertEquals(Collections.emptyList(), matcher.getSegments("UNKNOWN"));
+        assertNull(matcher.getSegments("DETAIL"));
+    }
+
+    @Test
+    void testLoopConfigs() {
+        LoopMatcher matcher = FileType.ANSI837_5010_X222.getMatcher();
+
+        LoopConfig config = matcher.getLoopConfig("2300");
+        assertSame(config, matcher.getLoopConfigs().get(config.getIndex()));
+        assertEquals("2000B", config.getParentLoop());
+        assertEquals("CLM", config.getFirstSegmentXid().getXid());
+        assertTrue(config.getChildList().contains("2400"));
+        assertEquals("ISA_LOOP", matcher.getLoopConfigs().get(0).getLoopId());
+        assertEquals("IEA", matcher.getLoopConfigs().get(0).getLastSegmentXid().getXid());
+        assertFalse(matcher.getLoopConfig("DETAIL").hasDataSegments());
+        assertNull(matcher.getLoopConfig("UNKNOWN"));
+
+        // the counts are kept per parse, the configurations are shared
+        LoopRepeatCounts counts = new LoopRepeatCounts(matcher.getLoopConfigs().size());
+        counts.increment(config);
+        counts.increment(config);
+        assertEquals(2, counts.get(config));
+        assertEquals(0, new LoopRepeatCounts(matcher.getLoopConfigs().size()).get(config));
+    }
+
+    private static List<String> getCandidates(LoopMatcher matcher, String segment) {
+        int[] separators = IntStream.range(0, segment.length()).filter(i -> segment.charAt(i) == '*').toArray();
+        return matcher.getCandidates(new ParsedSegment(segment, separators)).stream().map(LoopMatcher.Candidate::getLoopId).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,63 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedFileReaderTest {
+
+    @TempDir
+    Path _tempDir;
+
+    @Test
+    void testRead() throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            buf.append("NM1*IL*1*DOE*JOHN****MI*").append(i).append("~\n");
+        buf.append("NM1*IL*1*DÉJÀ~");
+        Path file = _tempDir.resolve("file.txt");
+        Files.write(file, buf.toString().getBytes(StandardCharsets.ISO_8859_1));
+
+        // the regions are smaller than the buffer, reads have to span several of them
+        try (Reader reader = new MappedFileReader(FileChannel.open(file, StandardOpenOption.READ), 100)) {
+            assertEquals(buf.toString(), read(reader, 250));
+        }
+
+        try (Reader reader = new MappedFileReader(FileChannel.open(file, StandardOpenOption.READ), 100)) {
+            reader.mark(1);
+            char[] header = new char[150];
+            assertEquals(150, reader.read(header));
+            assertEquals(buf.substring(0, 150), new String(header));
+            reader.reset();
+            assertEquals(buf.toString(), read(reader, 8192));
+            assertEquals(-1, reader.read(header));
+        }
+    }
+
+    @Test
+    void testEmptyFile() throws IOException {
+        Path file = _tempDir.resolve("empty.txt");
+        Files.write(file, new byte[0]);
+        try (Reader reader = new MappedFileReader(FileChannel.open(file, StandardOpenOption.READ))) {
+            assertEquals(-1, reader.read(new char[10]));
+        }
+    }
+
+    private static String read(Reader reader, int bufferSize) throws IOException {
+        StringBuilder result = new StringBuilder();
+        char[] buffer = new char[bufferSize];
+        int n;
+        while ((n = reader.read(buffer, 0, buffer.length)) != -1)
+            result.append(buffer, 0, n);
+        return result.toString();
+    }
+}
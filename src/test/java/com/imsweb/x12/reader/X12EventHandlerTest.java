@@ -0,0 +1,124 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.mapping.LoopDefinition;
+import com.imsweb.x12.reader.X12Reader.FileType;
+import com.imsweb.x12.writer.X12Writer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class X12EventHandlerTest {
+
+    @Test
+    void testEvents() throws IOException {
+        X12Reader expected = read(FileType.ANSI837_5010_X222, "/837_5010/x12_many_claims.txt", null);
+
+        RecordingHandler handler = new RecordingHandler();
+        X12Reader reader = read(FileType.ANSI837_5010_X222, "/837_5010/x12_many_claims.txt", handler);
+        assertTrue(reader.getLoops().isEmpty());
+        assertEquals(expected.getErrors(), reader.getErrors());
+        assertEquals(expected.getErrors(), handler._errors);
+        assertTrue(handler._open.isEmpty());
+        assertEquals(1, handler._interchanges);
+        assertEquals(expected.getLoops().get(0).findLoop("2300").size(), handler._loopCounts.stream().filter("2300"::equals).count());
+
+        // the segments are received in the order of the file, with the loop they belong to
+        assertEquals("ISA", handler._segments.get(0));
+        assertEquals("ISA_LOOP:IEA", handler._segments.get(handler._segments.size() - 1));
+        assertTrue(handler._segments.contains("2300:CLM"));
+        assertTrue(handler._segments.contains("ST_LOOP:SE"));
+    }
+
+    @Test
+    void testLoopTreeBuilder() throws IOException {
+        for (String file : new String[] {"x12_valid.txt", "x12_multiple_isa.txt", "x12_multiple_gs.txt", "x12_loop_errors3_missing_loops.txt"}) {
+            X12Reader expected = read(FileType.ANSI837_5010_X222, "/837_5010/" + file, null);
+
+            LoopTreeBuilder builder = new LoopTreeBuilder();
+            X12Reader reader = read(FileType.ANSI837_5010_X222, "/837_5010/" + file, builder);
+            assertEquals(expected.getErrors(), reader.getErrors());
+            assertEquals(expected.getLoops().size(), builder.getLoops().size());
+            assertEquals(new X12Writer(expected).toX12String(), new X12Writer(FileType.ANSI837_5010_X222, builder.getLoops()).toX12String());
+        }
+    }
+
+    @Test
+    void testFatalErrors() throws IOException {
+        X12Reader expected = read(FileType.ANSI837_5010_X222, "/837_5010/x12_bad_valid_code.txt", null);
+        assertFalse(expected.getFatalErrors().isEmpty());
+
+        RecordingHandler handler = new RecordingHandler();
+        X12Reader reader = read(FileType.ANSI837_5010_X222, "/837_5010/x12_bad_valid_code.txt", handler);
+        assertEquals(expected.getFatalErrors(), reader.getFatalErrors());
+        assertEquals(expected.getFatalErrors(), handler._fatalErrors);
+        // the loops started before the error are still ended
+        assertTrue(handler._open.isEmpty());
+        assertEquals(1, handler._interchanges);
+    }
+
+    private X12Reader read(FileType type, String resource, X12EventHandler handler) throws IOException {
+        try (Reader reader = new InputStreamReader(getClass().getResourceAsStream(resource), StandardCharsets.UTF_8)) {
+            return handler == null ? new X12Reader(type, reader) : new X12Reader(type, reader, handler);
+        }
+    }
+
+    private static class RecordingHandler implements X12EventHandler {
+
+        private final Deque<String> _open = new ArrayDeque<>();
+        private final List<String> _loopCounts = new ArrayList<>();
+        private final List<String> _segments = new ArrayList<>();
+        private final List<String> _errors = new ArrayList<>();
+        private final List<String> _fatalErrors = new ArrayList<>();
+        private int _interchanges;
+
+        @Override
+        public void startInterchange(Separators separators) {
+            assertNotNull(separators);
+            assertTrue(_open.isEmpty());
+        }
+
+        @Override
+        public void endInterchange() {
+            assertTrue(_open.isEmpty());
+            _interchanges++;
+        }
+
+        @Override
+        public void startLoop(String loopId, LoopDefinition definition) {
+            assertEquals(loopId, definition.getXid());
+            _open.push(loopId);
+            _loopCounts.add(loopId);
+        }
+
+        @Override
+        public void segment(String loopId, ParsedSegment segment) {
+            assertEquals(_open.peek(), loopId);
+            // the ISA segment is received once, the other ones are recorded with their loop
+            _segments.add(_segments.isEmpty() ? segment.getId() : (loopId + ":" + segment.getId()));
+        }
+
+        @Override
+        public void endLoop(String loopId) {
+            assertEquals(_open.pop(), loopId);
+        }
+
+        @Override
+        public void error(String message, boolean fatal) {
+            (fatal ? _fatalErrors : _errors).add(message);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class X12LexerTest {
+
+    @Test
+    void testSegments() throws IOException {
+        assertEquals(Arrays.asList("ST*837*0001", "BHT*0019", "SE*3*0001"), readSegments("ST*837*0001~BHT*0019~SE*3*0001~", 1024));
+        assertEquals(Arrays.asList("ST*837*0001", "BHT*0019", "SE*3*0001"), readSegments("ST*837*0001~\nBHT*0019~\r\nSE*3*0001~\n", 1024));
+        assertEquals(Arrays.asList("ST*837*0001", "BHT*0019", "SE*3*0001"), readSegments("ST*837*0001~BHT*0019~SE*3*0001", 1024));
+        assertEquals(Arrays.asList("ST*837*0001", "", "SE*3*0001"), readSegments("ST*837*0001~~SE*3*0001~", 1024));
+        assertEquals(Arrays.asList("ST*837*0001", "SE*3*0001", ""), readSegments("  ST*837*0001 ~\n\n SE*3*0001~\n\n", 1024));
+        assertEquals(Collections.emptyList(), readSegments("", 1024));
+    }
+
+    @Test
+    void testSmallBuffer() throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            buf.append("NM1*IL*1*DOE*JOHN****MI*").append(i).append(i % 2 == 0 ? "~\r\n" : "~");
+
+        // segments are longer than the buffer, which has to grow; line breaks are split across reads
+        List<String> segments = readSegments(buf.toString(), 16);
+        assertEquals(100, segments.size());
+        assertEquals("NM1*IL*1*DOE*JOHN****MI*99", segments.get(99));
+        assertEquals(readWithScanner(buf.toString()), segments);
+    }
+
+    @Test
+    void testElements() throws IOException {
+        X12Lexer lexer = new X12Lexer(new StringReader("CLM*A37YH556*500***11:B:1*Y*A*Y*I~\nSE*2~"), '~', '*');
+
+        assertTrue(lexer.next());
+        String segment = lexer.getSegment();
+        assertEquals(10, lexer.getElementCount());
+        assertEquals("CLM", segment.substring(lexer.getElementStart(0), lexer.getElementEnd(0)));
+        assertEquals("A37YH556", segment.substring(lexer.getElementStart(1), lexer.getElementEnd(1)));
+        assertEquals("", segment.substring(lexer.getElementStart(3), lexer.getElementEnd(3)));
+        assertEquals("11:B:1", segment.substring(lexer.getElementStart(5), lexer.getElementEnd(5)));
+        assertEquals("I", segment.substring(lexer.getElementStart(9), lexer.getElementEnd(9)));
+
+        assertTrue(lexer.next());
+        assertEquals("SE*2", lexer.getSegment());
+        assertEquals(2, lexer.getElementCount());
+        assertEquals("2", lexer.getSegment().substring(lexer.getElementStart(1), lexer.getElementEnd(1)));
+
+        assertFalse(lexer.next());
+        assertFalse(lexer.next());
+    }
+
+    @Test
+    void testAppendedContent() throws IOException {
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 100; i++)
+            buf.append("NM1*IL*1*DOE*JOHN****MI*").append(i).append(i % 2 == 0 ? "~\r\n" : "~");
+        String content = buf.toString();
+
+        // segments and line breaks are split across the appended chunks
+        for (int chunkSize : new int[] {1, 2, 5, 4096}) {
+            List<String> segments = new ArrayList<>();
+            X12Lexer lexer = new X12Lexer('~', '*');
+            for (int i = 0; i < content.length(); i += chunkSize) {
+                lexer.append(content.toCharArray(), i, Math.min(chunkSize, content.length() - i));
+                while (lexer.next())
+                    segments.add(lexer.getSegment());
+                assertFalse(lexer.isFinished());
+            }
+            lexer.end();
+            while (lexer.next())
+                segments.add(lexer.getSegment());
+            assertTrue(lexer.isFinished());
+            assertEquals(readWithScanner(content), segments);
+        }
+    }
+
+    private List<String> readSegments(String content, int bufferSize) throws IOException {
+        List<String> segments = new ArrayList<>();
+        // read one character at a time to exercise the buffer refills
+        X12Lexer lexer = new X12Lexer(new StringReader(content) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 3));
+            }
+        }, '~', '*', bufferSize);
+        while (lexer.next())
+            segments.add(lexer.getSegment());
+        return segments;
+    }
+
+    private List<String> readWithScanner(String content) {
+        List<String> segments = new ArrayList<>();
+        Scanner scanner = new Scanner(content);
+        scanner.useDelimiter("~\r\n|~\n|~");
+        while (scanner.hasNext())
+            segments.add(scanner.next().trim());
+        return segments;
+    }
+}
@@ -0,0 +1,121 @@
+package com.imsweb.x12.reader;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.reader.X12Reader.FileType;
+import com.imsweb.x12.writer.X12Writer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class X12PushParserTest {
+
+    static Stream<Arguments> files() {
+        List<Arguments> files = new ArrayList<>();
+        for (String file : new String[] {"x12_valid.txt", "x12_valid_different_separators.txt", "x12_complex.txt", "x12_many_claims.txt", "x12_multiple_gs.txt",
+                "x12_multiple_isa.txt", "x12_multiple_st.txt", "x12_bad_first_line.txt", "x12_no_isa_line.txt", "x12_segment_errors.txt",
+                "x12_segments_out_of_order.txt", "x12_loop_errors3_missing_loops.txt", "x12_missing_required_loops_mult_repeats.txt"})
+            files.add(Arguments.of(FileType.ANSI837_5010_X222, "/837_5010/" + file));
+        files.add(Arguments.of(FileType.ANSI837_5010_X223, "/837_5010/x223-test.txt"));
+        files.add(Arguments.of(FileType.ANSI837_5010_X231, "/837_5010/x12_999_accepted.txt"));
+        files.add(Arguments.of(FileType.ANSI277_5010_X214, "/277_5010/x12_277CA_accepted.txt"));
+        files.add(Arguments.of(FileType.ANSI277_5010_X212, "/277_5010/x12_277_x212.txt"));
+        files.add(Arguments.of(FileType.ANSI270_4010_X092, "/x270_271/x270.txt"));
+        files.add(Arguments.of(FileType.ANSI271_4010_X092, "/x270_271/x271.txt"));
+        return files.stream();
+    }
+
+    @ParameterizedTest
+    @MethodSource("files")
+    void testSameAsReader(FileType type, String resource) throws IOException {
+        byte[] content;
+        try (InputStream is = getClass().getResourceAsStream(resource)) {
+            content = IOUtils.toByteArray(is);
+        }
+        X12Reader expected;
+        try (Reader reader = new InputStreamReader(getClass().getResourceAsStream(resource), StandardCharsets.UTF_8)) {
+            expected = new X12Reader(type, reader);
+        }
+
+        // segments, line breaks and the ISA segment are split across chunks
+        for (int chunkSize : new int[] {1, 7, 105, 8192}) {
+            X12Reader reader = parse(type, content, StandardCharsets.UTF_8, chunkSize);
+            assertEquals(expected.getErrors(), reader.getErrors());
+            assertEquals(expected.getFatalErrors(), reader.getFatalErrors());
+            assertEquals(expected.getLoops().size(), reader.getLoops().size());
+            if (!expected.getLoops().isEmpty() && expected.getFatalErrors().isEmpty())
+                assertEquals(new X12Writer(expected).toX12String(), new X12Writer(reader).toX12String());
+        }
+    }
+
+    @Test
+    void testListener() throws IOException {
+        byte[] content;
+        try (InputStream is = getClass().getResourceAsStream("/837_5010/x12_many_claims.txt")) {
+            content = IOUtils.toByteArray(is);
+        }
+
+        // the claims are passed to the listener while the chunks are pushed, before the end of the file
+        List<Loop> claims = new ArrayList<>();
+        X12PushParser parser = new X12PushParser(FileType.ANSI837_5010_X222, StandardCharsets.UTF_8, "2300", claims::add);
+        parser.feed(ByteBuffer.wrap(content, 0, content.length / 2));
+        int claimsAtHalf = claims.size();
+        assertTrue(claimsAtHalf > 0);
+        parser.feed(ByteBuffer.wrap(content, content.length / 2, content.length - content.length / 2));
+        X12Reader reader = parser.end();
+
+        assertTrue(claims.size() > claimsAtHalf);
+        assertEquals(0, reader.getErrors().size(), reader.getErrors().toString());
+        assertTrue(reader.getLoops().isEmpty());
+        assertEquals("2000B", claims.get(0).getParent().getId());
+    }
+
+    @Test
+    void testMultiByteCharacters() throws IOException {
+        String content;
+        try (InputStream is = getClass().getResourceAsStream("/837_5010/x12_valid.txt")) {
+            content = IOUtils.toString(is, StandardCharsets.UTF_8).replace("*DOE*", "*DOÉ€*");
+        }
+        X12Reader expected = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(content));
+
+        // the characters encoded on several bytes are split across chunks
+        X12Reader reader = parse(FileType.ANSI837_5010_X222, content.getBytes(StandardCharsets.UTF_8), StandardCharsets.UTF_8, 1);
+        assertEquals(expected.getErrors(), reader.getErrors());
+        assertEquals(new X12Writer(expected).toX12String(), new X12Writer(reader).toX12String());
+        assertTrue(new X12Writer(reader).toX12String().contains("*DOÉ€*"));
+    }
+
+    @Test
+    void testEnded() {
+        X12PushParser parser = new X12PushParser(FileType.ANSI837_5010_X222, StandardCharsets.UTF_8);
+        X12Reader reader = parser.end();
+        assertEquals(1, reader.getFatalErrors().size());
+        assertThrows(IllegalStateException.class, () -> parser.feed(ByteBuffer.allocate(1)));
+        assertThrows(IllegalStateException.class, parser::end);
+    }
+
+    private static X12Reader parse(FileType type, byte[] content, Charset charset, int chunkSize) {
+        X12PushParser parser = new X12PushParser(type, charset);
+        for (int i = 0; i < content.length; i += chunkSize)
+            parser.feed(ByteBuffer.wrap(content, i, Math.min(chunkSize, content.length - i)));
+        return parser.end();
+    }
+}
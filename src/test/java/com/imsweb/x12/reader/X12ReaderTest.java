@@ -4,24 +4,41 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.io.UncheckedIOException;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
+import org.apache.commons.io.IOUtils;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import com.imsweb.x12.Element;
+import com.imsweb.x12.LineBreak;
 import com.imsweb.x12.Loop;
+import com.imsweb.x12.Segment;
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.ValuePool;
 import com.imsweb.x12.mapping.TransactionDefinition;
 import com.imsweb.x12.reader.X12Reader.FileType;
+import com.imsweb.x12.writer.X12Generator;
+import com.imsweb.x12.writer.X12Writer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
@@ -42,6 +59,32 @@ class X12ReaderTest {
         assertEquals(fromFile.getLoops().get(0).toString(), fromInputStream.getLoops().get(0).toString());
         assertEquals(fromFileUtf8.getLoops().get(0).toString(), fromInputStreamUtf8.getLoops().get(0).toString());
         assertEquals(fromFileUtf8.getLoops().get(0).toString(), fromReaderUtf8.getLoops().get(0).toString());
+
+        X12Reader fromPath = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath());
+        X12Reader fromPathLatin1 = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath(), StandardCharsets.ISO_8859_1);
+        X12Reader fromPathUtf8 = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath(), StandardCharsets.UTF_8);
+        assertEquals(fromFileUtf8.getLoops().get(0).toString(), fromPath.getLoops().get(0).toString());
+        assertEquals(fromFileUtf8.getLoops().get(0).toString(), fromPathLatin1.getLoops().get(0).toString());
+        assertEquals(fromFileUtf8.getLoops().get(0).toString(), fromPathUtf8.getLoops().get(0).toString());
+        assertEquals(fromFileUtf8.getErrors(), fromPath.getErrors());
+    }
+
+    @Test
+    void testMappedFile() throws IOException {
+        URL url = this.getClass().getResource("/837_5010/x12_many_claims.txt");
+        assertNotNull(url);
+
+        X12Reader fromFile = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()), StandardCharsets.UTF_8);
+        X12Reader fromPath = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath(), StandardCharsets.ISO_8859_1);
+        assertEquals(fromFile.getErrors(), fromPath.getErrors());
+        assertEquals(fromFile.getFatalErrors(), fromPath.getFatalErrors());
+        assertEquals(fromFile.getLoops().get(0).toX12String(fromFile.getDefinition().getLoop()), fromPath.getLoops().get(0).toX12String(fromPath.getDefinition().getLoop()));
+
+        url = this.getClass().getResource("/837_5010/x12_bad_first_line.txt");
+        assertNotNull(url);
+        fromPath = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath(), StandardCharsets.ISO_8859_1);
+        assertTrue(fromPath.getErrors().contains("Error getting separators"));
+        assertFalse(fromPath.getFatalErrors().isEmpty());
     }
 
     @Test
@@ -289,6 +332,111 @@ class X12ReaderTest {
         }
     }
 
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "/837_5010/x12_multiple_isa.txt",
+            "/837_5010/x12_multiple_gs.txt",
+            "/837_5010/x12_multiple_st.txt",
+            "/837_5010/x12_multiple_transactions.txt",
+            "/837_5010/x12_complex.txt",
+            "/837_5010/x12_segment_errors.txt",
+            "/837_5010/x12_bad_first_line.txt"})
+    void testParallelParsing(String file) throws Exception {
+        URL url = this.getClass().getResource(file);
+        assertNotNull(url);
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            X12Reader sequential = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()), StandardCharsets.UTF_8);
+            X12Reader parallel = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()), StandardCharsets.UTF_8, executor);
+
+            assertEquals(sequential.getErrors(), parallel.getErrors());
+            assertEquals(sequential.getFatalErrors(), parallel.getFatalErrors());
+            assertEquals(sequential.getLoops().size(), parallel.getLoops().size());
+            for (int i = 0; i < sequential.getLoops().size(); i++)
+                assertEquals(sequential.getLoops().get(i).toXML(), parallel.getLoops().get(i).toXML());
+            // the segment errors of the transactions come first, followed by the errors of the loop structure
+            List<String> transactionErrors = parallel.getTransactionErrors().stream().flatMap(List::stream).collect(Collectors.toList());
+            assertEquals(transactionErrors, parallel.getErrors().subList(0, transactionErrors.size()));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelParsingLoopErrors() throws Exception {
+        String content;
+        try (InputStream is = this.getClass().getResourceAsStream("/837_5010/x12_multiple_st.txt")) {
+            content = IOUtils.toString(is, StandardCharsets.UTF_8);
+        }
+        // the group envelope is shared by both transactions, and the last subscriber of the second transaction is missing its name
+        content = content.replace("GS*HC*SENDER CODE*", "GS*HC**");
+        int lastSubscriber = content.lastIndexOf("NM1*IL*");
+        content = content.substring(0, lastSubscriber) + content.substring(content.indexOf('~', lastSubscriber) + 1);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            X12Reader sequential = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(content));
+            X12Reader parallel = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(content), executor);
+            assertEquals(sequential.getErrors(), parallel.getErrors());
+
+            // the envelope is only validated once, and the iterations of the loops are numbered over the whole file
+            assertEquals(2, parallel.getTransactionErrors().size());
+            assertEquals(1, parallel.getTransactionErrors().get(0).size());
+            assertTrue(parallel.getTransactionErrors().get(1).isEmpty());
+            assertEquals("2010BA is required but not found in 2000B iteration #4", parallel.getErrors().get(1));
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testParallelParsingTransactions() throws Exception {
+        URL url = this.getClass().getResource("/837_5010/x12_multiple_gs.txt");
+        assertNotNull(url);
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new FileInputStream(url.getFile()), StandardCharsets.UTF_8, executor);
+            assertEquals(3, reader.getTransactionErrors().size());
+            assertEquals(1, reader.getLoops().size());
+            assertEquals(3, reader.getLoops().get(0).findLoop("GS_LOOP").size());
+            assertEquals(3, reader.getLoops().get(0).findLoop("ST_LOOP").size());
+            assertEquals("IEA", reader.getLoops().get(0).getSegment(1).getId());
+            assertSame(reader.getLoops().get(0), reader.getLoops().get(0).getLoop("GS_LOOP", 2).getParent());
+            assertNotNull(reader.getSeparators());
+
+            // a file that can't be split into transactions is parsed sequentially
+            reader = new X12Reader(FileType.ANSI837_5010_X222, new StringReader("ISA*00*01~"), executor);
+            assertTrue(reader.getTransactionErrors().isEmpty());
+            assertFalse(reader.getFatalErrors().isEmpty());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    void testPreloadDefinitions() throws Exception {
+        FileType.preloadAll();
+
+        // concurrent readers of the different types all get the cached definitions
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<TransactionDefinition>> futures = new ArrayList<>();
+            for (int i = 0; i < 4; i++)
+                for (FileType type : FileType.values())
+                    futures.add(executor.submit(type::getDefinition));
+            for (int i = 0; i < futures.size(); i++)
+                assertSame(FileType.values()[i % FileType.values().length].getDefinition(), futures.get(i).get());
+        }
+        finally {
+            executor.shutdown();
+        }
+    }
+
     @Test
     void testToXml() throws IOException {
         URL url = this.getClass().getResource("/837_5010/x12_no_errors.txt");
@@ -1602,4 +1750,153 @@ class X12ReaderTest {
         assertEquals("A1", statusCodeElement.getSubValues().get(0), "Should be able to see a health care claim status category code - C043");
         assertEquals("704", statusCodeElement.getSubValues().get(1), "Should be able to see a health care claim status category code - 1271");
     }
+
+    @Test
+    void testStreamedLoops() throws Exception {
+        URL url = this.getClass().getResource("/837_5010/x12_many_claims.txt");
+        assertNotNull(url);
+        X12Reader fullReader = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()));
+        List<Loop> expectedClaims = fullReader.getLoops().get(0).findLoop("2300");
+
+        List<Loop> claims = new ArrayList<>();
+        List<String> claimStrings = new ArrayList<>();
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()), StandardCharsets.UTF_8, "2300", claim -> {
+            // the parent loops must still be reachable from the listener
+            assertEquals("2000B", claim.getParent().getId());
+            assertNotNull(claim.findTopParentById("ISA_LOOP").getSegment("ISA"));
+            // only the open parent loops are kept, not the ones of the previous claims
+            Loop transaction = claim.findTopParentById("ST_LOOP");
+            assertEquals(1, transaction.findLoop("2000A").size());
+            assertEquals(1, transaction.findLoop("2000B").size());
+            assertEquals(1, transaction.findLoop("2010AA").size());
+            claims.add(claim);
+            claimStrings.add(claim.toString());
+        });
+
+        assertTrue(reader.getFatalErrors().isEmpty());
+        assertEquals(fullReader.getErrors(), reader.getErrors());
+        assertEquals(820, claims.size());
+        assertEquals(expectedClaims.size(), claims.size());
+        for (int i = 0; i < expectedClaims.size(); i++)
+            assertEquals(expectedClaims.get(i).toString(), claimStrings.get(i));
+
+        // the streamed loops are removed from the tree, and so are the loops that contained them
+        assertTrue(reader.getLoops().isEmpty());
+        Loop loop = claims.get(claims.size() - 1).findTopParentById("ISA_LOOP");
+        assertTrue(loop.getLoops().isEmpty());
+        assertNotNull(loop.getSegment("IEA"));
+
+        // streaming the interchange loops works the same way
+        List<Loop> interchanges = new ArrayList<>();
+        url = this.getClass().getResource("/837_5010/x12_multiple_isa.txt");
+        assertNotNull(url);
+        reader = new X12Reader(FileType.ANSI837_5010_X222, new FileInputStream(url.getFile()), StandardCharsets.UTF_8, "ISA_LOOP", interchanges::add);
+        assertTrue(reader.getLoops().isEmpty());
+        validateMultipleISALoops(interchanges);
+    }
+
+    @Test
+    void testValuePool() throws Exception {
+        URL url = this.getClass().getResource("/837_5010/x12_many_claims.txt");
+        assertNotNull(url);
+        X12Reader expected = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()));
+
+        ValuePool pool = new ValuePool(1024);
+        LoopTreeBuilder builder = new LoopTreeBuilder(pool);
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()), StandardCharsets.UTF_8, builder);
+        assertEquals(expected.getErrors(), reader.getErrors());
+        assertEquals(expected.getLoops().get(0).toString(), builder.getLoops().get(0).toString());
+        assertEquals(expected.getLoops().get(0).toXML(), builder.getLoops().get(0).toXML());
+
+        // the reader returns the loops of the builder, so they can be written like the ones of any reader
+        assertSame(builder.getLoops(), reader.getLoops());
+        assertEquals(new X12Writer(expected).toX12String(), new X12Writer(reader).toX12String());
+
+        // the repeated values are shared, within a file and across the files parsed with the same pool
+        List<Loop> claims = builder.getLoops().get(0).findLoop("2300");
+        assertSame(claims.get(0).getElement("CLM", "CLM05"), claims.get(1).getElement("CLM", "CLM05"));
+        assertSame(claims.get(0).getSegment("CLM").getId(), claims.get(1).getSegment("CLM").getId());
+
+        // the pool can be combined with the streaming of loops
+        List<Loop> streamed = new ArrayList<>();
+        LoopTreeBuilder streaming = new LoopTreeBuilder("2300", streamed::add, pool);
+        new X12Reader(FileType.ANSI837_5010_X222, new FileInputStream(url.getFile()), StandardCharsets.UTF_8, streaming);
+        assertEquals(claims.size(), streamed.size());
+        assertEquals(claims.get(0).toString(), streamed.get(0).toString());
+        assertSame(claims.get(0).getElement("CLM", "CLM05"), streamed.get(0).getElement("CLM", "CLM05"));
+    }
+
+    @Test
+    void testSeparators() throws Exception {
+        URL url = this.getClass().getResource("/837_5010/x12_valid.txt");
+        assertNotNull(url);
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()));
+
+        // the loops share read-only separators, the reader and the loops return copies that can be modified
+        Loop loop = reader.getLoops().get(0);
+        reader.getSeparators().setLineBreak(LineBreak.LF);
+        Separators separators = loop.getSeparators();
+        assertFalse(separators.isShared());
+        assertEquals(reader.getSeparators(), separators);
+        assertSame(separators, loop.getSeparators());
+        assertEquals(LineBreak.NONE, separators.getLineBreak());
+
+        // the changes only apply to the object they were made on
+        separators.setLineBreak(LineBreak.LF);
+        assertTrue(loop.toX12String(reader.getDefinition().getLoop()).contains("~\n"));
+        assertEquals(LineBreak.NONE, loop.getLoop("GS_LOOP").getSeparators().getLineBreak());
+        Segment segment = loop.getLoop("GS_LOOP").getSegment(0);
+        segment.getSeparators().setElement('|');
+        assertTrue(segment.toString().startsWith("GS|"));
+        assertTrue(loop.getLoop("GS_LOOP").getSegment(1).toString().startsWith("GE*"));
+    }
+
+    @Test
+    void testStream() throws Exception {
+        URL url = this.getClass().getResource("/837_5010/x12_multiple_st.txt");
+        assertNotNull(url);
+        List<Loop> expected = new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile())).getLoops().stream().flatMap(l -> l.findLoop("ST_LOOP").stream())
+                .collect(Collectors.toList());
+        try (Stream<Loop> transactions = X12Reader.stream(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath())) {
+            List<Loop> loops = transactions.collect(Collectors.toList());
+            assertEquals(expected.size(), loops.size());
+            for (int i = 0; i < loops.size(); i++)
+                assertEquals(expected.get(i).toString(), loops.get(i).toString());
+            assertEquals("GS_LOOP", loops.get(0).getParent().getId());
+        }
+
+        url = this.getClass().getResource("/837_5010/x12_many_claims.txt");
+        assertNotNull(url);
+        try (Stream<Loop> claims = X12Reader.stream(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath(), StandardCharsets.UTF_8, "2300")) {
+            Loop claim = claims.filter(l -> "A37YH667".equals(l.getElement("CLM", "CLM01"))).findFirst().orElse(null);
+            assertNotNull(claim);
+            assertEquals("2000B", claim.getParent().getId());
+        }
+
+        // the file is only read as far as needed
+        X12Generator generator = new X12Generator(FileType.ANSI837_5010_X222);
+        generator.setRepeats("2000B", 100);
+        generator.setRepeats("2300", 10);
+        String content = generator.toX12String();
+        int[] read = new int[1];
+        StringReader input = new StringReader(content) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                int n = super.read(cbuf, off, len);
+                read[0] += Math.max(n, 0);
+                return n;
+            }
+        };
+        LoopIterator iterator = new LoopIterator(FileType.ANSI837_5010_X222, input, "2300");
+        assertTrue(iterator.hasNext());
+        assertEquals("CLM", iterator.next().getSegment(0).getId());
+        assertTrue(read[0] < content.length() / 10);
+
+        // a fatal error is thrown once the loops before it are returned
+        url = this.getClass().getResource("/837_5010/x12_bad_first_line.txt");
+        assertNotNull(url);
+        try (Stream<Loop> transactions = X12Reader.stream(FileType.ANSI837_5010_X222, new File(url.getFile()).toPath())) {
+            assertThrows(UncheckedIOException.class, transactions::count);
+        }
+    }
 }
@@ -0,0 +1,131 @@
+package com.imsweb.x12.writer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.List;
+import java.util.stream.Stream;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import com.imsweb.x12.LineBreak;
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.Separators;
+import com.imsweb.x12.reader.X12Reader;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class X12GeneratorTest {
+
+    @ParameterizedTest
+    @EnumSource(FileType.class)
+    void testDefaultFile(FileType type) throws IOException {
+        String content = new X12Generator(type).toX12String();
+
+        X12Reader reader = new X12Reader(type, new StringReader(content));
+        assertEquals(0, reader.getErrors().size(), reader.getErrors().toString());
+        assertEquals(0, reader.getFatalErrors().size(), reader.getFatalErrors().toString());
+        assertEquals(content, new X12Writer(reader).toX12String());
+    }
+
+    static Stream<Arguments> claimFiles() {
+        return Stream.of(
+                Arguments.of(FileType.ANSI837_5010_X222, new String[] {"2000B", "2300"}, "2300", 15),
+                Arguments.of(FileType.ANSI837_5010_X223, new String[] {"2000B", "2300"}, "2300", 15),
+                Arguments.of(FileType.ANSI837_4010_X096, new String[] {"2000B", "2300"}, "2300", 15),
+                Arguments.of(FileType.ANSI837_4010_X097, new String[] {"2000B", "2300"}, "2300", 15),
+                Arguments.of(FileType.ANSI837_4010_X098, new String[] {"2000B", "2300"}, "2300", 15),
+                Arguments.of(FileType.ANSI835_5010_X221, new String[] {"2000", "2100"}, "2100", 15),
+                Arguments.of(FileType.ANSI835_4010_X091, new String[] {"2000", "2100"}, "2100", 15),
+                Arguments.of(FileType.ANSI834_5010_X220, new String[] {"DETAIL", "2000"}, "2000", 15),
+                Arguments.of(FileType.ANSI270_4010_X092, new String[] {"2000B", "2000C"}, "2000C", 15),
+                Arguments.of(FileType.ANSI271_4010_X092, new String[] {"2000B", "2000C"}, "2000C", 15),
+                Arguments.of(FileType.ANSI277_5010_X214, new String[] {"2000C", "2000D"}, "2000D", 15),
+                Arguments.of(FileType.ANSI277_5010_X212, new String[] {"TABLE2AREA5", "2000D"}, "2000D", 15));
+    }
+
+    @ParameterizedTest
+    @MethodSource("claimFiles")
+    void testClaims(FileType type, String[] loopIds, String claimLoopId, int claims) throws IOException {
+        X12Generator generator = new X12Generator(type);
+        generator.setRepeats(loopIds[0], 3);
+        generator.setRepeats(loopIds[1], 5);
+        String content = generator.toX12String();
+
+        X12Reader reader = new X12Reader(type, new StringReader(content));
+        assertEquals(0, reader.getErrors().size(), reader.getErrors().toString());
+        assertEquals(0, reader.getFatalErrors().size(), reader.getFatalErrors().toString());
+        assertEquals(claims, reader.getLoops().get(0).findLoop(claimLoopId).size());
+    }
+
+    @Test
+    void testEnvelopes() throws IOException {
+        X12Generator generator = new X12Generator(FileType.ANSI837_5010_X222);
+        generator.setRepeats("ISA_LOOP", 2);
+        generator.setRepeats("GS_LOOP", 2);
+        generator.setRepeats("ST_LOOP", 3);
+        generator.setRepeats("2300", 2);
+        String content = generator.toX12String();
+
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(content));
+        assertEquals(0, reader.getErrors().size(), reader.getErrors().toString());
+        List<Loop> interchanges = reader.getLoops();
+        assertEquals(2, interchanges.size());
+        for (int i = 0; i < interchanges.size(); i++) {
+            Loop interchange = interchanges.get(i);
+            assertEquals(String.format("%09d", i + 1), interchange.getElement("ISA", "ISA13"));
+            assertEquals("2", interchange.getElement("IEA", "IEA01"));
+            assertEquals(interchange.getElement("ISA", "ISA13"), interchange.getElement("IEA", "IEA02"));
+            for (Loop group : interchange.getLoops()) {
+                assertEquals("3", group.getElement("GE", "GE01"));
+                assertEquals(group.getElement("GS", "GS06"), group.getElement("GE", "GE02"));
+                for (Loop transaction : group.getLoops()) {
+                    assertEquals(transaction.getElement("ST", "ST02"), transaction.getElement("SE", "SE02"));
+                    int segments = transaction.toX12String(FileType.ANSI837_5010_X222.getDefinition().getLoop().getLoop().get(0).getLoop().get(0)).split("~").length;
+                    assertEquals(String.valueOf(segments), transaction.getElement("SE", "SE01"));
+
+                    List<Loop> claims = transaction.findLoop("2300");
+                    assertEquals(2, claims.size());
+                    assertEquals("1", transaction.findLoop("2000A").get(0).getElement("HL", "HL01"));
+                    assertEquals("1", transaction.findLoop("2000A").get(0).getElement("HL", "HL04"));
+                    assertEquals("1", transaction.findLoop("2000B").get(0).getElement("HL", "HL02"));
+                    assertEquals("0", transaction.findLoop("2000B").get(0).getElement("HL", "HL04"));
+                }
+            }
+        }
+        assertEquals(12, reader.getLoops().stream().mapToInt(l -> l.findLoop("ST_LOOP").size()).sum());
+    }
+
+    @Test
+    void testSeparators() throws IOException {
+        Separators separators = new Separators('!', '^', '>');
+        separators.setLineBreak(LineBreak.CRLF);
+        X12Generator generator = new X12Generator(FileType.ANSI837_5010_X222);
+        generator.setSeparators(separators);
+        generator.setRepeats("2300", 3);
+        String content = generator.toX12String();
+        assertTrue(content.startsWith("ISA^00^"));
+        assertEquals('{', content.charAt(82));
+        assertTrue(content.contains("!\r\nGS^"));
+
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(content));
+        assertEquals(0, reader.getErrors().size(), reader.getErrors().toString());
+        assertEquals(separators, reader.getSeparators());
+        assertEquals(3, reader.getLoops().get(0).findLoop("2300").size());
+    }
+
+    @Test
+    void testInvalidRepeats() {
+        X12Generator generator = new X12Generator(FileType.ANSI837_5010_X222);
+        assertThrows(IllegalArgumentException.class, () -> generator.setRepeats("9999", 1));
+        assertThrows(IllegalArgumentException.class, () -> generator.setRepeats("2000B", 0));
+        assertThrows(IllegalArgumentException.class, () -> generator.setRepeats("2300", 101));
+        assertThrows(IllegalArgumentException.class, () -> generator.setRepeats("2300", -1));
+    }
+}
@@ -3,8 +3,11 @@
  */
 package com.imsweb.x12.writer;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Collections;
@@ -406,6 +409,43 @@ class X12WriterTest {
         assertEquals(expected, writerResult);
     }
 
+    @Test
+    void testWriteTo() throws IOException {
+        URL url = this.getClass().getResource("/837_5010/x12_complex.txt");
+        X12Writer writer = new X12Writer(new X12Reader(FileType.ANSI837_5010_X222, new File(url.getFile()), StandardCharsets.UTF_8));
+
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        writer.writeTo(output, StandardCharsets.UTF_8, LineBreak.CRLF);
+        assertEquals(writer.toX12String(LineBreak.CRLF), new String(output.toByteArray(), StandardCharsets.UTF_8));
+
+        StringWriter x12 = new StringWriter();
+        writer.writeTo(x12);
+        assertEquals(writer.toX12String(), x12.toString());
+
+        StringWriter html = new StringWriter();
+        writer.writeHtmlTo(html);
+        assertEquals(writer.toHtml(), html.toString());
+    }
+
+    /**
+     * The claims of a patient (2000C) must only be written under the patient, not under the subscriber (2000B) that also has claims.
+     */
+    @Test
+    void testSerializeSubscriberAndPatientClaims() throws IOException {
+        String expected = IOUtils.toString(this.getClass().getResourceAsStream("/837_5010/x12_valid.txt"), StandardCharsets.UTF_8).trim()
+                .replace("DTP*472*RD8*20050314-20050325~", "DTP*472*RD8*20050314-20050325~HL*3*2*23*0~PAT*19~NM1*QC*1*DOE*JANE~"
+                        + "CLM*A37YH778*100***11:B:1*Y*A*Y*I~LX*1~SV1*HC:99211*100*UN*1***1~DTP*472*D8*20050315~")
+                .replace("HL*2*3*22*1~", "HL*4**22*1~")
+                .replaceAll("\\r?\\n", "");
+
+        X12Reader reader = new X12Reader(FileType.ANSI837_5010_X222, new StringReader(expected));
+        assertEquals(2, reader.getLoops().get(0).getLoop("2000B").findLoop("2300").size());
+        assertEquals(1, reader.getLoops().get(0).getLoop("2000C").findLoop("2300").size());
+
+        X12Writer writer = new X12Writer(reader);
+        assertEquals(expected, writer.toX12String().trim());
+    }
+
     private void addElement(Segment segment, String elementNum, String data) {
         segment.addElement(new Element(segment.getId() + elementNum, data));
     }
@@ -0,0 +1,140 @@
+package com.imsweb.x12.reader;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Flow;
+
+import org.junit.jupiter.api.Test;
+
+import com.imsweb.x12.Loop;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class X12PublisherTest {
+
+    @Test
+    void testAllLoops() throws URISyntaxException, IOException {
+        Path path = getPath("/837_5010/x12_many_claims.txt");
+        int expected = new X12Reader(FileType.ANSI837_5010_X222, path.toFile()).getLoops().get(0).findLoop("2300").size();
+
+        for (String charset : new String[] {"UTF-8", "ISO-8859-1"}) {
+            RecordingSubscriber subscriber = new RecordingSubscriber(Long.MAX_VALUE);
+            new X12Publisher(FileType.ANSI837_5010_X222, path, Charset.forName(charset), "2300").subscribe(subscriber);
+            assertEquals(expected, subscriber._loops.size());
+            assertTrue(subscriber._completed);
+            assertNull(subscriber._error);
+            assertEquals("2000B", subscriber._loops.get(0).getParent().getId());
+        }
+    }
+
+    @Test
+    void testBackpressure() throws URISyntaxException {
+        X12Publisher publisher = new X12Publisher(FileType.ANSI837_5010_X222, getPath("/837_5010/x12_multiple_st.txt"), StandardCharsets.UTF_8, "ST_LOOP");
+
+        // nothing is delivered before it's requested
+        RecordingSubscriber subscriber = new RecordingSubscriber(0);
+        publisher.subscribe(subscriber);
+        assertTrue(subscriber._loops.isEmpty());
+
+        subscriber._subscription.request(1);
+        assertEquals(1, subscriber._loops.size());
+        assertFalse(subscriber._completed);
+
+        subscriber._subscription.request(10);
+        assertTrue(subscriber._loops.size() > 1);
+        assertTrue(subscriber._completed);
+        for (Loop loop : subscriber._loops)
+            assertEquals("ST_LOOP", loop.getId());
+
+        // the subscriber can request the next loop when it receives one
+        RecordingSubscriber oneByOne = new RecordingSubscriber(1) {
+            @Override
+            public void onNext(Loop item) {
+                super.onNext(item);
+                _subscription.request(1);
+            }
+        };
+        publisher.subscribe(oneByOne);
+        assertEquals(subscriber._loops.size(), oneByOne._loops.size());
+        assertTrue(oneByOne._completed);
+    }
+
+    @Test
+    void testCancel() throws URISyntaxException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(2);
+        new X12Publisher(FileType.ANSI837_5010_X222, getPath("/837_5010/x12_many_claims.txt"), StandardCharsets.UTF_8, "2300").subscribe(subscriber);
+        subscriber._subscription.cancel();
+        subscriber._subscription.request(5);
+        assertEquals(2, subscriber._loops.size());
+        assertFalse(subscriber._completed);
+        assertNull(subscriber._error);
+    }
+
+    @Test
+    void testErrors() throws URISyntaxException {
+        RecordingSubscriber subscriber = new RecordingSubscriber(1);
+        new X12Publisher(FileType.ANSI837_5010_X222, getPath("/837_5010/x12_bad_first_line.txt"), StandardCharsets.UTF_8, "2300").subscribe(subscriber);
+        assertTrue(subscriber._error instanceof IOException);
+
+        subscriber = new RecordingSubscriber(1);
+        new X12Publisher(FileType.ANSI837_5010_X222, Paths.get("missing.txt"), StandardCharsets.UTF_8, "2300").subscribe(subscriber);
+        assertNotNull(subscriber._subscription);
+        assertTrue(subscriber._error instanceof IOException);
+
+        subscriber = new RecordingSubscriber(0);
+        new X12Publisher(FileType.ANSI837_5010_X222, getPath("/837_5010/x12_valid.txt"), StandardCharsets.UTF_8, "2300").subscribe(subscriber);
+        subscriber._subscription.request(-1);
+        assertTrue(subscriber._error instanceof IllegalArgumentException);
+    }
+
+    private Path getPath(String resource) throws URISyntaxException {
+        return new File(getClass().getResource(resource).toURI()).toPath();
+    }
+
+    private static class RecordingSubscriber implements Flow.Subscriber<Loop> {
+
+        private final long _initialRequest;
+        protected Flow.Subscription _subscription;
+        private final List<Loop> _loops = new ArrayList<>();
+        private boolean _completed;
+        private Throwable _error;
+
+        RecordingSubscriber(long initialRequest) {
+            _initialRequest = initialRequest;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            _subscription = subscription;
+            if (_initialRequest > 0)
+                subscription.request(_initialRequest);
+        }
+
+        @Override
+        public void onNext(Loop item) {
+            _loops.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            _error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            _completed = true;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package com.imsweb.x12.reader;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import com.imsweb.x12.mapping.BinaryMapping;
+import com.imsweb.x12.reader.X12Reader.FileType;
+
+/**
+ * Compiles the XML mappings of all the file types into the binary format read by {@link FileType#getDefinition()}. This is called by the build, the
+ * binary mappings are packaged next to the XML ones; the class itself is not packaged.
+ */
+public final class MappingCompiler {
+
+    private MappingCompiler() {
+        // called from the build only
+    }
+
+    /**
+     * Compiles the mappings
+     * @param args the output directory, the binary mappings are written in the same relative location as the XML ones
+     * @throws IOException if a mapping can't be written
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1)
+            throw new IllegalArgumentException("Usage: MappingCompiler <output directory>");
+
+        for (FileType type : FileType.values()) {
+            File file = new File(args[0], BinaryMapping.getResourceName(type.getMapping()));
+            if (!file.getParentFile().exists() && !file.getParentFile().mkdirs())
+                throw new IOException("Unable to create " + file.getParentFile());
+            try (OutputStream out = new BufferedOutputStream(new FileOutputStream(file))) {
+                BinaryMapping.write(type.loadXmlDefinition(), out);
+            }
+        }
+    }
+}